@@ -0,0 +1,108 @@
+package com.maxifier.guice.events;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation of {@link EventDispatcher#fireEvent(Object)} for already seen event classes, which should be zero.
+ * Run with {@code -prof gc} and look at {@code gc.alloc.rate.norm}, or run {@link #main(String[])} which fails
+ * if any benchmark allocates:
+ * <pre>
+ * java -cp target/benchmarks.jar com.maxifier.guice.events.AllocationBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AllocationBenchmark {
+    /**
+     * Bytes per operation considered noise of the profiler.
+     */
+    private static final double MAX_ALLOCATION = 1;
+
+    private static final BenchmarkListeners.Color[] COLORS = BenchmarkListeners.Color.values();
+
+    @Param({"DEFAULT", "LOCK_FREE"})
+    private BenchmarkDispatchers dispatcher;
+
+    @Param({"false", "true"})
+    private boolean metrics;
+
+    private EventDispatcher d;
+    private final BenchmarkListeners.Event event = new BenchmarkListeners.Event(1);
+    private final BenchmarkListeners.SubEvent subEvent = new BenchmarkListeners.SubEvent(1);
+    // keep listeners strongly reachable
+    private final List<Object> refs = new ArrayList<Object>();
+    private int counter;
+
+    @Setup
+    public void setUp(Blackhole bh) {
+        d = dispatcher.create();
+        d.getMetrics().setEnabled(metrics);
+        for (int i = 0; i < 10; i++) {
+            Object l = new BenchmarkListeners.SingleHandler(bh);
+            refs.add(l);
+            d.register(l);
+        }
+        Object filtering = new BenchmarkListeners.FilteringHandlers(bh);
+        refs.add(filtering);
+        d.register(filtering);
+    }
+
+    @Benchmark
+    public void fireEvent() {
+        d.fireEvent(event);
+    }
+
+    @Benchmark
+    public void fireFilteredEvent() {
+        d.fireEvent(subEvent);
+    }
+
+    @Benchmark
+    public void fireEnumEvent() {
+        d.fireEvent(COLORS[counter++ & 7]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .include(AllocationBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+        boolean failed = false;
+        for (RunResult r : results) {
+            Result alloc = r.getSecondaryResults().get("gc.alloc.rate.norm");
+            if (alloc != null && alloc.getScore() > MAX_ALLOCATION) {
+                System.err.println(r.getParams().getBenchmark() + " " + r.getParams() + " allocates " + alloc.getScore() + " bytes/op");
+                failed = true;
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
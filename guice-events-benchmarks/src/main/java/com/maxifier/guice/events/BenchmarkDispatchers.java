@@ -0,0 +1,21 @@
+package com.maxifier.guice.events;
+
+/**
+ * Dispatcher implementations compared by benchmarks, referred by name in {@code @Param}.
+ */
+public enum BenchmarkDispatchers {
+    DEFAULT {
+        @Override
+        EventDispatcherImpl create() {
+            return new EventDispatcherImpl(new ListenerRegistrationQueue());
+        }
+    },
+    LOCK_FREE {
+        @Override
+        EventDispatcherImpl create() {
+            return new LockFreeEventDispatcher(new ListenerRegistrationQueue());
+        }
+    };
+
+    abstract EventDispatcherImpl create();
+}
@@ -0,0 +1,220 @@
+package com.maxifier.guice.events;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.List;
+
+/**
+ * Events and listeners shared by benchmarks. Listeners consume events into a {@link Blackhole}.
+ */
+final class BenchmarkListeners {
+    private BenchmarkListeners() {
+    }
+
+    static class Event {
+        final int value;
+
+        Event(int value) {
+            this.value = value;
+        }
+    }
+
+    static class SubEvent extends Event {
+        SubEvent(int value) {
+            super(value);
+        }
+    }
+
+    enum Color {
+        RED, GREEN, BLUE, CYAN, MAGENTA, YELLOW, BLACK, WHITE
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.TYPE)
+    @EventGroup
+    @interface Important {
+    }
+
+    @Important
+    static class ImportantEvent extends Event {
+        ImportantEvent(int value) {
+            super(value);
+        }
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Filter(matcher = ColorHandler.Matcher.class)
+    @HandleClass(Color.class)
+    @interface ColorHandler {
+        Color[] value();
+
+        class Matcher extends EnumMatcher<Color> {
+            @MatcherConstructor
+            public Matcher(ColorHandler handler) {
+                super(handler.value());
+            }
+        }
+    }
+
+    abstract static class Consumer {
+        final Blackhole bh;
+
+        Consumer(Blackhole bh) {
+            this.bh = bh;
+        }
+    }
+
+    static class SingleHandler extends Consumer {
+        SingleHandler(Blackhole bh) {
+            super(bh);
+        }
+
+        @Handler
+        public void handle(Event e) {
+            bh.consume(e);
+        }
+    }
+
+    static class FourHandlers extends Consumer {
+        FourHandlers(Blackhole bh) {
+            super(bh);
+        }
+
+        @Handler
+        public void handle1(Event e) {
+            bh.consume(e);
+        }
+
+        @Handler
+        public void handle2(Event e) {
+            bh.consume(e);
+        }
+
+        @Handler
+        public void handle3(Event e) {
+            bh.consume(e);
+        }
+
+        @Handler
+        public void handle4(Event e) {
+            bh.consume(e);
+        }
+    }
+
+    static class SixteenHandlers extends FourHandlers {
+        SixteenHandlers(Blackhole bh) {
+            super(bh);
+        }
+
+        @Handler
+        public void handle5(Event e) {
+            bh.consume(e);
+        }
+
+        @Handler
+        public void handle6(Event e) {
+            bh.consume(e);
+        }
+
+        @Handler
+        public void handle7(Event e) {
+            bh.consume(e);
+        }
+
+        @Handler
+        public void handle8(Event e) {
+            bh.consume(e);
+        }
+
+        @Handler
+        public void handle9(Event e) {
+            bh.consume(e);
+        }
+
+        @Handler
+        public void handle10(Event e) {
+            bh.consume(e);
+        }
+
+        @Handler
+        public void handle11(Event e) {
+            bh.consume(e);
+        }
+
+        @Handler
+        public void handle12(Event e) {
+            bh.consume(e);
+        }
+
+        @Handler
+        public void handle13(Event e) {
+            bh.consume(e);
+        }
+
+        @Handler
+        public void handle14(Event e) {
+            bh.consume(e);
+        }
+
+        @Handler
+        public void handle15(Event e) {
+            bh.consume(e);
+        }
+
+        @Handler
+        public void handle16(Event e) {
+            bh.consume(e);
+        }
+    }
+
+    static class BatchHandler extends Consumer {
+        BatchHandler(Blackhole bh) {
+            super(bh);
+        }
+
+        @Handler(batch = true)
+        public void handle(List<Event> events) {
+            bh.consume(events);
+        }
+    }
+
+    static class FilteringHandlers extends Consumer {
+        FilteringHandlers(Blackhole bh) {
+            super(bh);
+        }
+
+        @Handler
+        @HandleClass(SubEvent.class)
+        public void subEvents(Object e) {
+            bh.consume(e);
+        }
+
+        @Handler
+        @HandleAnnotated(Important.class)
+        public void importantEvents(Object e) {
+            bh.consume(e);
+        }
+
+        @Handler
+        @ColorHandler({Color.RED, Color.GREEN})
+        public void warmColors(Color c) {
+            bh.consume(c);
+        }
+
+        @Handler
+        @ColorHandler({Color.BLUE})
+        public void blue(Color c) {
+            bh.consume(c);
+        }
+
+        @Handler
+        @ColorHandler({})
+        public void anyColor(Color c) {
+            bh.consume(c);
+        }
+    }
+}
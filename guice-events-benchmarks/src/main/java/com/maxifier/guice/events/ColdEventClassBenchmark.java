@@ -0,0 +1,73 @@
+package com.maxifier.guice.events;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the first firing of an event class, when dispatcher resolves handlers for it.
+ * Each measured invocation uses a fresh dispatcher with listeners already registered.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 50)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColdEventClassBenchmark {
+    private static final Object[] EVENTS = {
+            new BenchmarkListeners.Event(1),
+            new BenchmarkListeners.SubEvent(1),
+            new BenchmarkListeners.ImportantEvent(1),
+            BenchmarkListeners.Color.RED,
+            "string",
+            1,
+            1L,
+            1.0,
+    };
+
+    @Param({"1", "100"})
+    private int listenerClassCopies;
+
+    private EventDispatcher d;
+    private final List<Object> refs = new ArrayList<Object>();
+
+    @Setup(Level.Invocation)
+    public void setUp(Blackhole bh) {
+        d = BenchmarkDispatchers.DEFAULT.create();
+        refs.clear();
+        for (int i = 0; i < listenerClassCopies; i++) {
+            // anonymous classes are distinct listener classes
+            refs.add(new BenchmarkListeners.SingleHandler(bh) {
+            });
+            refs.add(new BenchmarkListeners.FilteringHandlers(bh) {
+            });
+        }
+        for (Object ref : refs) {
+            d.register(ref);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void firstFire() {
+        for (Object event : EVENTS) {
+            d.fireEvent(event);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.maxifier.guice.events;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link EventDispatcher#fireEvent(Object)} called by several producers concurrently.
+ * Run with {@code -t N} to change the number of producers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ConcurrentFireEventBenchmark {
+    @Param({"DEFAULT", "LOCK_FREE"})
+    private BenchmarkDispatchers dispatcher;
+
+    @Param({"1", "100"})
+    private int listeners;
+
+    private EventDispatcher d;
+    private final BenchmarkListeners.Event event = new BenchmarkListeners.Event(1);
+    private final List<Object> refs = new ArrayList<Object>();
+
+    @Setup
+    public void setUp(Blackhole bh) {
+        d = dispatcher.create();
+        for (int i = 0; i < listeners; i++) {
+            BenchmarkListeners.SingleHandler l = new BenchmarkListeners.SingleHandler(bh);
+            refs.add(l);
+            d.register(l);
+        }
+    }
+
+    @Benchmark
+    public void fireEvent() {
+        d.fireEvent(event);
+    }
+}
@@ -0,0 +1,77 @@
+package com.maxifier.guice.events;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of dispatch when a high priority handler consumes the event before 16 other handlers are invoked,
+ * compared to an event which is not consumed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConsumableEventBenchmark {
+    static class Command extends BenchmarkListeners.Event implements ConsumableEvent {
+        final boolean consume;
+        boolean consumed;
+
+        Command(boolean consume) {
+            super(1);
+            this.consume = consume;
+        }
+
+        @Override
+        public boolean isConsumed() {
+            return consumed;
+        }
+    }
+
+    static class Consumer extends BenchmarkListeners.Consumer {
+        Consumer(Blackhole bh) {
+            super(bh);
+        }
+
+        @Handler(priority = 1)
+        public void handle(Command c) {
+            bh.consume(c);
+            c.consumed = c.consume;
+        }
+    }
+
+    private EventDispatcher d;
+    private Object consumer;
+    private Object listener;
+
+    @Setup
+    public void setUp(Blackhole bh) {
+        d = BenchmarkDispatchers.DEFAULT.create();
+        listener = new BenchmarkListeners.SixteenHandlers(bh);
+        consumer = new Consumer(bh);
+        d.register(listener);
+        d.register(consumer);
+    }
+
+    @Benchmark
+    public void consumed() {
+        d.fireEvent(new Command(true));
+    }
+
+    @Benchmark
+    public void notConsumed() {
+        d.fireEvent(new Command(false));
+    }
+}
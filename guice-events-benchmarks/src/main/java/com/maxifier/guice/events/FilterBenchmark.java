@@ -0,0 +1,58 @@
+package com.maxifier.guice.events;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of dispatching to filter-heavy handlers: {@link HandleClass}, {@link HandleAnnotated} and
+ * {@link EnumMatcher}-based filters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterBenchmark {
+    private static final BenchmarkListeners.Color[] COLORS = BenchmarkListeners.Color.values();
+
+    private EventDispatcher d;
+    private Object listener;
+    private int counter;
+
+    private final BenchmarkListeners.SubEvent subEvent = new BenchmarkListeners.SubEvent(1);
+    private final BenchmarkListeners.ImportantEvent importantEvent = new BenchmarkListeners.ImportantEvent(1);
+
+    @Setup
+    public void setUp(Blackhole bh) {
+        d = BenchmarkDispatchers.DEFAULT.create();
+        listener = new BenchmarkListeners.FilteringHandlers(bh);
+        d.register(listener);
+    }
+
+    @Benchmark
+    public void handleClass() {
+        d.fireEvent(subEvent);
+    }
+
+    @Benchmark
+    public void handleAnnotated() {
+        d.fireEvent(importantEvent);
+    }
+
+    @Benchmark
+    public void enumMatcher() {
+        d.fireEvent(COLORS[counter++ & 7]);
+    }
+}
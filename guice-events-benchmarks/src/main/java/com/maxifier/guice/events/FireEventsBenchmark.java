@@ -0,0 +1,62 @@
+package com.maxifier.guice.events;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishing a batch of events one by one vs. {@link EventDispatcher#fireEvents(java.util.Collection)}, with regular
+ * and batch handlers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FireEventsBenchmark {
+    @Param({"10", "1000"})
+    private int batchSize;
+
+    @Param({"false", "true"})
+    private boolean batchHandler;
+
+    private EventDispatcher d;
+    private Object listener;
+    private final List<Object> events = new ArrayList<Object>();
+
+    @Setup
+    public void setUp(Blackhole bh) {
+        d = BenchmarkDispatchers.DEFAULT.create();
+        listener = batchHandler ? new BenchmarkListeners.BatchHandler(bh) : new BenchmarkListeners.SingleHandler(bh);
+        d.register(listener);
+        for (int i = 0; i < batchSize; i++) {
+            events.add(new BenchmarkListeners.Event(i));
+        }
+    }
+
+    @Benchmark
+    public void fireEvent() {
+        for (Object event : events) {
+            d.fireEvent(event);
+        }
+    }
+
+    @Benchmark
+    public void fireEvents() {
+        d.fireEvents(events);
+    }
+}
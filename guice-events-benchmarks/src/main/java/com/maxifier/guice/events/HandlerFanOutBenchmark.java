@@ -0,0 +1,59 @@
+package com.maxifier.guice.events;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link EventDispatcher#fireEvent(Object)} depending on the number of handler methods matching the event
+ * in a single listener.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandlerFanOutBenchmark {
+    @Param({"1", "4", "16"})
+    private int handlers;
+
+    private EventDispatcher d;
+    private Object listener;
+    private final BenchmarkListeners.Event event = new BenchmarkListeners.Event(1);
+
+    @Setup
+    public void setUp(Blackhole bh) {
+        d = BenchmarkDispatchers.DEFAULT.create();
+        switch (handlers) {
+            case 1:
+                listener = new BenchmarkListeners.SingleHandler(bh);
+                break;
+            case 4:
+                listener = new BenchmarkListeners.FourHandlers(bh);
+                break;
+            case 16:
+                listener = new BenchmarkListeners.SixteenHandlers(bh);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported number of handlers: " + handlers);
+        }
+        d.register(listener);
+    }
+
+    @Benchmark
+    public void fireEvent() {
+        d.fireEvent(event);
+    }
+}
@@ -0,0 +1,68 @@
+package com.maxifier.guice.events;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares cost of a single handler invocation through different {@link HandlerInvocator} implementations.
+ * {@link ClassgenHandlerInvocator} is not included: cglib requires {@code --add-opens} on JDK 9+.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandlerInvocatorBenchmark {
+    static class Listener {
+        Object last;
+
+        void handle(Object o) {
+            last = o;
+        }
+    }
+
+    private Listener listener;
+    private Object event;
+
+    private HandlerInvocator<Object, Listener> reflection;
+    private HandlerInvocator<Object, Listener> lambda;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        listener = new Listener();
+        event = "event";
+        Method method = Listener.class.getDeclaredMethod("handle", Object.class);
+        reflection = new ReflectionHandlerInvocator<Object, Listener>(method);
+        lambda = new LambdaHandlerInvocator<Object, Listener>(method);
+    }
+
+    @Benchmark
+    public Object direct() {
+        listener.handle(event);
+        return listener.last;
+    }
+
+    @Benchmark
+    public Object reflection() throws Exception {
+        reflection.invoke(listener, event);
+        return listener.last;
+    }
+
+    @Benchmark
+    public Object lambda() throws Exception {
+        lambda.invoke(listener, event);
+        return listener.last;
+    }
+}
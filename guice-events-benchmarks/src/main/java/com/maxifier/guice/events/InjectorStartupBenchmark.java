@@ -0,0 +1,98 @@
+package com.maxifier.guice.events;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.TypeLiteral;
+import com.google.inject.matcher.Matchers;
+import com.google.inject.name.Names;
+import com.google.inject.spi.InjectionListener;
+import com.google.inject.spi.TypeEncounter;
+import com.google.inject.spi.TypeListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creation of injector with thousands of instance bindings, one of ten of them is a listener.
+ * {@code LAZY} is {@link EventDispatcherModule}, which registers only instances of types with handlers;
+ * {@code EAGER} registers every injected instance, like the module did before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InjectorStartupBenchmark {
+    public enum Activation {
+        LAZY, EAGER
+    }
+
+    public static class Service {
+        Object state;
+    }
+
+    public static class ServiceListener {
+        @Handler
+        public void handle(String e) {
+        }
+    }
+
+    @Param({"LAZY", "EAGER"})
+    private Activation activation;
+
+    @Param({"1000", "5000"})
+    private int bindings;
+
+    @Benchmark
+    public Injector createInjector() {
+        return Guice.createInjector(dispatcherModule(), new AbstractModule() {
+            @Override
+            protected void configure() {
+                for (int i = 0; i < bindings; i++) {
+                    if (i % 10 == 0) {
+                        bind(ServiceListener.class).annotatedWith(Names.named("l" + i)).toInstance(new ServiceListener());
+                    } else {
+                        bind(Service.class).annotatedWith(Names.named("s" + i)).toInstance(new Service());
+                    }
+                }
+            }
+        });
+    }
+
+    private Module dispatcherModule() {
+        if (activation == Activation.LAZY) {
+            return new EventDispatcherModule();
+        }
+        return new AbstractModule() {
+            @Override
+            protected void configure() {
+                final ListenerRegistrationQueue q = new ListenerRegistrationQueue();
+                bind(ListenerRegistrationQueue.class).toInstance(q);
+                bindListener(Matchers.any(), new TypeListener() {
+                    @Override
+                    public <I> void hear(TypeLiteral<I> type, TypeEncounter<I> encounter) {
+                        encounter.register(new InjectionListener<I>() {
+                            @Override
+                            public void afterInjection(I i) {
+                                q.register(i);
+                            }
+                        });
+                    }
+                });
+                bind(EventDispatcherControl.class).asEagerSingleton();
+            }
+        };
+    }
+}
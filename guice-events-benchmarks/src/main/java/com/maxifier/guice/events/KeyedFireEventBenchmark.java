@@ -0,0 +1,109 @@
+package com.maxifier.guice.events;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch of keyed events to many listeners each interested in a single key: {@link HandleKey keyed} handlers
+ * versus handlers which compare the key themselves.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyedFireEventBenchmark {
+    public static class Update implements Keyed {
+        final Integer key;
+
+        Update(Integer key) {
+            this.key = key;
+        }
+
+        @Override
+        public Object getEventKey() {
+            return key;
+        }
+    }
+
+    public static class KeyedListener implements Keyed {
+        private final Blackhole bh;
+        private final Integer key;
+
+        KeyedListener(Blackhole bh, Integer key) {
+            this.bh = bh;
+            this.key = key;
+        }
+
+        @Override
+        public Object getEventKey() {
+            return key;
+        }
+
+        @Handler
+        @HandleKey
+        public void handle(Update e) {
+            bh.consume(e);
+        }
+    }
+
+    public static class FilteringListener {
+        private final Blackhole bh;
+        private final Integer key;
+
+        FilteringListener(Blackhole bh, Integer key) {
+            this.bh = bh;
+            this.key = key;
+        }
+
+        @Handler
+        public void handle(Update e) {
+            if (e.key.equals(key)) {
+                bh.consume(e);
+            }
+        }
+    }
+
+    @Param({"1000", "50000"})
+    private int listeners;
+
+    @Param({"true", "false"})
+    private boolean keyed;
+
+    private EventDispatcher d;
+    private Update[] events;
+    private final List<Object> refs = new ArrayList<Object>();
+
+    @Setup
+    public void setUp(Blackhole bh) {
+        d = new EventDispatcherImpl(new ListenerRegistrationQueue());
+        events = new Update[listeners];
+        for (int i = 0; i < listeners; i++) {
+            events[i] = new Update(i);
+            Object l = keyed ? new KeyedListener(bh, i) : new FilteringListener(bh, i);
+            refs.add(l);
+            d.register(l);
+        }
+    }
+
+    @Benchmark
+    public void fireEvent() {
+        d.fireEvent(events[ThreadLocalRandom.current().nextInt(listeners)]);
+    }
+}
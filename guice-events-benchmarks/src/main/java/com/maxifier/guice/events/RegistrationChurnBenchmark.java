@@ -0,0 +1,69 @@
+package com.maxifier.guice.events;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of registering short-living listeners of already known class while other listeners exist.
+ * In {@link #register()} listeners are dropped right away and unregistered by the reference watcher after GC,
+ * other benchmarks unregister them explicitly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegistrationChurnBenchmark {
+    @Param({"DEFAULT", "LOCK_FREE"})
+    private BenchmarkDispatchers dispatcher;
+
+    @Param({"10", "10000"})
+    private int listeners;
+
+    private EventDispatcher d;
+    private Blackhole bh;
+    private final List<Object> refs = new ArrayList<Object>();
+
+    @Setup
+    public void setUp(Blackhole bh) {
+        this.bh = bh;
+        d = dispatcher.create();
+        for (int i = 0; i < listeners; i++) {
+            BenchmarkListeners.SingleHandler l = new BenchmarkListeners.SingleHandler(bh);
+            refs.add(l);
+            d.register(l);
+        }
+    }
+
+    @Benchmark
+    public void register() {
+        d.register(new BenchmarkListeners.SingleHandler(bh));
+    }
+
+    @Benchmark
+    public void registerUnregisterWeak() {
+        BenchmarkListeners.SingleHandler l = new BenchmarkListeners.SingleHandler(bh);
+        d.register(l, Strength.WEAK);
+        d.unregister(l);
+    }
+
+    @Benchmark
+    public void registerUnregisterStrong() {
+        d.register(new BenchmarkListeners.SingleHandler(bh), Strength.STRONG).close();
+    }
+}
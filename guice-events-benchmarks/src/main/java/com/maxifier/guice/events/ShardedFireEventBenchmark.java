@@ -0,0 +1,99 @@
+package com.maxifier.guice.events;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of keyed events fired concurrently into {@link ShardedEventDispatcher} with the given number of shards.
+ * Every listener is interested in events of one key; with a single shard all listeners see every event and filter
+ * them by key. Run with {@code -t N} to change the number of producers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ShardedFireEventBenchmark {
+    private static final int KEYS = 64;
+
+    public static class KeyedEvent implements Sharded {
+        final Integer key;
+
+        KeyedEvent(Integer key) {
+            this.key = key;
+        }
+
+        @Override
+        public Object getShardKey() {
+            return key;
+        }
+    }
+
+    public static class KeyedListener implements Sharded {
+        private final Blackhole bh;
+        private final Integer key;
+
+        KeyedListener(Blackhole bh, Integer key) {
+            this.bh = bh;
+            this.key = key;
+        }
+
+        @Override
+        public Object getShardKey() {
+            return key;
+        }
+
+        @Handler
+        public void handle(KeyedEvent e) {
+            if (e.key.equals(key)) {
+                bh.consume(e);
+            }
+        }
+    }
+
+    @Param({"1", "16", "64"})
+    private int shards;
+
+    @Param({"1000"})
+    private int listeners;
+
+    private EventDispatcher d;
+    private final KeyedEvent[] events = new KeyedEvent[KEYS];
+    private final List<Object> refs = new ArrayList<Object>();
+
+    @Setup
+    public void setUp(Blackhole bh) {
+        d = new ShardedEventDispatcher(new ListenerRegistrationQueue(), shards);
+        for (int i = 0; i < KEYS; i++) {
+            events[i] = new KeyedEvent(i);
+        }
+        for (int i = 0; i < listeners; i++) {
+            KeyedListener l = new KeyedListener(bh, i % KEYS);
+            refs.add(l);
+            d.register(l);
+        }
+    }
+
+    @Benchmark
+    public void fireEvent() {
+        d.fireEvent(events[ThreadLocalRandom.current().nextInt(KEYS)]);
+    }
+}
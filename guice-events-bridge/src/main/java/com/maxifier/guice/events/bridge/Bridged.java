@@ -0,0 +1,19 @@
+package com.maxifier.guice.events.bridge;
+
+import com.maxifier.guice.events.EventGroup;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks event classes which are published by {@link EventBridge} to other processes of the host.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Inherited
+@EventGroup
+public @interface Bridged {
+}
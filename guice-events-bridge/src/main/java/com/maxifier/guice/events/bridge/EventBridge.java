@@ -0,0 +1,210 @@
+package com.maxifier.guice.events.bridge;
+
+import com.google.common.collect.MapMaker;
+import com.maxifier.guice.events.EventDispatcher;
+import com.maxifier.guice.events.EventSerializer;
+import com.maxifier.guice.events.HandleAnnotated;
+import com.maxifier.guice.events.Handler;
+import com.maxifier.guice.events.JavaEventSerializer;
+import com.maxifier.guice.events.Registration;
+import com.maxifier.guice.events.Strength;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Connects {@link EventDispatcher} to other processes of the host through a memory-mapped ring buffer file.
+ * <p>
+ * Events of classes annotated with {@link Bridged} fired to the dispatcher are serialized and appended to the file;
+ * events appended by other bridges of the same file are deserialized and fired to the dispatcher. Bridge doesn't
+ * receive its own events, and events received from the file are not published again. Delivery is best effort:
+ * events are lost if a reader falls behind by more than the capacity of the file, see {@link #getLostBytes()}.
+ */
+public class EventBridge implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(EventBridge.class);
+
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final EventDispatcher dispatcher;
+    private final EventSerializer serializer;
+    private final RingBuffer ring;
+    private final long id = new Random().nextLong();
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong lostBytes = new AtomicLong();
+
+    private Registration registration;
+    private volatile Thread reader;
+    /**
+     * Events received from the file, they shouldn't be published back. Weak identity set rather than the event being
+     * fired because dispatcher may deliver it later, e.g. coalesced events are delivered by the tick thread.
+     */
+    private final Set<Object> receivedEvents = Collections.newSetFromMap(new MapMaker().weakKeys().<Object, Boolean>makeMap());
+
+    /**
+     * @param file       bridge file, it's created if it doesn't exist
+     * @param capacity   size of the ring buffer in bytes for a new file
+     * @param serializer serializer of events, the file may be written by any local process so it should deserialize
+     *                   only expected classes; received events of classes not annotated with {@link Bridged} are
+     *                   dropped anyway
+     */
+    public EventBridge(EventDispatcher dispatcher, File file, int capacity, EventSerializer serializer) throws IOException {
+        this.dispatcher = dispatcher;
+        this.serializer = serializer;
+        this.ring = new RingBuffer(file, capacity);
+    }
+
+    /**
+     * Creates bridge which deserializes only {@link Bridged} classes and JDK value classes.
+     */
+    public EventBridge(EventDispatcher dispatcher, File file) throws IOException {
+        this(dispatcher, file, DEFAULT_CAPACITY, new JavaEventSerializer(JavaEventSerializer.annotatedWith(Bridged.class)));
+    }
+
+    /**
+     * Starts publishing and receiving events. Events appended to the file before this call are not received.
+     */
+    public synchronized void start() {
+        if (reader != null) {
+            throw new IllegalStateException("Bridge is already started");
+        }
+        final long position = ring.getWritePosition();
+        registration = dispatcher.register(new Publisher(), Strength.STRONG);
+        reader = new Thread("EventBridge reader") {
+            @Override
+            public void run() {
+                read(position);
+            }
+        };
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private final class Publisher {
+        @Handler
+        @HandleAnnotated(Bridged.class)
+        public void publish(Object event) {
+            if (receivedEvents.contains(event)) {
+                return;
+            }
+            try {
+                ring.write(id, serializer.serialize(event));
+                published.incrementAndGet();
+            } catch (IOException e) {
+                LOG.error("Unable to publish " + event, e);
+            } catch (IllegalArgumentException e) {
+                LOG.error("Unable to publish " + event, e);
+            }
+        }
+    }
+
+    private void read(long position) {
+        RingBuffer.RecordHandler handler = new RingBuffer.RecordHandler() {
+            @Override
+            public void record(long sender, byte[] payload) {
+                if (sender != id) {
+                    receive(payload);
+                }
+            }
+
+            @Override
+            public void overrun(long bytes) {
+                lostBytes.addAndGet(bytes);
+                LOG.warn("Event bridge reader is behind writers, " + bytes + " bytes of events are lost");
+            }
+        };
+        Thread current = Thread.currentThread();
+        while (reader == current) {
+            try {
+                long next = ring.poll(position, handler);
+                if (next == position) {
+                    LockSupport.parkNanos(this, POLL_NANOS);
+                }
+                position = next;
+            } catch (IOException e) {
+                if (reader == current) {
+                    LOG.error("Unable to read events", e);
+                    LockSupport.parkNanos(this, POLL_NANOS);
+                }
+            }
+        }
+    }
+
+    private void receive(byte[] payload) {
+        Object event;
+        try {
+            event = serializer.deserialize(payload);
+        } catch (IOException e) {
+            LOG.error("Unable to deserialize received event", e);
+            return;
+        }
+        if (event == null || !event.getClass().isAnnotationPresent(Bridged.class)) {
+            LOG.error("Received event of class " + (event == null ? null : event.getClass().getName()) + " which is not @Bridged, it's dropped");
+            return;
+        }
+        received.incrementAndGet();
+        receivedEvents.add(event);
+        try {
+            dispatcher.fireEvent(event);
+        } catch (RuntimeException e) {
+            LOG.error("Error while firing received event " + event, e);
+        }
+    }
+
+    /**
+     * @return number of events published to the file
+     */
+    public long getPublished() {
+        return published.get();
+    }
+
+    /**
+     * @return number of events received from other processes
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * @return number of bytes of events which were overwritten before this bridge received them
+     */
+    public long getLostBytes() {
+        return lostBytes.get();
+    }
+
+    /**
+     * Stops publishing and receiving events, waiting for the event being received to be processed.
+     */
+    @Override
+    public void close() throws IOException {
+        Thread t;
+        synchronized (this) {
+            t = reader;
+            reader = null;
+            if (registration != null) {
+                registration.close();
+                registration = null;
+            }
+        }
+        if (t != null && t != Thread.currentThread()) {
+            LockSupport.unpark(t);
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        ring.close();
+    }
+}
@@ -0,0 +1,50 @@
+package com.maxifier.guice.events.bridge;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.maxifier.guice.events.EventDispatcher;
+import com.maxifier.guice.events.EventSerializer;
+import com.maxifier.guice.events.JavaEventSerializer;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Binds started {@link EventBridge} of the given file as eager singleton. It should be installed along with
+ * {@link com.maxifier.guice.events.EventDispatcherModule}.
+ */
+public class EventBridgeModule extends AbstractModule {
+    private final File file;
+    private final int capacity;
+    private final EventSerializer serializer;
+
+    public EventBridgeModule(File file, int capacity, EventSerializer serializer) {
+        this.file = file;
+        this.capacity = capacity;
+        this.serializer = serializer;
+    }
+
+    public EventBridgeModule(File file) {
+        this(file, EventBridge.DEFAULT_CAPACITY, new JavaEventSerializer(JavaEventSerializer.annotatedWith(Bridged.class)));
+    }
+
+    @Override
+    protected void configure() {
+        bind(EventBridge.class).toProvider(new Provider<EventBridge>() {
+            @Inject
+            EventDispatcher dispatcher;
+
+            @Override
+            public EventBridge get() {
+                try {
+                    EventBridge bridge = new EventBridge(dispatcher, file, capacity, serializer);
+                    bridge.start();
+                    return bridge;
+                } catch (IOException e) {
+                    throw new RuntimeException("Unable to open event bridge " + file, e);
+                }
+            }
+        }).asEagerSingleton();
+    }
+}
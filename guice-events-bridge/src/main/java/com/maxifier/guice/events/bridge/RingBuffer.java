@@ -0,0 +1,220 @@
+package com.maxifier.guice.events.bridge;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Multi-producer multi-consumer broadcast ring buffer in memory-mapped file shared by processes of the host.
+ * <p>
+ * The file consists of header and data region. Header keeps the capacity of data region and the write position,
+ * which is the total number of bytes ever written. Record is {@code [int length][long sender][payload]} aligned to
+ * 8 bytes, records never wrap around the end of data region: the rest of region is marked with padding record instead.
+ * <p>
+ * Writers append under exclusive file lock on the header. Every reader has its own position; it takes shared lock
+ * to read the write position, so that records written before are visible, copies them and checks that they were not
+ * overwritten meanwhile. Reader which is slower than writers by more than the capacity loses records.
+ */
+final class RingBuffer implements Closeable {
+    private static final int MAGIC = 0x58474542;
+    private static final int VERSION = 1;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    // separate cache line from the immutable part
+    private static final int WRITE_POSITION_OFFSET = 64;
+    static final int HEADER_SIZE = 128;
+
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final int PADDING = -1;
+
+    /**
+     * File locks are held by the whole JVM, so threads of one JVM should not try to lock the same file concurrently.
+     */
+    private static final ConcurrentMap<String, Object> JVM_LOCKS = new ConcurrentHashMap<String, Object>();
+
+    interface RecordHandler {
+        void record(long sender, byte[] payload);
+
+        /**
+         * Called when records were overwritten before the reader got them.
+         *
+         * @param bytes number of lost bytes
+         */
+        void overrun(long bytes);
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final Object jvmLock;
+    private final int capacity;
+    /**
+     * Mapped file, declared as ByteBuffer so that {@code duplicate()} links to the method existing in Java 8.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Opens existing ring buffer file or creates a new one.
+     *
+     * @param capacity size of data region in bytes for a new file, it's ignored if the file exists
+     */
+    RingBuffer(File f, int capacity) throws IOException {
+        if (capacity <= 0 || capacity % 8 != 0) {
+            throw new IllegalArgumentException("Capacity should be positive multiple of 8, but it is " + capacity);
+        }
+        String path = f.getCanonicalPath();
+        Object lock = new Object();
+        Object existing = JVM_LOCKS.putIfAbsent(path, lock);
+        jvmLock = existing == null ? lock : existing;
+
+        file = new RandomAccessFile(f, "rw");
+        channel = file.getChannel();
+        try {
+            synchronized (jvmLock) {
+                FileLock fileLock = channel.lock();
+                try {
+                    if (file.length() < HEADER_SIZE) {
+                        file.setLength(HEADER_SIZE + capacity);
+                        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                        header.putInt(MAGIC_OFFSET, MAGIC);
+                        header.putInt(VERSION_OFFSET, VERSION);
+                        header.putInt(CAPACITY_OFFSET, capacity);
+                        channel.write(header, 0);
+                    } else {
+                        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                        channel.read(header, 0);
+                        if (header.getInt(MAGIC_OFFSET) != MAGIC) {
+                            throw new IOException(f + " is not an event bridge file");
+                        }
+                        if (header.getInt(VERSION_OFFSET) != VERSION) {
+                            throw new IOException("Unsupported version " + header.getInt(VERSION_OFFSET) + " of " + f);
+                        }
+                        capacity = header.getInt(CAPACITY_OFFSET);
+                    }
+                } finally {
+                    fileLock.release();
+                }
+            }
+            this.capacity = capacity;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return write position without synchronization with writers, records before it may be not visible yet
+     */
+    long getWritePosition() {
+        return buffer.getLong(WRITE_POSITION_OFFSET);
+    }
+
+    private long getWritePositionLocked() throws IOException {
+        synchronized (jvmLock) {
+            FileLock lock = channel.lock(0, HEADER_SIZE, true);
+            try {
+                return buffer.getLong(WRITE_POSITION_OFFSET);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private static int recordSize(int length) {
+        return (RECORD_HEADER_SIZE + length + 7) & ~7;
+    }
+
+    void write(long sender, byte[] payload) throws IOException {
+        int size = recordSize(payload.length);
+        if (size > capacity) {
+            throw new IllegalArgumentException("Record of " + payload.length + " bytes exceeds capacity " + capacity);
+        }
+        synchronized (jvmLock) {
+            FileLock lock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                long position = buffer.getLong(WRITE_POSITION_OFFSET);
+                int offset = (int) (position % capacity);
+                if (offset + size > capacity) {
+                    buffer.putInt(HEADER_SIZE + offset, PADDING);
+                    position += capacity - offset;
+                    offset = 0;
+                }
+                int base = HEADER_SIZE + offset;
+                buffer.putInt(base, payload.length);
+                buffer.putLong(base + 4, sender);
+                ByteBuffer data = buffer.duplicate();
+                data.position(base + RECORD_HEADER_SIZE);
+                data.put(payload);
+                buffer.putLong(WRITE_POSITION_OFFSET, position + size);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Reads records written after the given position.
+     *
+     * @return position after the last record read
+     */
+    long poll(long position, RecordHandler handler) throws IOException {
+        if (getWritePosition() == position) {
+            return position;
+        }
+        long end = getWritePositionLocked();
+        if (end - position > capacity) {
+            handler.overrun(end - position);
+            return end;
+        }
+        List<Long> senders = new ArrayList<Long>();
+        List<byte[]> payloads = new ArrayList<byte[]>();
+        long p = position;
+        while (p < end) {
+            int offset = (int) (p % capacity);
+            int length = buffer.getInt(HEADER_SIZE + offset);
+            if (length == PADDING) {
+                p += capacity - offset;
+                continue;
+            }
+            if (length < 0 || offset + recordSize(length) > capacity) {
+                // overwritten by writer, will be detected below
+                break;
+            }
+            byte[] payload = new byte[length];
+            ByteBuffer data = buffer.duplicate();
+            data.position(HEADER_SIZE + offset + RECORD_HEADER_SIZE);
+            data.get(payload);
+            senders.add(buffer.getLong(HEADER_SIZE + offset + 4));
+            payloads.add(payload);
+            p += recordSize(length);
+        }
+        // the first record is the first to be overwritten, and once it's broken the rest can't be located reliably
+        if (position + capacity < getWritePositionLocked()) {
+            handler.overrun(end - position);
+            return end;
+        }
+        for (int i = 0; i < payloads.size(); i++) {
+            handler.record(senders.get(i), payloads.get(i));
+        }
+        return end;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,52 @@
+package com.maxifier.guice.events.bridge;
+
+import com.maxifier.guice.events.EventDispatcher;
+import com.maxifier.guice.events.EventDispatcherImpl;
+import com.maxifier.guice.events.Handler;
+import com.maxifier.guice.events.ListenerRegistrationQueue;
+import com.maxifier.guice.events.Strength;
+
+import java.io.File;
+import java.io.Serializable;
+
+/**
+ * Process which answers {@link Ping} with {@link Pong} through the bridge file given as the argument.
+ * It prints "ready" when started and exits when its input is closed.
+ */
+public class BridgePeer {
+    @Bridged
+    public static class Ping implements Serializable {
+        final int n;
+
+        public Ping(int n) {
+            this.n = n;
+        }
+    }
+
+    @Bridged
+    public static class Pong implements Serializable {
+        final int n;
+
+        public Pong(int n) {
+            this.n = n;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final EventDispatcher d = new EventDispatcherImpl(new ListenerRegistrationQueue());
+        d.register(new Object() {
+            @Handler
+            public void ping(Ping p) {
+                d.fireEvent(new Pong(p.n));
+            }
+        }, Strength.STRONG);
+        EventBridge bridge = new EventBridge(d, new File(args[0]));
+        bridge.start();
+        System.out.println("ready");
+        System.out.flush();
+        while (System.in.read() != -1) {
+            // wait for the parent
+        }
+        bridge.close();
+    }
+}
@@ -0,0 +1,252 @@
+package com.maxifier.guice.events.bridge;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.maxifier.guice.events.Coalesce;
+import com.maxifier.guice.events.CoalescingEventDispatcher;
+import com.maxifier.guice.events.EventDispatcher;
+import com.maxifier.guice.events.EventDispatcherImpl;
+import com.maxifier.guice.events.EventDispatcherModule;
+import com.maxifier.guice.events.Handler;
+import com.maxifier.guice.events.JavaEventSerializer;
+import com.maxifier.guice.events.ListenerRegistrationQueue;
+import com.maxifier.guice.events.Strength;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class EventBridgeUTest {
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    static class Collector {
+        final List<Object> events = Collections.synchronizedList(new ArrayList<Object>());
+
+        @Handler
+        public void ping(BridgePeer.Ping p) {
+            events.add("ping " + p.n);
+        }
+
+        @Handler
+        public void pong(BridgePeer.Pong p) {
+            events.add("pong " + p.n);
+        }
+
+        @Handler
+        public void string(String s) {
+            events.add(s);
+        }
+    }
+
+    @Bridged
+    @Coalesce
+    static class Quote implements Serializable {
+        final int price;
+
+        Quote(int price) {
+            this.price = price;
+        }
+    }
+
+    static class QuoteCollector {
+        final List<Integer> prices = Collections.synchronizedList(new ArrayList<Integer>());
+
+        @Handler
+        public void quote(Quote q) {
+            prices.add(q.price);
+        }
+    }
+
+    private static File tempFile() throws IOException {
+        File f = File.createTempFile("events", ".bridge");
+        f.delete();
+        f.deleteOnExit();
+        return f;
+    }
+
+    private static void awaitSize(List<?> list, int size) {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (list.size() < size && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static EventDispatcher dispatcher() {
+        return new EventDispatcherImpl(new ListenerRegistrationQueue());
+    }
+
+    @Test
+    public void testBridge() throws IOException {
+        File f = tempFile();
+        EventDispatcher d1 = dispatcher();
+        EventDispatcher d2 = dispatcher();
+        Collector c1 = new Collector();
+        Collector c2 = new Collector();
+        d1.register(c1, Strength.STRONG);
+        d2.register(c2, Strength.STRONG);
+        EventBridge b1 = new EventBridge(d1, f);
+        EventBridge b2 = new EventBridge(d2, f);
+        b1.start();
+        b2.start();
+        try {
+            d1.fireEvent(new BridgePeer.Ping(1));
+            // not bridged
+            d1.fireEvent("local");
+            d2.fireEvent(new BridgePeer.Pong(2));
+            awaitSize(c1.events, 3);
+            awaitSize(c2.events, 2);
+
+            assertEquals(c1.events, Arrays.<Object>asList("ping 1", "local", "pong 2"));
+            // ping may be received before pong is fired
+            assertEquals(new HashSet<Object>(c2.events), new HashSet<Object>(Arrays.asList("pong 2", "ping 1")));
+            // received events are not published back
+            assertEquals(b1.getPublished(), 1);
+            assertEquals(b1.getReceived(), 1);
+            assertEquals(b2.getPublished(), 1);
+            assertEquals(b2.getReceived(), 1);
+        } finally {
+            b1.close();
+            b2.close();
+        }
+        d1.fireEvent(new BridgePeer.Ping(3));
+        assertEquals(b1.getPublished(), 1);
+    }
+
+    @Test
+    public void testCoalescedEventsAreNotEchoed() throws IOException, InterruptedException {
+        File f = tempFile();
+        CoalescingEventDispatcher d1 = new CoalescingEventDispatcher(new ListenerRegistrationQueue(), 10);
+        CoalescingEventDispatcher d2 = new CoalescingEventDispatcher(new ListenerRegistrationQueue(), 10);
+        QuoteCollector c1 = new QuoteCollector();
+        QuoteCollector c2 = new QuoteCollector();
+        d1.register(c1, Strength.STRONG);
+        d2.register(c2, Strength.STRONG);
+        EventBridge b1 = new EventBridge(d1, f);
+        EventBridge b2 = new EventBridge(d2, f);
+        b1.start();
+        b2.start();
+        try {
+            d1.fireEvent(new Quote(1));
+            awaitSize(c2.prices, 1);
+            // received quote is delivered by the tick thread of d2 after the reader has fired it
+            Thread.sleep(200);
+            assertEquals(c1.prices, Collections.singletonList(1));
+            assertEquals(c2.prices, Collections.singletonList(1));
+            assertEquals(b1.getPublished(), 1);
+            assertEquals(b2.getPublished(), 0);
+            assertEquals(b1.getReceived(), 0);
+            assertEquals(b2.getReceived(), 1);
+        } finally {
+            b1.close();
+            b2.close();
+            d1.shutdown();
+            d2.shutdown();
+        }
+    }
+
+    static class NotBridged implements Serializable {
+    }
+
+    @Test
+    public void testOnlyBridgedEventsAreReceived() throws IOException {
+        File f = tempFile();
+        EventDispatcher d1 = dispatcher();
+        EventDispatcher d2 = dispatcher();
+        Collector c1 = new Collector();
+        Collector c2 = new Collector();
+        d1.register(c1, Strength.STRONG);
+        d2.register(c2, Strength.STRONG);
+        EventBridge unfiltered = new EventBridge(d1, f, EventBridge.DEFAULT_CAPACITY, new JavaEventSerializer(JavaEventSerializer.ANY));
+        EventBridge filtered = new EventBridge(d2, f);
+        unfiltered.start();
+        filtered.start();
+        RingBuffer ring = new RingBuffer(f, EventBridge.DEFAULT_CAPACITY);
+        try {
+            JavaEventSerializer serializer = new JavaEventSerializer(JavaEventSerializer.ANY);
+            ring.write(1, serializer.serialize(new NotBridged()));
+            ring.write(1, serializer.serialize(new BridgePeer.Pong(1)));
+            awaitSize(c1.events, 1);
+            awaitSize(c2.events, 1);
+            assertEquals(c1.events, Arrays.<Object>asList("pong 1"));
+            assertEquals(c2.events, Arrays.<Object>asList("pong 1"));
+            // not @Bridged event is dropped by both, deserialization of its class is rejected by default
+            assertEquals(unfiltered.getReceived(), 1);
+            assertEquals(filtered.getReceived(), 1);
+        } finally {
+            ring.close();
+            unfiltered.close();
+            filtered.close();
+        }
+    }
+
+    @Test
+    public void testModule() throws IOException {
+        File f = tempFile();
+        Injector inj = Guice.createInjector(new EventDispatcherModule(), new EventBridgeModule(f));
+        EventBridge bridge = inj.getInstance(EventBridge.class);
+        try {
+            inj.getInstance(EventDispatcher.class).fireEvent(new BridgePeer.Pong(1));
+            assertEquals(bridge.getPublished(), 1);
+        } finally {
+            bridge.close();
+        }
+    }
+
+    @Test
+    public void testTwoProcesses() throws Exception {
+        File f = tempFile();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process peer = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                BridgePeer.class.getName(), f.getPath())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try {
+            BufferedReader out = new BufferedReader(new InputStreamReader(peer.getInputStream()));
+            assertEquals(out.readLine(), "ready");
+
+            EventDispatcher d = dispatcher();
+            Collector c = new Collector();
+            d.register(c, Strength.STRONG);
+            EventBridge bridge = new EventBridge(d, f);
+            bridge.start();
+            try {
+                for (int i = 0; i < 100; i++) {
+                    d.fireEvent(new BridgePeer.Ping(i));
+                }
+                awaitSize(c.events, 200);
+                List<Object> pongs = new ArrayList<Object>();
+                for (Object e : c.events) {
+                    if (e.toString().startsWith("pong")) {
+                        pongs.add(e);
+                    }
+                }
+                assertEquals(pongs.size(), 100);
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(pongs.get(i), "pong " + i);
+                }
+                assertEquals(bridge.getLostBytes(), 0);
+            } finally {
+                bridge.close();
+            }
+        } finally {
+            peer.getOutputStream().close();
+            assertTrue(peer.waitFor(TIMEOUT, TimeUnit.MILLISECONDS));
+        }
+    }
+}
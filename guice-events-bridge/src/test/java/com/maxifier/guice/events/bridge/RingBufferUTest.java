@@ -0,0 +1,91 @@
+package com.maxifier.guice.events.bridge;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class RingBufferUTest {
+    static class Collector implements RingBuffer.RecordHandler {
+        final List<String> records = new ArrayList<String>();
+        long lost;
+
+        @Override
+        public void record(long sender, byte[] payload) {
+            records.add(sender + ":" + new String(payload));
+        }
+
+        @Override
+        public void overrun(long bytes) {
+            lost += bytes;
+        }
+    }
+
+    private static File tempFile() throws IOException {
+        File f = File.createTempFile("ring", ".bridge");
+        f.delete();
+        f.deleteOnExit();
+        return f;
+    }
+
+    @Test
+    public void testWrapAround() throws IOException {
+        File f = tempFile();
+        RingBuffer writer = new RingBuffer(f, 64);
+        // capacity of existing file is used
+        RingBuffer reader = new RingBuffer(f, 1024);
+        try {
+            assertEquals(reader.getCapacity(), 64);
+            Collector c = new Collector();
+            long position = reader.getWritePosition();
+            for (int i = 0; i < 20; i++) {
+                // 24 bytes per record, so records don't fit to the end of buffer every third time
+                writer.write(i, ("record" + (i % 10)).getBytes());
+                position = reader.poll(position, c);
+                assertEquals(c.records.get(i), i + ":record" + (i % 10));
+            }
+            assertEquals(c.lost, 0);
+            assertEquals(position, writer.getWritePosition());
+        } finally {
+            writer.close();
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testOverrun() throws IOException {
+        File f = tempFile();
+        RingBuffer ring = new RingBuffer(f, 64);
+        try {
+            Collector c = new Collector();
+            long position = ring.getWritePosition();
+            for (int i = 0; i < 10; i++) {
+                ring.write(1, "abc".getBytes());
+            }
+            position = ring.poll(position, c);
+            assertTrue(c.records.isEmpty());
+            assertTrue(c.lost > 0);
+            ring.write(1, "def".getBytes());
+            ring.poll(position, c);
+            assertEquals(c.records, Collections.singletonList("1:def"));
+        } finally {
+            ring.close();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testTooLargeRecord() throws IOException {
+        RingBuffer ring = new RingBuffer(tempFile(), 64);
+        try {
+            ring.write(1, new byte[64]);
+        } finally {
+            ring.close();
+        }
+    }
+}
@@ -0,0 +1,470 @@
+package com.maxifier.guice.events.journal;
+
+import com.google.common.collect.MapMaker;
+import com.maxifier.guice.events.EventDispatcher;
+import com.maxifier.guice.events.EventSerializer;
+import com.maxifier.guice.events.HandleAnnotated;
+import com.maxifier.guice.events.Handler;
+import com.maxifier.guice.events.JavaEventSerializer;
+import com.maxifier.guice.events.Registration;
+import com.maxifier.guice.events.Strength;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of events fired to {@link EventDispatcher}, which allows to restore in-memory state by
+ * replaying them after restart.
+ * <p>
+ * Events of classes annotated with {@link Journaled} are appended when fired, before any handler is invoked.
+ * Every event gets a sequence number; {@link #replay(long)} fires events starting from the given sequence number to
+ * the dispatcher again. Replayed events are not journaled again, even if the dispatcher delivers them later in another
+ * thread; events fired by handlers in the replaying thread are not journaled either.
+ * <p>
+ * Journal is a directory of segment files named by the sequence number of their first event. Record is
+ * {@code [varint length][int crc32][payload]}, where payload is produced by {@link EventSerializer}. Writes are
+ * buffered and forced to disk periodically, so events of the last sync interval may be lost on crash; incomplete
+ * records at the end of the last segment are truncated on open.
+ */
+public class EventJournal implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(EventJournal.class);
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64 << 20;
+    public static final long DEFAULT_SYNC_MILLIS = 100;
+
+    private static final String SUFFIX = ".journal";
+
+    private final EventDispatcher dispatcher;
+    private final File directory;
+    private final EventSerializer serializer;
+    private final long segmentSize;
+    private final long syncMillis;
+
+    // guarded by this
+    private FileOutputStream segment;
+    private DataOutputStream out;
+    private long segmentBytes;
+    private long nextSequence;
+    private boolean dirty;
+    private Registration registration;
+    private ScheduledExecutorService syncer;
+
+    // serializes forcing to disk, which is done without holding this, so appends are not blocked
+    private final Object syncLock = new Object();
+
+    private volatile Thread replaying;
+    /**
+     * Events fired by replay, they shouldn't be journaled again. Weak identity set rather than the replaying thread
+     * because dispatcher may deliver them later, e.g. coalesced events are delivered by the tick thread.
+     */
+    private final Set<Object> replayedEvents = Collections.newSetFromMap(new MapMaker().weakKeys().<Object, Boolean>makeMap());
+
+    /**
+     * @param directory   journal directory, it's created if it doesn't exist
+     * @param segmentSize size of segment file in bytes after which the next segment is started
+     * @param syncMillis  interval of forcing appended events to disk, zero to force every event
+     */
+    public EventJournal(EventDispatcher dispatcher, File directory, EventSerializer serializer, long segmentSize, long syncMillis) throws IOException {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size should be positive, but it is " + segmentSize);
+        }
+        if (syncMillis < 0) {
+            throw new IllegalArgumentException("Sync interval should not be negative, but it is " + syncMillis);
+        }
+        this.dispatcher = dispatcher;
+        this.directory = directory;
+        this.serializer = serializer;
+        this.segmentSize = segmentSize;
+        this.syncMillis = syncMillis;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + directory);
+        }
+        List<Long> segments = segments();
+        if (segments.isEmpty()) {
+            openSegment(0);
+        } else {
+            recover(segments.get(segments.size() - 1));
+        }
+    }
+
+    public EventJournal(EventDispatcher dispatcher, File directory) throws IOException {
+        this(dispatcher, directory, new JavaEventSerializer(JavaEventSerializer.annotatedWith(Journaled.class)), DEFAULT_SEGMENT_SIZE, DEFAULT_SYNC_MILLIS);
+    }
+
+    private File segmentFile(long base) {
+        return new File(directory, String.format("%020d", base) + SUFFIX);
+    }
+
+    /**
+     * @return sorted sequence numbers of the first events of segments
+     */
+    private List<Long> segments() {
+        String[] names = directory.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX);
+            }
+        });
+        List<Long> res = new ArrayList<Long>();
+        if (names != null) {
+            for (String name : names) {
+                try {
+                    res.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOG.warn("Unexpected file " + name + " in journal " + directory);
+                }
+            }
+        }
+        Collections.sort(res);
+        return res;
+    }
+
+    private void openSegment(long base) throws IOException {
+        segment = new FileOutputStream(segmentFile(base), true);
+        out = new DataOutputStream(new BufferedOutputStream(segment));
+        segmentBytes = segment.getChannel().size();
+        nextSequence = base;
+    }
+
+    /**
+     * Opens the last segment for append, dropping incomplete record at its end.
+     */
+    private void recover(long base) throws IOException {
+        File file = segmentFile(base);
+        long count = 0;
+        long valid = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                int size = skipRecord(in, file.length());
+                if (size < 0) {
+                    break;
+                }
+                count++;
+                valid += size;
+            }
+        } finally {
+            in.close();
+        }
+        if (valid < file.length()) {
+            LOG.warn("Truncating " + (file.length() - valid) + " bytes of incomplete record in " + file);
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(valid);
+            } finally {
+                raf.close();
+            }
+        }
+        openSegment(base);
+        nextSequence = base + count;
+    }
+
+    /**
+     * Starts journaling of events fired to the dispatcher.
+     */
+    public synchronized void start() {
+        if (registration != null) {
+            throw new IllegalStateException("Journal is already started");
+        }
+        if (out == null) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        registration = dispatcher.register(new Journaler(), Strength.STRONG);
+        if (syncMillis > 0) {
+            syncer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "EventJournal sync " + directory);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            syncer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        sync();
+                    } catch (IOException e) {
+                        LOG.error("Unable to sync journal " + directory, e);
+                    }
+                }
+            }, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private final class Journaler {
+        @Handler(priority = Integer.MAX_VALUE)
+        @HandleAnnotated(Journaled.class)
+        public void journal(Object event) {
+            if (replayedEvents.remove(event) || Thread.currentThread() == replaying) {
+                return;
+            }
+            try {
+                append(event);
+            } catch (IOException e) {
+                LOG.error("Unable to journal " + event, e);
+            }
+        }
+    }
+
+    /**
+     * Appends event to the journal regardless of its class.
+     *
+     * @return sequence number of the event
+     */
+    public long append(Object event) throws IOException {
+        byte[] payload = serializer.serialize(event);
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        long sequence;
+        synchronized (this) {
+            if (out == null) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            if (segmentBytes >= segmentSize) {
+                forceSegment();
+                out.close();
+                openSegment(nextSequence);
+            }
+            int size = writeVarint(out, payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+            segmentBytes += size + 4 + payload.length;
+            dirty = true;
+            sequence = nextSequence++;
+        }
+        if (syncMillis == 0) {
+            sync();
+        }
+        return sequence;
+    }
+
+    /**
+     * Forces appended events to disk. Buffered events are flushed under the lock of appends, but the disk is waited
+     * for outside of it.
+     */
+    public void sync() throws IOException {
+        synchronized (syncLock) {
+            FileChannel channel;
+            synchronized (this) {
+                if (!dirty || out == null) {
+                    return;
+                }
+                out.flush();
+                channel = segment.getChannel();
+                dirty = false;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // segment was closed meanwhile, it's forced before close
+            } catch (IOException e) {
+                synchronized (this) {
+                    dirty = true;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Forces the current segment to disk before it's closed, under the lock of appends.
+     */
+    private void forceSegment() throws IOException {
+        out.flush();
+        segment.getChannel().force(false);
+        dirty = false;
+    }
+
+    /**
+     * @return sequence number of the next appended event
+     */
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * Fires journaled events to the dispatcher in the calling thread, starting from the given sequence number up to
+     * the events appended before this call.
+     *
+     * @return sequence number following the last replayed event
+     */
+    public long replay(long from) throws IOException {
+        long end;
+        List<Long> segments;
+        synchronized (this) {
+            if (out != null) {
+                out.flush();
+            }
+            end = nextSequence;
+            segments = segments();
+        }
+        if (!segments.isEmpty() && from < segments.get(0)) {
+            LOG.warn("Events before " + segments.get(0) + " were deleted from journal " + directory);
+        }
+        Thread previous = replaying;
+        replaying = Thread.currentThread();
+        try {
+            for (int i = 0; i < segments.size(); i++) {
+                long base = segments.get(i);
+                long limit = i + 1 < segments.size() ? segments.get(i + 1) : end;
+                if (limit > from) {
+                    replaySegment(base, Math.max(from, base), Math.min(limit, end));
+                }
+            }
+        } finally {
+            replaying = previous;
+        }
+        return Math.max(from, end);
+    }
+
+    private void replaySegment(long base, long from, long limit) throws IOException {
+        File file = segmentFile(base);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            for (long sequence = base; sequence < limit; sequence++) {
+                if (sequence < from) {
+                    if (skipRecord(in, file.length()) < 0) {
+                        throw new IOException("Journal segment " + file + " is corrupted at event " + sequence);
+                    }
+                    continue;
+                }
+                byte[] payload = readRecord(in, file.length());
+                if (payload == null) {
+                    throw new IOException("Journal segment " + file + " is corrupted at event " + sequence);
+                }
+                Object event = serializer.deserialize(payload);
+                replayedEvents.add(event);
+                dispatcher.fireEvent(event);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Deletes segments which contain only events before the given sequence number, e.g. ones included in a snapshot.
+     */
+    public synchronized void deleteBefore(long sequence) {
+        List<Long> segments = segments();
+        for (int i = 0; i + 1 < segments.size() && segments.get(i + 1) <= sequence; i++) {
+            File file = segmentFile(segments.get(i));
+            if (!file.delete()) {
+                LOG.warn("Unable to delete journal segment " + file);
+            }
+        }
+    }
+
+    /**
+     * Stops journaling and forces appended events to disk.
+     */
+    @Override
+    public void close() throws IOException {
+        ScheduledExecutorService s;
+        synchronized (this) {
+            if (registration != null) {
+                registration.close();
+                registration = null;
+            }
+            s = syncer;
+            syncer = null;
+            if (out != null) {
+                forceSegment();
+                out.close();
+                out = null;
+                segment = null;
+            }
+        }
+        if (s != null) {
+            s.shutdown();
+        }
+    }
+
+    private static int writeVarint(DataOutputStream out, int value) throws IOException {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+            size++;
+        }
+        out.writeByte(value);
+        return size;
+    }
+
+    /**
+     * @return value or -1 if the stream ends
+     */
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                return -1;
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param maxLength size of the file, longer length means corrupted record
+     * @return payload or {@code null} if the stream ends with incomplete or corrupted record
+     */
+    private static byte[] readRecord(DataInputStream in, long maxLength) throws IOException {
+        int length = readVarint(in);
+        if (length < 0 || length > maxLength) {
+            return null;
+        }
+        try {
+            int crc = in.readInt();
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 actual = new CRC32();
+            actual.update(payload, 0, length);
+            return (int) actual.getValue() == crc ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return size of the record in bytes or -1 if the stream ends with incomplete or corrupted record
+     */
+    private static int skipRecord(DataInputStream in, long maxLength) throws IOException {
+        byte[] payload = readRecord(in, maxLength);
+        if (payload == null) {
+            return -1;
+        }
+        int size = 5 + payload.length;
+        for (int length = payload.length; (length & ~0x7F) != 0; length >>>= 7) {
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,53 @@
+package com.maxifier.guice.events.journal;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.maxifier.guice.events.EventDispatcher;
+import com.maxifier.guice.events.EventSerializer;
+import com.maxifier.guice.events.JavaEventSerializer;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Binds started {@link EventJournal} of the given directory as eager singleton. It should be installed along with
+ * {@link com.maxifier.guice.events.EventDispatcherModule}; call {@link EventJournal#replay(long)} to restore state
+ * at startup.
+ */
+public class EventJournalModule extends AbstractModule {
+    private final File directory;
+    private final EventSerializer serializer;
+    private final long segmentSize;
+    private final long syncMillis;
+
+    public EventJournalModule(File directory, EventSerializer serializer, long segmentSize, long syncMillis) {
+        this.directory = directory;
+        this.serializer = serializer;
+        this.segmentSize = segmentSize;
+        this.syncMillis = syncMillis;
+    }
+
+    public EventJournalModule(File directory) {
+        this(directory, new JavaEventSerializer(JavaEventSerializer.annotatedWith(Journaled.class)), EventJournal.DEFAULT_SEGMENT_SIZE, EventJournal.DEFAULT_SYNC_MILLIS);
+    }
+
+    @Override
+    protected void configure() {
+        bind(EventJournal.class).toProvider(new Provider<EventJournal>() {
+            @Inject
+            EventDispatcher dispatcher;
+
+            @Override
+            public EventJournal get() {
+                try {
+                    EventJournal journal = new EventJournal(dispatcher, directory, serializer, segmentSize, syncMillis);
+                    journal.start();
+                    return journal;
+                } catch (IOException e) {
+                    throw new RuntimeException("Unable to open event journal " + directory, e);
+                }
+            }
+        }).asEagerSingleton();
+    }
+}
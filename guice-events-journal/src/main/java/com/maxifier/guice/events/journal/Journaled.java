@@ -0,0 +1,19 @@
+package com.maxifier.guice.events.journal;
+
+import com.maxifier.guice.events.EventGroup;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks event classes which are appended to {@link EventJournal} when fired.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Inherited
+@EventGroup
+public @interface Journaled {
+}
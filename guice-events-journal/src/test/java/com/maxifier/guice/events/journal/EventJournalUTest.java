@@ -0,0 +1,287 @@
+package com.maxifier.guice.events.journal;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.maxifier.guice.events.Coalesce;
+import com.maxifier.guice.events.CoalescingEventDispatcher;
+import com.maxifier.guice.events.EventDispatcher;
+import com.maxifier.guice.events.EventDispatcherImpl;
+import com.maxifier.guice.events.EventDispatcherModule;
+import com.maxifier.guice.events.Handler;
+import com.maxifier.guice.events.JavaEventSerializer;
+import com.maxifier.guice.events.ListenerRegistrationQueue;
+import com.maxifier.guice.events.Strength;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class EventJournalUTest {
+    @Journaled
+    static class Deposit implements Serializable {
+        final int amount;
+
+        Deposit(int amount) {
+            this.amount = amount;
+        }
+    }
+
+    // not journaled
+    static class Notification implements Serializable {
+        final int amount;
+
+        Notification(int amount) {
+            this.amount = amount;
+        }
+    }
+
+    @Journaled
+    static class Attachment implements Serializable {
+        final byte[] data;
+
+        Attachment(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    @Journaled
+    @Coalesce(key = "account")
+    static class Balance implements Serializable {
+        final String account;
+        final int amount;
+
+        Balance(String account, int amount) {
+            this.account = account;
+            this.amount = amount;
+        }
+    }
+
+    static class Account {
+        final EventDispatcher d;
+        final List<Integer> deposits = new ArrayList<Integer>();
+
+        Account(EventDispatcher d) {
+            this.d = d;
+        }
+
+        @Handler
+        public void deposit(Deposit e) {
+            deposits.add(e.amount);
+            d.fireEvent(new Notification(e.amount));
+        }
+
+        @Handler
+        public void notification(Notification e) {
+        }
+    }
+
+    private static File tempDir() throws IOException {
+        File f = File.createTempFile("events", "");
+        f.delete();
+        f.mkdirs();
+        f.deleteOnExit();
+        return f;
+    }
+
+    private static EventDispatcher dispatcher() {
+        return new EventDispatcherImpl(new ListenerRegistrationQueue());
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> res = new ArrayList<Integer>();
+        for (int i = from; i < to; i++) {
+            res.add(i);
+        }
+        return res;
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        File dir = tempDir();
+        EventDispatcher d = dispatcher();
+        EventJournal journal = new EventJournal(d, dir);
+        journal.start();
+        d.register(new Account(d), Strength.STRONG);
+        for (int i = 0; i < 10; i++) {
+            d.fireEvent(new Deposit(i));
+        }
+        assertEquals(journal.getNextSequence(), 10);
+        journal.close();
+
+        // restart
+        EventDispatcher restarted = dispatcher();
+        Account account = new Account(restarted);
+        restarted.register(account, Strength.STRONG);
+        journal = new EventJournal(restarted, dir);
+        journal.start();
+        try {
+            assertEquals(journal.getNextSequence(), 10);
+            assertEquals(journal.replay(4), 10);
+            assertEquals(account.deposits, range(4, 10));
+            // replayed events are not journaled again
+            assertEquals(journal.getNextSequence(), 10);
+
+            restarted.fireEvent(new Deposit(10));
+            account.deposits.clear();
+            assertEquals(journal.replay(0), 11);
+            assertEquals(account.deposits, range(0, 11));
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void testReplayThroughCoalescingDispatcher() throws IOException {
+        File dir = tempDir();
+        CoalescingEventDispatcher d = new CoalescingEventDispatcher(new ListenerRegistrationQueue(), 60000);
+        EventJournal journal = new EventJournal(d, dir);
+        journal.start();
+        d.fireEvent(new Balance("a", 1));
+        d.fireEvent(new Balance("b", 2));
+        d.flush();
+        assertEquals(journal.getNextSequence(), 2);
+        journal.close();
+        d.shutdown();
+
+        // restart
+        CoalescingEventDispatcher restarted = new CoalescingEventDispatcher(new ListenerRegistrationQueue(), 60000);
+        final List<Integer> balances = Collections.synchronizedList(new ArrayList<Integer>());
+        restarted.register(new Object() {
+            @Handler
+            public void balance(Balance e) {
+                balances.add(e.amount);
+            }
+        }, Strength.STRONG);
+        journal = new EventJournal(restarted, dir);
+        journal.start();
+        try {
+            assertEquals(journal.replay(0), 2);
+            // coalesced events are delivered later, by the tick or by flush, they are not journaled again
+            restarted.flush();
+            assertEquals(balances, Arrays.asList(1, 2));
+            assertEquals(journal.getNextSequence(), 2);
+        } finally {
+            journal.close();
+            restarted.shutdown();
+        }
+    }
+
+    @Test
+    public void testSegments() throws IOException {
+        File dir = tempDir();
+        EventDispatcher d = dispatcher();
+        Account account = new Account(d);
+        d.register(account, Strength.STRONG);
+        EventJournal journal = new EventJournal(d, dir, new JavaEventSerializer(JavaEventSerializer.annotatedWith(Journaled.class)), 500, 0);
+        try {
+            for (int i = 0; i < 20; i++) {
+                assertEquals(journal.append(new Deposit(i)), i);
+            }
+            assertTrue(dir.list().length > 2);
+
+            assertEquals(journal.replay(7), 20);
+            assertEquals(account.deposits, range(7, 20));
+
+            journal.deleteBefore(7);
+            account.deposits.clear();
+            journal.replay(7);
+            assertEquals(account.deposits, range(7, 20));
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void testIncompleteRecordIsTruncated() throws IOException {
+        File dir = tempDir();
+        EventDispatcher d = dispatcher();
+        Account account = new Account(d);
+        d.register(account, Strength.STRONG);
+        EventJournal journal = new EventJournal(d, dir);
+        journal.append(new Deposit(1));
+        journal.close();
+
+        File[] segments = dir.listFiles();
+        assertEquals(segments.length, 1);
+        FileOutputStream out = new FileOutputStream(segments[0], true);
+        try {
+            // length of 100 bytes, crc and only 2 bytes of payload
+            out.write(new byte[]{100, 0, 0, 0, 0, 1, 2});
+        } finally {
+            out.close();
+        }
+
+        journal = new EventJournal(d, dir);
+        try {
+            assertEquals(journal.getNextSequence(), 1);
+            journal.append(new Deposit(2));
+            journal.replay(0);
+            assertEquals(account.deposits, Arrays.asList(1, 2));
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void testRecordsLargerThanBuffer() throws IOException {
+        File dir = tempDir();
+        EventDispatcher d = dispatcher();
+        final List<Integer> lengths = new ArrayList<Integer>();
+        d.register(new Object() {
+            @Handler
+            public void attachment(Attachment e) {
+                lengths.add(e.data.length);
+            }
+        }, Strength.STRONG);
+        EventJournal journal = new EventJournal(d, dir, new JavaEventSerializer(JavaEventSerializer.annotatedWith(Journaled.class)), EventJournal.DEFAULT_SEGMENT_SIZE, 0);
+        try {
+            for (int i = 1; i <= 3; i++) {
+                journal.append(new Attachment(new byte[i * 100000]));
+            }
+            journal.replay(0);
+            assertEquals(lengths, Arrays.asList(100000, 200000, 300000));
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void testClosedJournalIsNotAppended() throws IOException {
+        File dir = tempDir();
+        EventDispatcher d = dispatcher();
+        EventJournal journal = new EventJournal(d, dir);
+        journal.start();
+        journal.close();
+        d.fireEvent(new Deposit(1));
+        journal = new EventJournal(d, dir);
+        try {
+            assertEquals(journal.getNextSequence(), 0);
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void testModule() throws IOException {
+        File dir = tempDir();
+        Injector inj = Guice.createInjector(new EventDispatcherModule(), new EventJournalModule(dir));
+        EventJournal journal = inj.getInstance(EventJournal.class);
+        try {
+            inj.getInstance(EventDispatcher.class).fireEvent(new Deposit(1));
+            assertEquals(journal.getNextSequence(), 1);
+            assertEquals(journal.replay(0), 1);
+        } finally {
+            journal.close();
+        }
+        assertEquals(dir.list().length, 1);
+    }
+}
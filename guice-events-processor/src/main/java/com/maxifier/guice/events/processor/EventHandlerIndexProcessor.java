@@ -0,0 +1,165 @@
+package com.maxifier.guice.events.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes index of event handler methods of all compiled classes, which is read by guice-events instead of parsing
+ * classes by reflection. Classes without handlers are indexed too, since they are the most of classes seen by
+ * injector and skipping them is what saves startup time. The number of methods of each class is written too, so
+ * guice-events can tell that a class was changed since it was indexed.
+ * <p>
+ * Handler methods which can't be invoked by event dispatcher (private, static, with checked exceptions or several
+ * parameters) are reported as compilation errors.
+ */
+@SupportedAnnotationTypes("*")
+public class EventHandlerIndexProcessor extends AbstractProcessor {
+    /**
+     * Same as {@code ListenerIndex.RESOURCE} of guice-events.
+     */
+    static final String RESOURCE = "META-INF/x-guice/event-handlers.idx";
+
+    private static final String HANDLER = "com.maxifier.guice.events.Handler";
+
+    /**
+     * Number of methods followed by descriptors of handlers, by binary name of class.
+     */
+    private final Map<String, String> index = new TreeMap<String, String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element e : roundEnv.getRootElements()) {
+            if (e instanceof TypeElement) {
+                indexType((TypeElement) e);
+            }
+        }
+        if (roundEnv.processingOver() && !index.isEmpty()) {
+            write();
+        }
+        return false;
+    }
+
+    private void indexType(TypeElement type) {
+        List<String> handlers = new ArrayList<String>();
+        int methods = 0;
+        boolean indexable = true;
+        for (Element e : type.getEnclosedElements()) {
+            if (e instanceof TypeElement) {
+                indexType((TypeElement) e);
+            } else if (e.getKind() == ElementKind.METHOD) {
+                // implicit methods like values() of enum are counted too, they are seen by reflection
+                methods++;
+                if (isHandler(e)) {
+                    String descriptor = descriptor((ExecutableElement) e);
+                    if (descriptor == null) {
+                        indexable = false;
+                    } else {
+                        handlers.add(descriptor);
+                    }
+                }
+            }
+        }
+        // classes which can't be described are left to reflection
+        if (indexable) {
+            StringBuilder line = new StringBuilder().append(methods);
+            for (String handler : handlers) {
+                line.append(' ').append(handler);
+            }
+            index.put(processingEnv.getElementUtils().getBinaryName(type).toString(), line.toString());
+        }
+    }
+
+    private static boolean isHandler(Element method) {
+        for (AnnotationMirror a : method.getAnnotationMirrors()) {
+            if (((TypeElement) a.getAnnotationType().asElement()).getQualifiedName().contentEquals(HANDLER)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code name(paramType)} or null if the method can't be described
+     */
+    private String descriptor(ExecutableElement method) {
+        Set<Modifier> modifiers = method.getModifiers();
+        if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.PRIVATE)) {
+            error("Handler method should be non-private and non-static", method);
+            return null;
+        }
+        TypeMirror runtimeException = processingEnv.getElementUtils().getTypeElement(RuntimeException.class.getName()).asType();
+        for (TypeMirror exception : method.getThrownTypes()) {
+            if (!processingEnv.getTypeUtils().isAssignable(exception, runtimeException)) {
+                error("Handler method cannot throw checked exceptions, but it throws " + exception, method);
+                return null;
+            }
+        }
+        if (method.getParameters().size() > 1) {
+            error("Handler method couldn't have more than one parameter", method);
+            return null;
+        }
+        String name = method.getSimpleName().toString();
+        if (method.getParameters().isEmpty()) {
+            return name + "()";
+        }
+        TypeMirror param = processingEnv.getTypeUtils().erasure(method.getParameters().get(0).asType());
+        if (param.getKind().isPrimitive()) {
+            return name + "(" + param + ")";
+        }
+        if (param.getKind() == TypeKind.DECLARED) {
+            TypeElement paramType = (TypeElement) processingEnv.getTypeUtils().asElement(param);
+            return name + "(" + processingEnv.getElementUtils().getBinaryName(paramType) + ")";
+        }
+        return null;
+    }
+
+    private void error(String message, Element e) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, e);
+    }
+
+    private void write() {
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", RESOURCE);
+            Writer out = new OutputStreamWriter(file.openOutputStream(), "UTF-8");
+            try {
+                out.write("# event handlers indexed by " + getClass().getName() + "\n");
+                for (Map.Entry<String, String> entry : index.entrySet()) {
+                    out.write(entry.getKey());
+                    out.write(' ');
+                    out.write(entry.getValue());
+                    out.write('\n');
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Unable to write " + RESOURCE + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.maxifier.guice.events.processor;
+
+import org.testng.annotations.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class EventHandlerIndexProcessorUTest {
+    private static class Source extends SimpleJavaFileObject {
+        private final String code;
+
+        Source(String className, String code) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+
+    private static class Result {
+        final File out;
+        final boolean success;
+        final List<String> errors = new ArrayList<String>();
+        final List<String> index = new ArrayList<String>();
+
+        Result(File out, boolean success) {
+            this.out = out;
+            this.success = success;
+        }
+    }
+
+    private static Result compile(Source... sources) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        File out = Files.createTempDirectory("processor").toFile();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+                Arrays.asList("-d", out.getPath(), "-classpath", System.getProperty("java.class.path")),
+                null, Arrays.asList(sources));
+        task.setProcessors(Collections.singletonList(new EventHandlerIndexProcessor()));
+        Result res = new Result(out, task.call());
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+            if (d.getKind() == Diagnostic.Kind.ERROR) {
+                res.errors.add(d.getMessage(null));
+            }
+        }
+        File index = new File(out, EventHandlerIndexProcessor.RESOURCE);
+        if (index.exists()) {
+            for (String line : Files.readAllLines(index.toPath(), Charset.forName("UTF-8"))) {
+                if (!line.startsWith("#")) {
+                    res.index.add(line);
+                }
+            }
+        }
+        return res;
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        Result r = compile(
+                new Source("test.Event", "package test; public class Event {}"),
+                new Source("test.Plain", "package test; public class Plain { void handle(Event e) {} }"),
+                new Source("test.Listener",
+                        "package test;\n" +
+                        "import com.maxifier.guice.events.*;\n" +
+                        "import java.util.List;\n" +
+                        "public class Listener {\n" +
+                        "    @Handler public void second(Event e) {}\n" +
+                        "    @Handler @HandleClass(Event.class) void first() {}\n" +
+                        "    @Handler void primitive(int i) {}\n" +
+                        "    @Handler(batch = true) void batch(List<Event> events) {}\n" +
+                        "    public static class Nested { @Handler void nested(Nested n) {} }\n" +
+                        "    public static class Generic<T extends Event> { @Handler void generic(T t) {} }\n" +
+                        "    public static class Array { @Handler void array(Event[] events) {} }\n" +
+                        "}"));
+        assertTrue(r.success, r.errors.toString());
+        assertEquals(r.index, Arrays.asList(
+                "test.Event 0",
+                "test.Listener 4 second(test.Event) first() primitive(int) batch(java.util.List)",
+                "test.Listener$Generic 1 generic(test.Event)",
+                "test.Listener$Nested 1 nested(test.Listener$Nested)",
+                // array parameters are not described, so the class is left to reflection
+                "test.Plain 1"));
+    }
+
+    @Test
+    public void testMethodsAreCountedLikeReflection() throws Exception {
+        Result r = compile(
+                new Source("test.Kind", "package test; public enum Kind { A, B { void b() {} }; void a() {} }"),
+                new Source("test.Sorted",
+                        "package test;\n" +
+                        "import com.maxifier.guice.events.*;\n" +
+                        "public class Sorted implements Comparable<Sorted> {\n" +
+                        "    private int value;\n" +
+                        "    public int compareTo(Sorted o) { return 0; }\n" +
+                        "    @Handler void handle(String s) { Runnable r = () -> value++; r.run(); }\n" +
+                        "    class Inner { void inc() { value++; } }\n" +
+                        "}"));
+        assertTrue(r.success, r.errors.toString());
+        // anonymous class of enum constant is not indexed
+        assertEquals(r.index.size(), 3, r.index.toString());
+        URLClassLoader loader = new URLClassLoader(new URL[]{r.out.toURI().toURL()}, getClass().getClassLoader());
+        try {
+            for (String line : r.index) {
+                String[] tokens = line.split(" ");
+                int methods = 0;
+                for (Method method : loader.loadClass(tokens[0]).getDeclaredMethods()) {
+                    if (!method.isSynthetic()) {
+                        methods++;
+                    }
+                }
+                assertEquals(Integer.parseInt(tokens[1]), methods, line);
+            }
+        } finally {
+            loader.close();
+        }
+    }
+
+    @Test
+    public void testInvalidHandlers() throws IOException {
+        Result r = compile(new Source("test.Invalid",
+                "package test;\n" +
+                "import com.maxifier.guice.events.*;\n" +
+                "public class Invalid {\n" +
+                "    @Handler private void privateHandler(String s) {}\n" +
+                "    @Handler static void staticHandler(String s) {}\n" +
+                "    @Handler void checked(String s) throws Exception {}\n" +
+                "    @Handler void unchecked(String s) throws IllegalStateException {}\n" +
+                "    @Handler void twoParams(String s, String t) {}\n" +
+                "}"));
+        assertFalse(r.success);
+        assertEquals(r.errors.size(), 4, r.errors.toString());
+    }
+}
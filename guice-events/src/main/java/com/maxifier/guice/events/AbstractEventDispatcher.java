@@ -0,0 +1,331 @@
+package com.maxifier.guice.events;
+
+import com.google.inject.Inject;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Firing, measurement, tracing and deferred registration shared by {@link EventDispatcherImpl} and
+ * {@link ShardedEventDispatcher}. Subclasses only invoke handlers and keep listeners.
+ */
+abstract class AbstractEventDispatcher implements EventDispatcher {
+    final EventDispatcherMetrics metrics;
+
+    private final boolean deferRegistration;
+    /**
+     * Firing in progress in current thread, used to defer registrations made by handlers.
+     */
+    private final ThreadLocal<FiringState> firing = new ThreadLocal<FiringState>() {
+        @Override
+        protected FiringState initialValue() {
+            return new FiringState();
+        }
+    };
+    /**
+     * Deferred registrations of all threads, so they may be cancelled by {@link #unregister(Object)} from any thread.
+     */
+    private final Set<PendingRegistration> pendingRegistrations = Collections.newSetFromMap(new ConcurrentHashMap<PendingRegistration, Boolean>());
+
+    /**
+     * @param deferRegistration if true listeners registered by handlers will be registered when the outermost firing
+     *                          of the thread is finished; otherwise they are registered immediately
+     */
+    AbstractEventDispatcher(EventDispatcherMetrics metrics, boolean deferRegistration) {
+        this.metrics = metrics;
+        this.deferRegistration = deferRegistration;
+    }
+
+    /**
+     * Invokes handlers without deferring registrations, measuring and reporting unhandled event.
+     *
+     * @return true if the event was passed to at least one listener
+     */
+    abstract boolean fireEvent0(Object event);
+
+    /**
+     * Invokes handlers for events of the same class, like {@link #fireEvent0(Object)}.
+     *
+     * @param handled flags of handled events, set for events which were passed to at least one listener
+     */
+    abstract void fireEvents0(Class eventClass, List<Object> events, boolean[] handled);
+
+    abstract void register0(Object o, Strength strength);
+
+    /**
+     * Removes the listener, its deferred registrations are already cancelled.
+     */
+    abstract void unregister0(Object o);
+
+    @Override
+    //NOSONAR
+    public void fireEvent(Object event) {
+        boolean measure = metrics.isEnabled();
+        boolean sampled = measure && metrics.sampleLatency();
+        long start = sampled ? System.nanoTime() : 0;
+        EventTracer tracer = metrics.getTracer();
+        if (tracer != null) {
+            tracer.dispatchStarted(event.getClass(), 1);
+        }
+        boolean handled = false;
+        try {
+            if (deferRegistration) {
+                FiringState state = firing.get();
+                state.depth++;
+                try {
+                    handled = fireEvent0(event);
+                } finally {
+                    if (--state.depth == 0 && state.pending != null) {
+                        registerPending(state);
+                    }
+                }
+            } else {
+                handled = fireEvent0(event);
+            }
+        } finally {
+            if (tracer != null) {
+                tracer.dispatchFinished(event.getClass(), 1, handled ? 0 : 1);
+            }
+        }
+        if (measure) {
+            metrics.eventsDispatched(event.getClass(), 1, handled ? 0 : 1, sampled ? System.nanoTime() - start : -1);
+        }
+        if (!handled) {
+            unhandledEvent(event);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> fireEventAsync(Object event) {
+        Completion completion = new Completion();
+        Completion previous = completion.enter();
+        try {
+            fireEvent(event);
+        } finally {
+            Completion.exit(previous);
+            completion.done();
+        }
+        return completion.getFuture();
+    }
+
+    @Override
+    public void fireEvents(Collection<?> events) {
+        List<Object> unhandled;
+        if (deferRegistration) {
+            FiringState state = firing.get();
+            state.depth++;
+            try {
+                unhandled = fireEvents0(events);
+            } finally {
+                if (--state.depth == 0 && state.pending != null) {
+                    registerPending(state);
+                }
+            }
+        } else {
+            unhandled = fireEvents0(events);
+        }
+        for (Object event : unhandled) {
+            unhandledEvent(event);
+        }
+    }
+
+    /**
+     * Dispatches events grouped by class, in order of first appearance of the class.
+     *
+     * @return events which were not passed to any listener
+     */
+    private List<Object> fireEvents0(Collection<?> events) {
+        Map<Class, List<Object>> groups = new LinkedHashMap<Class, List<Object>>();
+        for (Object event : events) {
+            Class c = event.getClass();
+            List<Object> group = groups.get(c);
+            if (group == null) {
+                group = new ArrayList<Object>();
+                groups.put(c, group);
+            }
+            group.add(event);
+        }
+        List<Object> unhandled = Collections.emptyList();
+        EventTracer tracer = metrics.getTracer();
+        for (Map.Entry<Class, List<Object>> entry : groups.entrySet()) {
+            boolean measure = metrics.isEnabled();
+            boolean sampled = measure && metrics.sampleLatency();
+            long start = sampled ? System.nanoTime() : 0;
+            List<Object> group = entry.getValue();
+            boolean[] handled = new boolean[group.size()];
+            if (tracer != null) {
+                tracer.dispatchStarted(entry.getKey(), group.size());
+            }
+            try {
+                fireEvents0(entry.getKey(), group, handled);
+            } finally {
+                if (tracer != null) {
+                    tracer.dispatchFinished(entry.getKey(), group.size(), count(handled, false));
+                }
+            }
+            int unhandledInGroup = 0;
+            for (int i = 0; i < handled.length; i++) {
+                if (!handled[i]) {
+                    if (unhandled.isEmpty()) {
+                        unhandled = new ArrayList<Object>();
+                    }
+                    unhandled.add(group.get(i));
+                    unhandledInGroup++;
+                }
+            }
+            if (measure) {
+                metrics.eventsDispatched(entry.getKey(), group.size(), unhandledInGroup, sampled ? System.nanoTime() - start : -1);
+            }
+        }
+        return unhandled;
+    }
+
+    private static int count(boolean[] flags, boolean value) {
+        int n = 0;
+        for (boolean flag : flags) {
+            if (flag == value) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public EventDispatcherMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets error policy bound in injector, if any.
+     */
+    @Inject(optional = true)
+    void setErrorPolicy(HandlerErrorPolicy errorPolicy) {
+        metrics.setErrorPolicy(errorPolicy);
+    }
+
+    @Inject(optional = true)
+    void setTracer(EventTracer tracer) {
+        metrics.setTracer(tracer);
+    }
+
+    @Inject(optional = true)
+    void setDeadLetterHandler(DeadLetterHandler deadLetterHandler) {
+        metrics.getUnhandledEventTracker().setDeadLetterHandler(deadLetterHandler);
+    }
+
+    /**
+     * Called for events which were not passed to any handler. This implementation records them to
+     * {@link EventDispatcherMetrics#getUnhandledEventTracker() unhandled event tracker} and passes them to
+     * {@link EventDispatcherMetrics#getErrorPolicy() error policy}.
+     */
+    protected void unhandledEvent(Object event) {
+        metrics.getUnhandledEventTracker().record(event);
+        metrics.getErrorPolicy().eventUnhandled(event);
+    }
+
+    @Override
+    public final <T> void register(T o) throws CyclicFilterAnnotationException {
+        register1(o, null);
+    }
+
+    @Override
+    public final <T> Registration register(T o, Strength strength) throws CyclicFilterAnnotationException {
+        if (strength == null) {
+            throw new IllegalArgumentException("strength");
+        }
+        register1(o, strength);
+        return new ListenerRegistration(this, o, strength);
+    }
+
+    private <T> void register1(T o, Strength strength) {
+        FiringState state = deferRegistration ? firing.get() : null;
+        if (state == null || state.depth == 0) {
+            register0(o, strength);
+            return;
+        }
+        PendingRegistration r = new PendingRegistration(o, strength);
+        if (state.pending == null) {
+            state.pending = new ArrayDeque<PendingRegistration>();
+        }
+        state.pending.add(r);
+        pendingRegistrations.add(r);
+        metrics.registrationDeferred();
+    }
+
+    private void registerPending(FiringState state) {
+        PendingRegistration r;
+        while ((r = state.pending.poll()) != null) {
+            if (pendingRegistrations.remove(r)) {
+                metrics.registrationCompleted();
+                register0(r.listener, r.strength);
+            }
+        }
+        state.pending = null;
+    }
+
+    @Override
+    public void unregister(Object o) {
+        if (!pendingRegistrations.isEmpty()) {
+            for (Iterator<PendingRegistration> it = pendingRegistrations.iterator(); it.hasNext(); ) {
+                PendingRegistration r = it.next();
+                if (r.listener == o && pendingRegistrations.remove(r)) {
+                    metrics.registrationCompleted();
+                }
+            }
+        }
+        unregister0(o);
+    }
+
+    static final class FiringState {
+        /**
+         * Depth of nested firings in the thread.
+         */
+        int depth;
+        /**
+         * Registrations made by handlers, null if none.
+         */
+        Queue<PendingRegistration> pending;
+    }
+
+    static final class PendingRegistration {
+        final Object listener;
+        final Strength strength;
+
+        PendingRegistration(Object listener, Strength strength) {
+            this.listener = listener;
+            this.strength = strength;
+        }
+    }
+
+    static final class ListenerRegistration implements Registration {
+        private final EventDispatcher dispatcher;
+        private final Object listener;
+        private final WeakReference<Object> weakListener;
+
+        ListenerRegistration(EventDispatcher dispatcher, Object listener, Strength strength) {
+            this.dispatcher = dispatcher;
+            // registration must not prevent weak listener from being collected
+            this.listener = strength == Strength.STRONG ? listener : null;
+            this.weakListener = strength == Strength.STRONG ? null : new WeakReference<Object>(listener);
+        }
+
+        @Override
+        public void close() {
+            Object l = listener != null ? listener : weakListener.get();
+            if (l != null) {
+                dispatcher.unregister(l);
+            }
+        }
+    }
+}
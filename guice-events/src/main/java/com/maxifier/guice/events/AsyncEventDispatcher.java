@@ -0,0 +1,241 @@
+package com.maxifier.guice.events;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import gnu.trove.map.hash.THashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link EventDispatcher} which runs handlers annotated with {@code @Handler(async = true)} or
+ * {@code @Handler(executor = "name")} in executors configured by {@link AsyncExecutors}, other handlers are invoked
+ * in the thread firing event.
+ * <p>
+ * Invocations of asynchronous handlers of the same listener instance within the same executor are performed
+ * in the order of firing (unless {@link BackpressurePolicy#CALLER_RUNS} is triggered).
+ * An event is considered handled as soon as an asynchronous invocation is scheduled. Invocations which are not
+ * performed, because of {@link BackpressurePolicy#DROP_OLDEST} or because the dispatcher is shut down, are counted,
+ * see {@link #getDroppedInvocations()}.
+ */
+@Singleton
+public class AsyncEventDispatcher extends EventDispatcherImpl {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncEventDispatcher.class);
+
+    private final Map<String, Lanes> executors;
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * True in executor threads of this dispatcher.
+     */
+    private final ThreadLocal<Boolean> inLane = new ThreadLocal<Boolean>();
+
+    @Inject
+    public AsyncEventDispatcher(ListenerRegistrationQueue q, AsyncExecutors executors) {
+        // Registration queue may contain listeners awaiting for dispatcher, they should not be registered before
+        // executors are created, so we attach to the queue ourselves.
+        super(new ListenerRegistrationQueue(), true);
+        Map<String, Lanes> m = new THashMap<String, Lanes>();
+        for (AsyncExecutors.Spec spec : executors.getSpecs().values()) {
+            m.put(spec.name, new Lanes(spec));
+        }
+        this.executors = m;
+        q.setDispatcher(this);
+    }
+
+    @Override
+    HandlerExecutor getHandlerExecutor(HandlerMethod<?> method) {
+        Lanes lanes = executors.get(method.getExecutor());
+        if (lanes == null) {
+            throw new RuntimeException("Handler " + method + " refers to unknown executor \"" + method.getExecutor() + "\"");
+        }
+        return lanes;
+    }
+
+    /**
+     * Stops all executor threads. Queued invocations are performed, new ones are dropped.
+     */
+    public void shutdown() {
+        for (Lanes lanes : executors.values()) {
+            lanes.shutdown();
+        }
+    }
+
+    /**
+     * Blocks until all executors have completed queued invocations after {@link #shutdown()}.
+     *
+     * @return true if executors terminated, false if the timeout elapsed
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Lanes lanes : executors.values()) {
+            if (!lanes.awaitTermination(deadline)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of asynchronous invocations which were dropped instead of being performed
+     */
+    public long getDroppedInvocations() {
+        return dropped.get();
+    }
+
+    private final class Lanes implements HandlerExecutor {
+        private final ThreadPoolExecutor[] lanes;
+
+        Lanes(AsyncExecutors.Spec spec) {
+            lanes = new ThreadPoolExecutor[spec.lanes];
+            String name = "EventDispatcher executor " + (spec.name.isEmpty() ? "default" : spec.name) + " #";
+            for (int i = 0; i < lanes.length; i++) {
+                final String threadName = name + i;
+                lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<Runnable>(spec.capacity),
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(final Runnable r) {
+                                Thread t = new Thread(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        inLane.set(Boolean.TRUE);
+                                        r.run();
+                                    }
+                                }, threadName);
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        },
+                        createRejectionHandler(spec.policy));
+            }
+        }
+
+        @Override
+        public <T> void execute(HandlerMethodInstance<T> method, T listener, Object event, Completion completion) {
+            int h = System.identityHashCode(listener);
+            h ^= h >>> 16;
+            lanes[(h & Integer.MAX_VALUE) % lanes.length].execute(new Invocation<T>(method, listener, event, completion));
+        }
+
+        void shutdown() {
+            for (ThreadPoolExecutor lane : lanes) {
+                lane.shutdown();
+            }
+        }
+
+        boolean awaitTermination(long deadline) throws InterruptedException {
+            for (ThreadPoolExecutor lane : lanes) {
+                if (!lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Invocation<T> implements Runnable {
+        private final HandlerMethodInstance<T> method;
+        private final T listener;
+        private final Object event;
+        private final Completion completion;
+
+        Invocation(HandlerMethodInstance<T> method, T listener, Object event, Completion completion) {
+            this.method = method;
+            this.listener = listener;
+            this.event = event;
+            this.completion = completion;
+        }
+
+        @Override
+        public void run() {
+            try {
+                method.invokeNow(listener, event);
+            } finally {
+                drop();
+            }
+        }
+
+        /**
+         * Called instead of {@link #run()} for invocation discarded from the queue.
+         */
+        void drop() {
+            if (completion != null) {
+                completion.done();
+            }
+        }
+    }
+
+    private void drop(Runnable r) {
+        if (r != null) {
+            dropped.incrementAndGet();
+        }
+        if (r instanceof Invocation) {
+            ((Invocation) r).drop();
+        }
+    }
+
+    private RejectedExecutionHandler createRejectionHandler(BackpressurePolicy policy) {
+        switch (policy) {
+            case BLOCK:
+                return new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        if (executor.isShutdown()) {
+                            drop(r);
+                            return;
+                        }
+                        if (inLane.get() != null) {
+                            // the lane may wait for this thread, so waiting for it could deadlock
+                            r.run();
+                            return;
+                        }
+                        try {
+                            executor.getQueue().put(r);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            LOG.warn("Interrupted while waiting for free slot in queue, the invocation is dropped");
+                            drop(r);
+                            return;
+                        }
+                        // the executor may have been shut down and terminated before the put
+                        if (executor.isShutdown() && executor.remove(r)) {
+                            drop(r);
+                        }
+                    }
+                };
+            case DROP_OLDEST:
+                return new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        if (executor.isShutdown()) {
+                            drop(r);
+                            return;
+                        }
+                        LOG.debug("Queue of asynchronous handlers is full, the oldest invocation is dropped");
+                        drop(executor.getQueue().poll());
+                        executor.execute(r);
+                    }
+                };
+            case CALLER_RUNS:
+                return new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        if (executor.isShutdown()) {
+                            drop(r);
+                        } else {
+                            r.run();
+                        }
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("Unknown policy " + policy);
+        }
+    }
+}
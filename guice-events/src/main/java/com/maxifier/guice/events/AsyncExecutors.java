@@ -0,0 +1,79 @@
+package com.maxifier.guice.events;
+
+import gnu.trove.map.hash.THashMap;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Configuration of named executors for {@link AsyncEventDispatcher}.
+ * <p>
+ * Each executor consists of a number of lanes. A lane is a single thread with bounded queue, all invocations of
+ * handlers of the same listener instance go to the same lane, so they are performed in the order of firing.
+ * <pre>
+ * new AsyncExecutors()
+ *     .withDefault(4, 1024, BackpressurePolicy.BLOCK)
+ *     .with("io", 16, 256, BackpressurePolicy.CALLER_RUNS);
+ * </pre>
+ */
+public final class AsyncExecutors {
+    /**
+     * Name of executor used by handlers annotated with {@code @Handler(async = true)} without explicit executor.
+     */
+    public static final String DEFAULT = "";
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final Map<String, Spec> specs = new THashMap<String, Spec>();
+
+    public AsyncExecutors() {
+        specs.put(DEFAULT, new Spec(DEFAULT, Runtime.getRuntime().availableProcessors(), DEFAULT_CAPACITY, BackpressurePolicy.BLOCK));
+    }
+
+    /**
+     * Configure default executor.
+     *
+     * @param lanes    number of threads
+     * @param capacity queue capacity of each lane
+     * @param policy   what to do when the lane queue is full
+     * @return this
+     */
+    public AsyncExecutors withDefault(int lanes, int capacity, BackpressurePolicy policy) {
+        return with(DEFAULT, lanes, capacity, policy);
+    }
+
+    /**
+     * Configure named executor.
+     *
+     * @param name     name referred by {@link Handler#executor()}
+     * @param lanes    number of threads
+     * @param capacity queue capacity of each lane
+     * @param policy   what to do when the lane queue is full
+     * @return this
+     */
+    public AsyncExecutors with(String name, int lanes, int capacity, BackpressurePolicy policy) {
+        if (lanes <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Executor " + name + " should have positive number of lanes and capacity");
+        }
+        specs.put(name, new Spec(name, lanes, capacity, policy));
+        return this;
+    }
+
+    Map<String, Spec> getSpecs() {
+        return Collections.unmodifiableMap(specs);
+    }
+
+    static final class Spec {
+        final String name;
+        final int lanes;
+        final int capacity;
+        final BackpressurePolicy policy;
+
+        Spec(String name, int lanes, int capacity, BackpressurePolicy policy) {
+            this.name = name;
+            this.lanes = lanes;
+            this.capacity = capacity;
+            this.policy = policy;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.maxifier.guice.events;
+
+/**
+ * What {@link AsyncEventDispatcher} does when the queue of asynchronous handler invocations is full.
+ */
+public enum BackpressurePolicy {
+    /**
+     * The thread firing event waits until there is a free slot in the queue. If the event is fired by an
+     * asynchronous handler, the handler is invoked in its thread instead, as waiting for the lanes could deadlock.
+     */
+    BLOCK,
+    /**
+     * The oldest queued invocation is discarded.
+     */
+    DROP_OLDEST,
+    /**
+     * The handler is invoked in the thread firing event. Note that ordering of invocations for the listener is not
+     * guaranteed in this case.
+     */
+    CALLER_RUNS
+}
@@ -23,6 +23,15 @@ public class ClassgenHandlerInvocator<T, L> extends ReflectionHandlerInvocator<T
 
     private static final Map<Method, FastMethod> METHODS_CACHE = new THashMap<Method, FastMethod>();
     private static final Object[] NO_ARGS = {};
+    /**
+     * Reusable argument arrays, so invocation doesn't allocate.
+     */
+    private static final ThreadLocal<Object[]> ARGS = new ThreadLocal<Object[]>() {
+        @Override
+        protected Object[] initialValue() {
+            return new Object[1];
+        }
+    };
 
     private final FastMethod fastMethod;
 
@@ -54,11 +63,17 @@ public class ClassgenHandlerInvocator<T, L> extends ReflectionHandlerInvocator<T
         if (fastMethod == null) {
             return super.invoke(instance, message);
         } else {
-            if (paramType != null) {
-                return fastMethod.invoke(instance, new Object[]{message});
-            } else {
+            if (paramType == null) {
                 return fastMethod.invoke(instance, NO_ARGS);
             }
+            // generated code reads arguments before the call, so the array may be reused by nested invocations
+            Object[] args = ARGS.get();
+            args[0] = message;
+            try {
+                return fastMethod.invoke(instance, args);
+            } finally {
+                args[0] = null;
+            }
         }
     }
 }
@@ -0,0 +1,26 @@
+package com.maxifier.guice.events;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks "latest value wins" event classes. {@link CoalescingEventDispatcher} keeps only the newest pending event
+ * of the class per key and delivers it on the next tick, other dispatchers deliver such events as usual.
+ * <pre>
+ * &#64;Coalesce(key = "getSymbol")
+ * class PriceUpdate { String getSymbol() {...} }
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+@Inherited
+public @interface Coalesce {
+    /**
+     * Name of no-arg method or field of event which value identifies events to merge, values are compared with
+     * {@code equals}. Empty key means that all events of the class are merged.
+     */
+    String key() default "";
+}
@@ -0,0 +1,320 @@
+package com.maxifier.guice.events;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link EventDispatcher} which merges events of classes annotated with {@link Coalesce}: pending events with the
+ * same key are replaced by the newest one, which is delivered on the next tick in the tick thread. Events of other
+ * classes are delivered immediately.
+ * <p>
+ * The tick starts when the first event is queued, so an idle dispatcher doesn't wake up. Events pending at the same
+ * tick are delivered by {@link #fireEvents(Collection)}, in the order their keys first appeared.
+ * {@link #fireEventAsync(Object)} of coalesced event completes after delivery of the event which replaced it.
+ */
+@Singleton
+public class CoalescingEventDispatcher extends EventDispatcherImpl {
+    private static final Logger LOG = LoggerFactory.getLogger(CoalescingEventDispatcher.class);
+
+    /**
+     * Name of {@code long} constant binding with tick period in milliseconds.
+     */
+    public static final String TICK_MILLIS = "com.maxifier.guice.events.coalescingTickMillis";
+
+    private static final KeyExtractor NOT_COALESCED = new KeyExtractor() {
+        @Override
+        Object getKey(Object event) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    private static final KeyExtractor CLASS_KEY = new KeyExtractor() {
+        @Override
+        Object getKey(Object event) {
+            return null;
+        }
+    };
+
+    private static final MethodType KEY_GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final ClassValue<KeyExtractor> KEYS = new ClassValue<KeyExtractor>() {
+        @Override
+        protected KeyExtractor computeValue(Class<?> type) {
+            return createKeyExtractor(type);
+        }
+    };
+
+    private final long tickMillis;
+    private final ScheduledExecutorService timer;
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                LOG.error("Unable to deliver coalesced events", e);
+            }
+        }
+    };
+    private final LongAdder coalesced = new LongAdder();
+
+    private final Object lock = new Object();
+    /**
+     * Guarded by {@link #lock}.
+     */
+    private Map<Key, Slot> pending = new LinkedHashMap<Key, Slot>();
+    /**
+     * Guarded by {@link #lock}.
+     */
+    private boolean shutdown;
+
+    @Inject
+    public CoalescingEventDispatcher(ListenerRegistrationQueue q, @Named(TICK_MILLIS) long tickMillis) {
+        // Registration queue may contain listeners awaiting for dispatcher, they should not be registered before
+        // the timer is created, so we attach to the queue ourselves.
+        super(new ListenerRegistrationQueue(), true);
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick should be positive, but it is " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "EventDispatcher coalescing tick");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        timer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.timer = timer;
+        q.setDispatcher(this);
+    }
+
+    @Override
+    public void fireEvent(Object event) {
+        KeyExtractor extractor = KEYS.get(event.getClass());
+        if (extractor == NOT_COALESCED || !enqueue(event, extractor)) {
+            super.fireEvent(event);
+        }
+    }
+
+    @Override
+    public void fireEvents(Collection<?> events) {
+        List<Object> immediate = new ArrayList<Object>(events.size());
+        for (Object event : events) {
+            KeyExtractor extractor = KEYS.get(event.getClass());
+            if (extractor == NOT_COALESCED || !enqueue(event, extractor)) {
+                immediate.add(event);
+            }
+        }
+        if (!immediate.isEmpty()) {
+            super.fireEvents(immediate);
+        }
+    }
+
+    /**
+     * @return false if the dispatcher is shut down and event should be delivered immediately
+     */
+    private boolean enqueue(Object event, KeyExtractor extractor) {
+        Key key = new Key(event.getClass(), extractor.getKey(event));
+        Completion completion = Completion.current();
+        synchronized (lock) {
+            if (shutdown) {
+                return false;
+            }
+            if (pending.isEmpty()) {
+                // under the lock, so the tick can't be scheduled after shutdown
+                timer.schedule(flushTask, tickMillis, TimeUnit.MILLISECONDS);
+            }
+            Slot slot = pending.get(key);
+            if (slot == null) {
+                slot = new Slot(event);
+                pending.put(key, slot);
+            } else {
+                slot.event = event;
+                coalesced.increment();
+            }
+            if (completion != null) {
+                completion.fork();
+                slot.addCompletion(completion);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Delivers pending events in the calling thread without waiting for the tick.
+     */
+    public void flush() {
+        Map<Key, Slot> slots;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            slots = pending;
+            pending = new LinkedHashMap<Key, Slot>();
+        }
+        List<Object> events = new ArrayList<Object>(slots.size());
+        final List<Completion> waiting = new ArrayList<Completion>();
+        for (Slot slot : slots.values()) {
+            events.add(slot.event);
+            if (slot.completions != null) {
+                waiting.addAll(slot.completions);
+            }
+        }
+        if (waiting.isEmpty()) {
+            super.fireEvents(events);
+            return;
+        }
+        Completion completion = new Completion();
+        Completion previous = completion.enter();
+        try {
+            super.fireEvents(events);
+        } finally {
+            Completion.exit(previous);
+            completion.done();
+        }
+        completion.getFuture().thenRun(new Runnable() {
+            @Override
+            public void run() {
+                for (Completion c : waiting) {
+                    c.done();
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the tick and delivers pending events. Events fired later are delivered immediately.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+        }
+        timer.shutdown();
+        flush();
+    }
+
+    /**
+     * @return number of events which were replaced by newer events before delivery
+     */
+    public long getCoalescedEvents() {
+        return coalesced.sum();
+    }
+
+    private static KeyExtractor createKeyExtractor(Class<?> c) {
+        Coalesce coalesce = c.getAnnotation(Coalesce.class);
+        if (coalesce == null) {
+            return NOT_COALESCED;
+        }
+        String name = coalesce.key();
+        if (name.isEmpty()) {
+            return CLASS_KEY;
+        }
+        for (Class<?> t = c; t != null; t = t.getSuperclass()) {
+            try {
+                Method method = t.getDeclaredMethod(name);
+                // invokes the method directly rather than via reflection for every event
+                final LambdaHandlerInvocator<Object, Object> invocator = new LambdaHandlerInvocator<Object, Object>(method);
+                return new KeyExtractor() {
+                    @Override
+                    Object getKey(Object event) {
+                        try {
+                            return invocator.invoke(event, null);
+                        } catch (Exception e) {
+                            throw new RuntimeException("Unable to get coalescing key of " + event, e);
+                        }
+                    }
+                };
+            } catch (NoSuchMethodException ignored) {
+                // try field
+            }
+            try {
+                Field field = t.getDeclaredField(name);
+                field.setAccessible(true);
+                final MethodHandle getter = MethodHandles.lookup().unreflectGetter(field).asType(KEY_GETTER_TYPE);
+                return new KeyExtractor() {
+                    @Override
+                    Object getKey(Object event) {
+                        try {
+                            return getter.invokeExact(event);
+                        } catch (Throwable e) {
+                            throw new RuntimeException("Unable to get coalescing key of " + event, e);
+                        }
+                    }
+                };
+            } catch (NoSuchFieldException ignored) {
+                // try superclass
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("Unable to access coalescing key of " + c, e);
+            }
+        }
+        throw new RuntimeException("Event class " + c + " has neither no-arg method nor field \"" + name + "\" referred by @Coalesce");
+    }
+
+    private abstract static class KeyExtractor {
+        abstract Object getKey(Object event);
+    }
+
+    private static final class Key {
+        private final Class type;
+        private final Object value;
+
+        Key(Class type, Object value) {
+            this.type = type;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return type == k.type && (value == null ? k.value == null : value.equals(k.value));
+        }
+
+        @Override
+        public int hashCode() {
+            return type.hashCode() * 31 + (value == null ? 0 : value.hashCode());
+        }
+    }
+
+    private static final class Slot {
+        Object event;
+        /**
+         * Completions of {@link #fireEventAsync(Object)} waiting for delivery, null if none.
+         */
+        List<Completion> completions;
+
+        Slot(Object event) {
+            this.event = event;
+        }
+
+        void addCompletion(Completion completion) {
+            if (completions == null) {
+                completions = new ArrayList<Completion>(1);
+            }
+            completions.add(completion);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.maxifier.guice.events;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks handler invocations caused by {@link EventDispatcher#fireEventAsync(Object)}: the firing itself and every
+ * asynchronous invocation scheduled by the firing thread while it is in progress.
+ */
+final class Completion {
+    private static final ThreadLocal<Completion> CURRENT = new ThreadLocal<Completion>();
+
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final CompletableFuture<Void> future = new CompletableFuture<Void>();
+
+    /**
+     * @return completion of asynchronous firing in progress in current thread, null if none
+     */
+    static Completion current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes this completion current for the calling thread.
+     *
+     * @return previous completion which should be passed to {@link #exit(Completion)}
+     */
+    Completion enter() {
+        Completion previous = CURRENT.get();
+        CURRENT.set(this);
+        return previous;
+    }
+
+    static void exit(Completion previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Registers one more invocation to wait for.
+     */
+    void fork() {
+        pending.incrementAndGet();
+    }
+
+    /**
+     * Notifies that an invocation is finished.
+     */
+    void done() {
+        if (pending.decrementAndGet() == 0) {
+            future.complete(null);
+        }
+    }
+
+    CompletableFuture<Void> getFuture() {
+        return future;
+    }
+}
@@ -0,0 +1,13 @@
+package com.maxifier.guice.events;
+
+/**
+ * Event which may be consumed by a handler. Once the event is consumed {@link EventDispatcher} doesn't pass it to
+ * remaining handlers and listeners, so handlers which may consume event should have higher
+ * {@link Handler#priority() priority}.
+ * <p>
+ * Asynchronous handlers are scheduled in dispatch order, but consuming event in an asynchronous handler doesn't
+ * affect dispatch.
+ */
+public interface ConsumableEvent {
+    boolean isConsumed();
+}
@@ -0,0 +1,12 @@
+package com.maxifier.guice.events;
+
+/**
+ * Receives events which were not passed to any handler, see
+ * {@link UnhandledEventTracker#setDeadLetterHandler(DeadLetterHandler)}. It is invoked in the thread which fired the
+ * event, so it should be fast and shouldn't throw exceptions.
+ *
+ * @see FileDeadLetterHandler
+ */
+public interface DeadLetterHandler {
+    void deadLetter(Object event);
+}
@@ -0,0 +1,233 @@
+package com.maxifier.guice.events;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link HandlerErrorPolicy} which logs failures at a bounded rate.
+ * <p>
+ * Exceptions of the same class thrown by the same handler, and unhandled events of the same class, are logged at
+ * most once per log interval; the next message reports how many were suppressed meanwhile. Nothing is lost though:
+ * every failure is counted and the last ones are kept in a ring buffer, see {@link #getRecentErrors()}.
+ */
+public class DefaultHandlerErrorPolicy implements HandlerErrorPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultHandlerErrorPolicy.class);
+
+    public static final long DEFAULT_LOG_INTERVAL_MILLIS = 10000;
+    public static final int DEFAULT_RECENT_ERRORS = 100;
+
+    /**
+     * Failures of handlers beyond this number of distinct kinds share the same log limit.
+     */
+    private static final int MAX_KINDS = 1024;
+
+    private final long logIntervalNanos;
+    private final ConcurrentHashMap<Kind, LogLimit> handlerLimits = new ConcurrentHashMap<Kind, LogLimit>();
+    private final LogLimit otherHandlersLimit = new LogLimit();
+    private final ClassValue<LogLimit> unhandledLimits = new ClassValue<LogLimit>() {
+        @Override
+        protected LogLimit computeValue(Class<?> type) {
+            return new LogLimit();
+        }
+    };
+
+    private final AtomicReferenceArray<HandlerError> recent;
+    private final AtomicLong recentCount = new AtomicLong();
+
+    private final LongAdder handlerFailures = new LongAdder();
+    private final LongAdder unhandledEvents = new LongAdder();
+    private final LongAdder suppressedLogs = new LongAdder();
+
+    public DefaultHandlerErrorPolicy() {
+        this(DEFAULT_LOG_INTERVAL_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_RECENT_ERRORS);
+    }
+
+    /**
+     * @param logInterval  minimal interval between messages about failures of the same kind, zero to log every failure
+     * @param recentErrors number of the last handler failures to keep
+     */
+    public DefaultHandlerErrorPolicy(long logInterval, TimeUnit unit, int recentErrors) {
+        if (logInterval < 0) {
+            throw new IllegalArgumentException("Log interval should not be negative, but it is " + logInterval);
+        }
+        if (recentErrors <= 0) {
+            throw new IllegalArgumentException("Number of recent errors should be positive, but it is " + recentErrors);
+        }
+        logIntervalNanos = unit.toNanos(logInterval);
+        recent = new AtomicReferenceArray<HandlerError>(recentErrors);
+    }
+
+    @Override
+    public void handlerFailed(HandlerMethodInfo handler, Object event, Throwable exception) {
+        handlerFailures.increment();
+        recent.set((int) (recentCount.getAndIncrement() % recent.length()),
+                new HandlerError(System.currentTimeMillis(), handler, event.getClass(), exception));
+
+        long suppressed = handlerLimit(handler, exception).acquire(logIntervalNanos);
+        if (suppressed >= 0) {
+            LOG.warn("Unhandled exception in handler " + handler + suppressedMessage(suppressed), exception);
+        } else {
+            suppressedLogs.increment();
+        }
+    }
+
+    private LogLimit handlerLimit(HandlerMethodInfo handler, Throwable exception) {
+        Kind kind = new Kind(handler, exception.getClass());
+        LogLimit limit = handlerLimits.get(kind);
+        if (limit == null) {
+            if (handlerLimits.size() >= MAX_KINDS) {
+                return otherHandlersLimit;
+            }
+            limit = new LogLimit();
+            LogLimit old = handlerLimits.putIfAbsent(kind, limit);
+            if (old != null) {
+                limit = old;
+            }
+        }
+        return limit;
+    }
+
+    @Override
+    public void eventUnhandled(Object event) {
+        unhandledEvents.increment();
+        long suppressed = unhandledLimits.get(event.getClass()).acquire(logIntervalNanos);
+        if (suppressed >= 0) {
+            LOG.warn("Event " + event + " of class " + event.getClass() + " was not processed" + suppressedMessage(suppressed));
+        } else {
+            suppressedLogs.increment();
+        }
+    }
+
+    private static String suppressedMessage(long suppressed) {
+        return suppressed == 0 ? "" : " (" + suppressed + " similar messages suppressed)";
+    }
+
+    /**
+     * @return number of exceptions thrown by handlers, counted even if metrics are disabled
+     */
+    public long getHandlerFailures() {
+        return handlerFailures.sum();
+    }
+
+    /**
+     * @return number of events not passed to any handler, counted even if metrics are disabled
+     */
+    public long getUnhandledEvents() {
+        return unhandledEvents.sum();
+    }
+
+    /**
+     * @return number of failures which were not logged due to rate limit
+     */
+    public long getSuppressedLogs() {
+        return suppressedLogs.sum();
+    }
+
+    /**
+     * @return the last handler failures, oldest first
+     */
+    public List<HandlerError> getRecentErrors() {
+        long end = recentCount.get();
+        long start = Math.max(0, end - recent.length());
+        List<HandlerError> res = new ArrayList<HandlerError>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            HandlerError e = recent.get((int) (i % recent.length()));
+            // the slot may be not written yet by a concurrent failure
+            if (e != null) {
+                res.add(e);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Failure of a handler. Event itself is not kept, so that failures don't retain events.
+     */
+    public static final class HandlerError {
+        private final long timeMillis;
+        private final HandlerMethodInfo handler;
+        private final Class eventClass;
+        private final Throwable exception;
+
+        HandlerError(long timeMillis, HandlerMethodInfo handler, Class eventClass, Throwable exception) {
+            this.timeMillis = timeMillis;
+            this.handler = handler;
+            this.eventClass = eventClass;
+            this.exception = exception;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public HandlerMethodInfo getHandler() {
+            return handler;
+        }
+
+        public Class getEventClass() {
+            return eventClass;
+        }
+
+        public Throwable getException() {
+            return exception;
+        }
+
+        @Override
+        public String toString() {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(timeMillis)) + " " + handler +
+                    " failed on " + eventClass.getName() + ": " + exception;
+        }
+    }
+
+    private static final class Kind {
+        private final HandlerMethodInfo handler;
+        private final Class exceptionClass;
+
+        Kind(HandlerMethodInfo handler, Class exceptionClass) {
+            this.handler = handler;
+            this.exceptionClass = exceptionClass;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Kind)) {
+                return false;
+            }
+            Kind that = (Kind) o;
+            return handler == that.handler && exceptionClass == that.exceptionClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(handler) * 31 + exceptionClass.hashCode();
+        }
+    }
+
+    private static final class LogLimit {
+        private final AtomicLong nextLogNanos = new AtomicLong(Long.MIN_VALUE);
+        private final LongAdder suppressed = new LongAdder();
+
+        /**
+         * @return number of messages suppressed since the last one if this message may be logged, -1 otherwise
+         */
+        long acquire(long intervalNanos) {
+            long now = System.nanoTime();
+            long next = nextLogNanos.get();
+            if ((next == Long.MIN_VALUE || now - next >= 0) && nextLogNanos.compareAndSet(next, now + intervalNanos)) {
+                return suppressed.sumThenReset();
+            }
+            suppressed.increment();
+            return -1;
+        }
+    }
+}
@@ -12,12 +12,15 @@ import java.util.EnumSet;
  */
 public class EnumMatcher<T extends Enum<T>> implements EventMatcher<T> {
     private final EnumSet<T> enums;
+    private final Class<T> enumClass;
 
     public EnumMatcher(T[] values) {
         if (values.length == 0) {
             enums = null;
+            enumClass = null;
         } else {
-            enums = EnumSet.noneOf(values[0].getDeclaringClass());
+            enumClass = values[0].getDeclaringClass();
+            enums = EnumSet.noneOf(enumClass);
             enums.addAll(Arrays.asList(values));
         }
     }
@@ -26,4 +29,15 @@ public class EnumMatcher<T extends Enum<T>> implements EventMatcher<T> {
     public boolean matches(T event) {
         return enums == null || enums.contains(event);
     }
+
+    /**
+     * @return matched values, null if every value is matched
+     */
+    EnumSet<T> getEnums() {
+        return enums;
+    }
+
+    Class<T> getEnumClass() {
+        return enumClass;
+    }
 }
@@ -0,0 +1,38 @@
+package com.maxifier.guice.events;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dispatch statistics of events of a single class.
+ */
+public final class EventClassMetrics {
+    private final LongAdder fired = new LongAdder();
+    private final LongAdder unhandled = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    void record(int events, int unhandled, long nanos) {
+        fired.add(events);
+        if (unhandled != 0) {
+            this.unhandled.add(unhandled);
+        }
+        if (nanos >= 0) {
+            latency.record(nanos);
+        }
+    }
+
+    public long getFired() {
+        return fired.sum();
+    }
+
+    public long getUnhandled() {
+        return unhandled.sum();
+    }
+
+    /**
+     * @return sampled latencies of {@link EventDispatcher#fireEvent(Object)} calls and of class groups of
+     *         {@link EventDispatcher#fireEvents(java.util.Collection)} calls
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+}
@@ -2,16 +2,86 @@ package com.maxifier.guice.events;
 
 import com.google.inject.ImplementedBy;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @ImplementedBy(EventDispatcherImpl.class)
 public interface EventDispatcher {
     void fireEvent(Object event);
 
+    /**
+     * Fires a number of events at once. Events are grouped by class and handlers are resolved once per group,
+     * each handler receives events of a group in the order of the collection before the next handler is invoked.
+     * Batch handlers (see {@link Handler#batch()}) receive all matching events of a group in a single invocation.
+     * <p>
+     * Default implementation fires events one by one with {@link #fireEvent(Object)}.
+     *
+     * @param events events to fire
+     */
+    default void fireEvents(Collection<?> events) {
+        for (Object event : events) {
+            fireEvent(event);
+        }
+    }
+
+    /**
+     * Fires event like {@link #fireEvent(Object)} and returns a future which completes when all handlers have
+     * finished, including asynchronous handlers scheduled by the firing. Synchronous handlers are invoked before
+     * this method returns. Exceptions of handlers are logged just like for {@link #fireEvent(Object)}, they don't
+     * fail the future.
+     * <p>
+     * Default implementation fires event with {@link #fireEvent(Object)} and returns completed future, so it doesn't
+     * wait for asynchronous handlers.
+     *
+     * @param event event to fire
+     * @return future completed when all invocations of handlers caused by the firing are finished
+     */
+    default CompletableFuture<Void> fireEventAsync(Object event) {
+        fireEvent(event);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Registers listener with the strength defined by {@link ListenerStrength} annotation of its class, listeners of
+     * not annotated classes are referenced weakly.
+     */
     <T> void register(T o);
 
+    /**
+     * Registers listener with given reference strength. If the listener is already registered with weak reference
+     * and strong one is requested, the reference becomes strong.
+     * <p>
+     * Default implementation throws {@link UnsupportedOperationException}.
+     *
+     * @return registration which can be closed to unregister the listener
+     */
+    default <T> Registration register(T o, Strength strength) {
+        throw new UnsupportedOperationException(getClass().getName() + " doesn't support registration with strength");
+    }
+
+    /**
+     * Unregisters listener. It doesn't receive events fired after this method returns, the method may be called
+     * from a handler.
+     * <p>
+     * Default implementation throws {@link UnsupportedOperationException}.
+     */
+    default void unregister(Object o) {
+        throw new UnsupportedOperationException(getClass().getName() + " doesn't support unregistration");
+    }
+
     Map<Class, List<? extends HandlerMethodInfo>> getHandlersByEventClass();
 
     Map<Class, List<? extends HandlerMethodInfo>> getHandlersByListenerClass();
+
+    /**
+     * Default implementation throws {@link UnsupportedOperationException}, so {@link EventDispatcherControl} can't
+     * show metrics of such dispatcher.
+     *
+     * @return metrics of this dispatcher, disabled by default
+     */
+    default EventDispatcherMetrics getMetrics() {
+        throw new UnsupportedOperationException(getClass().getName() + " doesn't provide metrics");
+    }
 }
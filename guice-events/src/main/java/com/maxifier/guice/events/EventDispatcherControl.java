@@ -3,8 +3,20 @@ package com.maxifier.guice.events;
 import com.google.inject.Inject;
 import com.maxifier.guice.mbean.MBean;
 
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -16,6 +28,29 @@ import java.util.Map;
  */
 @MBean(name = "service=EventDispatcher")
 public class EventDispatcherControl implements EventDispatcherControlMBean {
+    private static final String[] HANDLER_ITEMS = withLatency("handler", "matcherInvocations", "methodInvocations", "exceptions");
+    private static final String[] EVENT_CLASS_ITEMS = withLatency("eventClass", "fired", "unhandled");
+    private static final TabularType HANDLER_METRICS_TYPE;
+    private static final TabularType EVENT_CLASS_METRICS_TYPE;
+    private static final String[] UNHANDLED_ITEMS = {"eventClass", "count"};
+    private static final TabularType UNHANDLED_COUNTS_TYPE;
+
+    static {
+        try {
+            HANDLER_METRICS_TYPE = new TabularType("HandlerMetrics", "Metrics of handlers",
+                    new CompositeType("HandlerMetric", "Metrics of handler", HANDLER_ITEMS, HANDLER_ITEMS, withLatencyTypes(SimpleType.STRING, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG)),
+                    new String[]{"handler"});
+            EVENT_CLASS_METRICS_TYPE = new TabularType("EventClassMetrics", "Metrics of event classes",
+                    new CompositeType("EventClassMetric", "Metrics of event class", EVENT_CLASS_ITEMS, EVENT_CLASS_ITEMS, withLatencyTypes(SimpleType.STRING, SimpleType.LONG, SimpleType.LONG)),
+                    new String[]{"eventClass"});
+            UNHANDLED_COUNTS_TYPE = new TabularType("UnhandledEventCounts", "Unhandled events by class",
+                    new CompositeType("UnhandledEventCount", "Unhandled events of class", UNHANDLED_ITEMS, UNHANDLED_ITEMS, new OpenType[]{SimpleType.STRING, SimpleType.LONG}),
+                    new String[]{"eventClass"});
+        } catch (OpenDataException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private final EventDispatcher eventDispatcher;
 
     @Inject
@@ -34,7 +69,11 @@ public class EventDispatcherControl implements EventDispatcherControlMBean {
             if (!entry.getValue().isEmpty()) {
                 b.append(entry.getKey().getSimpleName()).append(": \n");
                 for (HandlerMethodInfo handler : entry.getValue()) {
-                    b.append("\t[matcher: ").append(handler.getMatcherInvocations()).append(", method: ").append(handler.getMethodInvocations()).append("] ");
+                    b.append("\t[matcher: ").append(handler.getMatcherInvocations()).append(", method: ").append(handler.getMethodInvocations());
+                    if (handler.getExceptions() != 0) {
+                        b.append(", exceptions: ").append(handler.getExceptions());
+                    }
+                    b.append("] ");
                     Method method = handler.getMethod();
                     Annotation[] annotations = method.getAnnotations();
                     for (Annotation annotation : annotations) {
@@ -82,4 +121,205 @@ public class EventDispatcherControl implements EventDispatcherControlMBean {
     public String showHandlersByListenerClass() {
         return extractFromMap(eventDispatcher.getHandlersByListenerClass());
     }
+
+    @Override
+    public boolean isMetricsEnabled() {
+        return eventDispatcher.getMetrics().isEnabled();
+    }
+
+    @Override
+    public void setMetricsEnabled(boolean enabled) {
+        eventDispatcher.getMetrics().setEnabled(enabled);
+    }
+
+    @Override
+    public boolean isTracingEnabled() {
+        return eventDispatcher.getMetrics().getTracer() != null;
+    }
+
+    @Override
+    public void setTracingEnabled(boolean enabled) {
+        if (enabled != isTracingEnabled()) {
+            eventDispatcher.getMetrics().setTracer(enabled ? new TraceRecorder() : null);
+        }
+    }
+
+    @Override
+    public String writeChromeTrace(String file) {
+        EventTracer tracer = eventDispatcher.getMetrics().getTracer();
+        if (!(tracer instanceof TraceRecorder)) {
+            return "Spans are not recorded, tracer is " + tracer;
+        }
+        try {
+            return ((TraceRecorder) tracer).writeChromeTrace(new File(file)) + " spans are written to " + file;
+        } catch (IOException e) {
+            return "Unable to write " + file + ": " + e;
+        }
+    }
+
+    @Override
+    public int getLatencySampling() {
+        return eventDispatcher.getMetrics().getLatencySampling();
+    }
+
+    @Override
+    public void setLatencySampling(int sampling) {
+        eventDispatcher.getMetrics().setLatencySampling(sampling);
+    }
+
+    @Override
+    public long getUnhandledEvents() {
+        return eventDispatcher.getMetrics().getUnhandledEvents();
+    }
+
+    @Override
+    public long getHandlerExceptions() {
+        return eventDispatcher.getMetrics().getHandlerExceptions();
+    }
+
+    @Override
+    public int getPendingRegistrations() {
+        return eventDispatcher.getMetrics().getPendingRegistrations();
+    }
+
+    @Override
+    public long getSuppressedErrorLogs() {
+        HandlerErrorPolicy policy = eventDispatcher.getMetrics().getErrorPolicy();
+        return policy instanceof DefaultHandlerErrorPolicy ? ((DefaultHandlerErrorPolicy) policy).getSuppressedLogs() : -1;
+    }
+
+    @Override
+    public String showRecentErrors() {
+        HandlerErrorPolicy policy = eventDispatcher.getMetrics().getErrorPolicy();
+        if (!(policy instanceof DefaultHandlerErrorPolicy)) {
+            return "";
+        }
+        StringBuilder b = new StringBuilder();
+        for (DefaultHandlerErrorPolicy.HandlerError error : ((DefaultHandlerErrorPolicy) policy).getRecentErrors()) {
+            b.append(error).append('\n');
+        }
+        return b.toString();
+    }
+
+    @Override
+    public TabularData getHandlerMetrics() {
+        // sharded dispatcher has an instance of handler per shard, they are shown as a single row
+        Map<String, HandlerRow> rows = new LinkedHashMap<String, HandlerRow>();
+        for (Map.Entry<Class, List<? extends HandlerMethodInfo>> entry : eventDispatcher.getHandlersByListenerClass().entrySet()) {
+            for (HandlerMethodInfo handler : entry.getValue()) {
+                Method method = handler.getMethod();
+                StringBuilder name = new StringBuilder(entry.getKey().getName()).append('#');
+                if (method.getDeclaringClass() != entry.getKey()) {
+                    name.append(method.getDeclaringClass().getName()).append('.');
+                }
+                name.append(method.getName()).append('(');
+                for (Class<?> parameterType : method.getParameterTypes()) {
+                    name.append(parameterType.getSimpleName()).append(", ");
+                }
+                if (method.getParameterTypes().length != 0) {
+                    name.setLength(name.length() - 2);
+                }
+                name.append(')');
+                HandlerRow row = rows.get(name.toString());
+                if (row == null) {
+                    row = new HandlerRow();
+                    rows.put(name.toString(), row);
+                }
+                row.matcherInvocations += handler.getMatcherInvocations();
+                row.methodInvocations += handler.getMethodInvocations();
+                row.exceptions += handler.getExceptions();
+                row.latency.add(handler.getLatency());
+            }
+        }
+        TabularDataSupport res = new TabularDataSupport(HANDLER_METRICS_TYPE);
+        CompositeType rowType = HANDLER_METRICS_TYPE.getRowType();
+        for (Map.Entry<String, HandlerRow> entry : rows.entrySet()) {
+            HandlerRow row = entry.getValue();
+            res.put(row(rowType, HANDLER_ITEMS, row.latency, entry.getKey(), row.matcherInvocations, row.methodInvocations, row.exceptions));
+        }
+        return res;
+    }
+
+    @Override
+    public TabularData getEventClassMetrics() {
+        TabularDataSupport res = new TabularDataSupport(EVENT_CLASS_METRICS_TYPE);
+        CompositeType rowType = EVENT_CLASS_METRICS_TYPE.getRowType();
+        for (Map.Entry<Class, EventClassMetrics> entry : eventDispatcher.getMetrics().getEventClassMetrics().entrySet()) {
+            EventClassMetrics m = entry.getValue();
+            res.put(row(rowType, EVENT_CLASS_ITEMS, m.getLatency(), entry.getKey().getName(), m.getFired(), m.getUnhandled()));
+        }
+        return res;
+    }
+
+    @Override
+    public TabularData getUnhandledEventCounts() {
+        TabularDataSupport res = new TabularDataSupport(UNHANDLED_COUNTS_TYPE);
+        for (Map.Entry<Class, Long> entry : eventDispatcher.getMetrics().getUnhandledEventTracker().getCounts().entrySet()) {
+            try {
+                res.put(new CompositeDataSupport(UNHANDLED_COUNTS_TYPE.getRowType(), UNHANDLED_ITEMS,
+                        new Object[]{entry.getKey().getName(), entry.getValue()}));
+            } catch (OpenDataException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public String showUnhandledEventSample() {
+        UnhandledEventTracker tracker = eventDispatcher.getMetrics().getUnhandledEventTracker();
+        StringBuilder b = new StringBuilder();
+        b.append(tracker.getWindowCount()).append(" unhandled events in current window\n");
+        for (Object event : tracker.getSample()) {
+            b.append(event.getClass().getName()).append(": ");
+            try {
+                b.append(event);
+            } catch (RuntimeException e) {
+                b.append("<toString() failed: ").append(e).append('>');
+            }
+            b.append('\n');
+        }
+        return b.toString();
+    }
+
+    /**
+     * Metrics of instances of a handler method summed up.
+     */
+    private static final class HandlerRow {
+        long matcherInvocations;
+        long methodInvocations;
+        long exceptions;
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    private static String[] withLatency(String... names) {
+        String[] res = Arrays.copyOf(names, names.length + 4);
+        res[names.length] = "meanNanos";
+        res[names.length + 1] = "p50Nanos";
+        res[names.length + 2] = "p99Nanos";
+        res[names.length + 3] = "p999Nanos";
+        return res;
+    }
+
+    private static OpenType[] withLatencyTypes(OpenType... types) {
+        OpenType[] res = Arrays.copyOf(types, types.length + 4);
+        res[types.length] = SimpleType.DOUBLE;
+        res[types.length + 1] = SimpleType.LONG;
+        res[types.length + 2] = SimpleType.LONG;
+        res[types.length + 3] = SimpleType.LONG;
+        return res;
+    }
+
+    private static CompositeDataSupport row(CompositeType type, String[] names, LatencyHistogram latency, Object... values) {
+        Object[] v = Arrays.copyOf(values, values.length + 4);
+        v[values.length] = latency.getMeanNanos();
+        v[values.length + 1] = latency.getPercentileNanos(0.5);
+        v[values.length + 2] = latency.getPercentileNanos(0.99);
+        v[values.length + 3] = latency.getPercentileNanos(0.999);
+        try {
+            return new CompositeDataSupport(type, names, v);
+        } catch (OpenDataException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package com.maxifier.guice.events;
 
+import javax.management.openmbean.TabularData;
+
 /**
  * Created by IntelliJ IDEA.
  * User: dalex
@@ -10,4 +12,67 @@ public interface EventDispatcherControlMBean {
     String showHandlersByEventClass();
 
     String showHandlersByListenerClass();
+
+    boolean isMetricsEnabled();
+
+    void setMetricsEnabled(boolean enabled);
+
+    int getLatencySampling();
+
+    void setLatencySampling(int sampling);
+
+    /**
+     * @return true if dispatch is traced by any {@link EventTracer}
+     */
+    boolean isTracingEnabled();
+
+    /**
+     * Sets new {@link TraceRecorder} as tracer or turns tracing off.
+     */
+    void setTracingEnabled(boolean enabled);
+
+    /**
+     * Writes spans of {@link TraceRecorder} in Chrome trace event format.
+     *
+     * @param file path of file to write
+     * @return result of the operation
+     */
+    String writeChromeTrace(String file);
+
+    long getUnhandledEvents();
+
+    long getHandlerExceptions();
+
+    int getPendingRegistrations();
+
+    /**
+     * @return number of handler failures and unhandled events not logged due to rate limit of
+     *         {@link DefaultHandlerErrorPolicy}, -1 if another policy is used
+     */
+    long getSuppressedErrorLogs();
+
+    /**
+     * @return the last handler failures kept by {@link DefaultHandlerErrorPolicy}, one per line
+     */
+    String showRecentErrors();
+
+    /**
+     * @return invocation counters and latencies of each handler
+     */
+    TabularData getHandlerMetrics();
+
+    /**
+     * @return dispatch counters and latencies of each event class
+     */
+    TabularData getEventClassMetrics();
+
+    /**
+     * @return number of unhandled events of each class, counted even if metrics are disabled
+     */
+    TabularData getUnhandledEventCounts();
+
+    /**
+     * @return random sample of unhandled events of the current sampling window, one per line
+     */
+    String showUnhandledEventSample();
 }
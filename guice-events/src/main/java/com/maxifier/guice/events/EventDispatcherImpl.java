@@ -3,41 +3,128 @@ package com.maxifier.guice.events;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import gnu.trove.map.hash.THashMap;
-import gnu.trove.set.hash.THashSet;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.lang.ref.ReferenceQueue;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Default {@link EventDispatcher} implementation.
+ * <p>
+ * Handlers of each event class are resolved on the first firing and stored in a {@link ClassValue}, together with
+ * the version of the set of registered listener classes. Registration of a new listener class increments the
+ * version, so resolutions are refreshed lazily. Steady-state firing doesn't take any locks.
+ * <p>
+ * Per-class state doesn't prevent classes from being unloaded: resolutions are stored in classes themselves,
+ * listener classes without listeners are dropped when a new listener class is registered.
+ * <p>
+ * By default listeners registered while some event is being fired are deferred until no events are fired.
+ * Subclasses may switch this off (see {@link LockFreeEventDispatcher}).
+ * <p>
+ * Weakly referenced listeners are removed by "EventDispatcher reference watcher thread" after they are garbage
+ * collected. The thread is started on the first weak registration, so it doesn't exist if all listeners are strong.
+ */
 @Singleton
-public class EventDispatcherImpl implements EventDispatcher {
-    private static final Logger LOG = LoggerFactory.getLogger(EventDispatcherImpl.class);
+public class EventDispatcherImpl extends AbstractEventDispatcher {
+    private static final HandlerMethodInstance[] NO_HANDLERS = {};
 
-    private final Map<Class, List<HandlerMethodInstance>> mapping;
-    private final Map<Class, ListenerClassInstance> classInfos;
-    private final Queue<Object> registrationQueue = new LinkedList<Object>();
+    private final ClassValue<Resolution> resolutions = new ClassValue<Resolution>() {
+        @Override
+        protected Resolution computeValue(Class<?> type) {
+            return new Resolution();
+        }
+    };
+
+    /**
+     * Version of the set of listener classes, incremented under {@link #registrationLock}.
+     */
+    private volatile int version;
+
+    /**
+     * Event classes with resolved handlers, used for diagnostics only. Guarded by {@link #registrationLock}.
+     */
+    private final Set<Class> resolvedClasses = Collections.newSetFromMap(new WeakHashMap<Class, Boolean>());
+
+    /**
+     * Listener classes with handlers. Modified under {@link #registrationLock}.
+     */
+    private final Map<Class, ListenerClassInstance> classInfos = new ConcurrentHashMap<Class, ListenerClassInstance>();
+
+    /**
+     * Guarded by {@link #registrationLock}.
+     */
+    private final HandlerIndex index = new HandlerIndex();
+
+    private final Object registrationLock = new Object();
 
     private final ReferenceQueue queue;
 
-    private final Lock readLock;
-    private final Lock writeLock;
+    /**
+     * Dispatcher which runs reference watcher thread for {@link #queue}, this unless it is a shard.
+     */
+    private final EventDispatcherImpl watcherOwner;
+    /**
+     * Written under {@link #registrationLock}.
+     */
+    private volatile Thread referenceWatcher;
 
-    @SuppressWarnings({"unchecked"})
     @Inject
     public EventDispatcherImpl(ListenerRegistrationQueue q) {
-        classInfos = new THashMap();
-        mapping = new THashMap();
+        this(q, true);
+    }
+
+    /**
+     * @param q                 registration queue to attach to
+     * @param deferRegistration if true listeners registered by handlers will be registered when the outermost firing
+     *                          of the thread is finished; otherwise they are registered immediately. Registrations
+     *                          from threads which don't fire events are never deferred.
+     */
+    @SuppressWarnings({"unchecked"})
+    protected EventDispatcherImpl(ListenerRegistrationQueue q, boolean deferRegistration) {
+        super(new EventDispatcherMetrics(), deferRegistration);
+        watcherOwner = this;
         queue = new ReferenceQueue();
-        final Thread t = new Thread("EventDispatcher reference watcher thread") {
+
+        q.setDispatcher(this);
+    }
+
+    /**
+     * Creates part of {@link ShardedEventDispatcher}, which fires events, defers registrations and measures dispatch
+     * itself.
+     *
+     * @param metrics      metrics of the sharded dispatcher
+     * @param watcherOwner shard which runs reference watcher thread for all shards, null for the shard itself
+     */
+    EventDispatcherImpl(EventDispatcherMetrics metrics, EventDispatcherImpl watcherOwner) {
+        super(metrics, false);
+        this.watcherOwner = watcherOwner == null ? this : watcherOwner;
+        queue = watcherOwner == null ? new ReferenceQueue() : watcherOwner.queue;
+    }
+
+    private void startReferenceWatcher() {
+        if (watcherOwner != this) {
+            watcherOwner.startReferenceWatcher();
+            return;
+        }
+        if (referenceWatcher != null) {
+            return;
+        }
+        synchronized (registrationLock) {
+            if (referenceWatcher == null) {
+                startReferenceWatcher0();
+            }
+        }
+    }
+
+    // Should be called under registrationLock
+    private void startReferenceWatcher0() {
+        referenceWatcher = new Thread("EventDispatcher reference watcher thread") {
             @Override
             public void run() {
                 while (!isInterrupted()) {
@@ -49,182 +136,176 @@ public class EventDispatcherImpl implements EventDispatcher {
                 }
             }
         };
-        t.setDaemon(true);
-        t.start();
-
-        ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
-        readLock = rwl.readLock();
-        writeLock = rwl.writeLock();
-
-        q.setDispatcher(this);
+        referenceWatcher.setDaemon(true);
+        referenceWatcher.start();
     }
 
-    private final ThreadLocal<Boolean> isLocked = new ThreadLocal<Boolean>();
-    private volatile int firingEvents;
+    boolean isReferenceWatcherStarted() {
+        return referenceWatcher != null;
+    }
 
+    @SuppressWarnings({"unchecked"})
     @Override
     public Map<Class, List<? extends HandlerMethodInfo>> getHandlersByEventClass() {
-        // noinspection unchecked,RedundantCast
-        return (Map) Collections.unmodifiableMap(mapping);
+        Map<Class, List<? extends HandlerMethodInfo>> res = new THashMap();
+        synchronized (registrationLock) {
+            for (Class c : resolvedClasses) {
+                res.put(c, Collections.unmodifiableList(Arrays.asList(getHandlerMethodInstances(c))));
+            }
+        }
+        return Collections.unmodifiableMap(res);
     }
 
     @SuppressWarnings({"unchecked"})
     @Override
     public Map<Class, List<? extends HandlerMethodInfo>> getHandlersByListenerClass() {
         Map<Class, List<? extends HandlerMethodInfo>> res = new THashMap();
-        for (Map.Entry<Class, ListenerClassInstance> entry : classInfos.entrySet()) {
-            // noinspection unchecked
-            res.put(entry.getKey(), entry.getValue().getHandlers());
+        synchronized (registrationLock) {
+            for (Map.Entry<Class, ListenerClassInstance> entry : classInfos.entrySet()) {
+                // noinspection unchecked
+                res.put(entry.getKey(), entry.getValue().getHandlers());
+            }
         }
         return res;
     }
 
     @Override
     //NOSONAR
-    public void fireEvent(Object event) {
-        boolean handled;
-        synchronized (registrationQueue) {
-            firingEvents++;
-        }
-        try {
-            if (isLocked.get() == null) {
-                readLock.lock();
-                isLocked.set(Boolean.TRUE);
-                try {
-                    handled = fireEvent0(event);
-                } finally {
-                    readLock.unlock();
-                    isLocked.remove();
-                }
-            } else {
-                handled = fireEvent0(event);
-            }
-        } finally {
-            synchronized (registrationQueue) {
-                firingEvents--;
-                if (firingEvents == 0) {
-                    while (!registrationQueue.isEmpty()) {
-                        register0(registrationQueue.poll());
-                    }
+    boolean fireEvent0(Object event) {
+        HandlerMethodInstance[] l = getHandlerMethodInstances(event.getClass());
+        boolean handled = false;
+        if (event instanceof ConsumableEvent) {
+            ConsumableEvent consumable = (ConsumableEvent) event;
+            for (HandlerMethodInstance<?> method : l) {
+                if (consumable.isConsumed()) {
+                    break;
                 }
+                handled |= method.invokeIfMatched(event);
             }
+            return handled;
         }
-        if (!handled) {
-            unhandledEvent(event);
-        }
-    }
-
-    //NOSONAR
-    private boolean fireEvent0(Object event) {
-        Class c = event.getClass();
-        List<HandlerMethodInstance> l = getHandlerMethodInstances(c);
-        boolean handled = false;
         for (HandlerMethodInstance<?> method : l) {
             handled |= method.invokeIfMatched(event);
         }
         return handled;
     }
 
-    private List<HandlerMethodInstance> getHandlerMethodInstances(Class c) {
-        List<HandlerMethodInstance> l = mapping.get(c);
-        if (l == null) {
-            readLock.unlock();
-            if (writeLock.tryLock()) {
-                try {
-                    l = mapping.get(c);
-                    if (l == null) {
-                        l = getHandlerMethodInstances0(c);
-                        mapping.put(c, l);
-                    }
-                } finally {
-                    readLock.lock();
-                    writeLock.unlock();
-                }
+    @Override
+    void fireEvents0(Class eventClass, List<Object> events, boolean[] handled) {
+        for (HandlerMethodInstance<?> method : getHandlerMethodInstances(eventClass)) {
+            method.invokeIfMatched(events, handled);
+        }
+    }
 
-            } else {
-                readLock.lock();
-                // https://jira.maxifier.com/browse/XGUICE-30
-                //
-                // If we can't acquire write lock, that might mean that another thread is holding it.
-                //
-                // Example of inverted stack trace:
-                // Thread 1:
-                //   -fireEvent  - holds readLock
-                //    -fireEvent0
-                //     -someHandler - tries to get lock X, but it has to wait for Thread 2.
-                //
-                // Thread 2:
-                //   -someMethod - holds lock X
-                //    -fireEvent    - holds readLock
-                //     -fireEvent0  - releases readLock
-                //             if event class never met before, it will waits for Thread 1 to acquire writeLock.
-                //
-                // In this case if we want to avoid deadlock, we will calculate list of methods, but not
-                // store it anywhere. Anyway, if intensity of queries is not too high, the cache will be filled.
-                l = getHandlerMethodInstances0(c);
+    private HandlerMethodInstance[] getHandlerMethodInstances(Class c) {
+        Resolution r = resolutions.get(c);
+        if (r.version == version) {
+            return r.handlers;
+        }
+        // No handlers are invoked under registrationLock, so unlike the read-write lock used before
+        // there is no way to get the deadlock described in https://jira.maxifier.com/browse/XGUICE-30
+        synchronized (registrationLock) {
+            if (r.version != version) {
+                r.handlers = getHandlerMethodInstances0(c);
+                r.version = version;
+                resolvedClasses.add(c);
             }
+            return r.handlers;
         }
-        return l;
     }
 
     // This method doesn't do any caching, don't call it unless you know what you are doing.
-    private List<HandlerMethodInstance> getHandlerMethodInstances0(Class c) {
-        List<HandlerMethodInstance> res = new ArrayList<HandlerMethodInstance>();
-        for (ListenerClassInstance<?> cls : classInfos.values()) {
-            cls.bindHandlers(res, c);
-        }
-        return res;
+    // Should be called under registrationLock.
+    private HandlerMethodInstance[] getHandlerMethodInstances0(Class c) {
+        List<HandlerMethodInstance> res = index.resolve(c);
+        return res.isEmpty() ? NO_HANDLERS : res.toArray(new HandlerMethodInstance[res.size()]);
     }
 
-    protected void unhandledEvent(Object event) {
-        LOG.warn("Event " + event + " of class " + event.getClass() + " was not processed");
+    /**
+     * Returns executor for asynchronous handler. This implementation returns null, so asynchronous handlers are
+     * invoked in the thread firing event just like synchronous ones.
+     *
+     * @param method asynchronous handler method
+     * @return executor or null if handler should be invoked in the thread firing event
+     */
+    HandlerExecutor getHandlerExecutor(HandlerMethod<?> method) {
+        return null;
     }
 
+    @SuppressWarnings({"unchecked"})
     @Override
-    public final <T> void register(T o) throws CyclicFilterAnnotationException {
-        synchronized (registrationQueue) {
-            if (firingEvents == 0) {
-                register0(o);
-            } else {
-                registrationQueue.add(o);
-            }
+    void unregister0(Object o) {
+        ListenerClassInstance listenerClass = classInfos.get(o.getClass());
+        if (listenerClass != null) {
+            listenerClass.removeListener(o);
         }
     }
 
     @SuppressWarnings({"unchecked"})
-    private <T> void register0(T o) {
-        Class<T> c = (Class<T>) o.getClass();
-        //noinspection unchecked
-        ListenerClassInstance<T> listenerClass = classInfos.get(c);
-        if (listenerClass == null) {
-            Class<?> currentClass = c;
-            Set<Class<?>> classes = new THashSet();
-            List<ListenerClass<?>> lc = new ArrayList<ListenerClass<?>>(classes.size());
-            do {
-                if (classes.add(currentClass)) {
-                    ListenerClass<?> l = EventReflectionParser.getOrCreateClassInfo(currentClass);
-                    if (l.hasHandlers()) {
-                        lc.add(l);
-                    }
+    @Override
+    void register0(Object o, Strength strength) {
+        Class<Object> c = (Class<Object>) o.getClass();
+        while (true) {
+            ListenerClassInstance<Object> listenerClass = classInfos.get(c);
+            if (listenerClass == null) {
+                List<ListenerClass<?>> lc = EventReflectionParser.getHandlerClasses(c);
+                if (lc.isEmpty()) {
+                    return;
                 }
-                for (Class<?> interf : currentClass.getInterfaces()) {
-                    if (classes.add(interf)) {
-                        ListenerClass<?> l = EventReflectionParser.getOrCreateClassInfo(interf);
-                        if (l.hasHandlers()) {
-                            lc.add(l);
-                        }
+                synchronized (registrationLock) {
+                    listenerClass = classInfos.get(c);
+                    if (listenerClass == null) {
+                        purgeEmptyListenerClasses();
+                        listenerClass = new ListenerClassInstance<Object>(c, queue, lc, this);
+                        index.add(listenerClass);
+                        classInfos.put(c, listenerClass);
+                        version++;
                     }
                 }
-                currentClass = currentClass.getSuperclass();
-            } while (currentClass != null);
-
-            //noinspection unchecked
-            listenerClass = new ListenerClassInstance<T>(c, queue, lc);
-            listenerClass.bindHandlers(mapping);
+            }
+            Strength s = strength == null ? listenerClass.getDefaultStrength() : strength;
+            if (s == Strength.WEAK) {
+                startReferenceWatcher();
+            }
+            if (listenerClass.addListener(o, s)) {
+                return;
+            }
+            // the listener class was dropped concurrently, it should be registered again
+        }
+    }
 
-            classInfos.put(c, listenerClass);
+    /**
+     * Drops listener classes without listeners, so classes of unloaded plugins are not retained.
+     * Should be called under registrationLock.
+     */
+    private void purgeEmptyListenerClasses() {
+        boolean purged = false;
+        for (Iterator<ListenerClassInstance> it = classInfos.values().iterator(); it.hasNext(); ) {
+            ListenerClassInstance<?> listenerClass = it.next();
+            if (listenerClass.detachIfEmpty()) {
+                it.remove();
+                index.remove(listenerClass);
+                purged = true;
+            }
+        }
+        if (purged) {
+            // resolutions are stored in event classes, drop them so they don't retain removed handlers
+            for (Class c : resolvedClasses) {
+                resolutions.remove(c);
+            }
+            resolvedClasses.clear();
+            version++;
         }
-        listenerClass.addListener(o);
     }
 
+    /**
+     * Handlers of an event class, resolved for given version of the set of listener classes.
+     */
+    private static final class Resolution {
+        /**
+         * Written before {@link #version}, so a reader which sees the current version sees the handlers of it.
+         */
+        volatile HandlerMethodInstance[] handlers = NO_HANDLERS;
+        volatile int version = -1;
+    }
 }
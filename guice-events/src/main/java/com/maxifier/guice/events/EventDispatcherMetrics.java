@@ -0,0 +1,176 @@
+package com.maxifier.guice.events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of {@link EventDispatcher}. Metrics are disabled by default; while disabled latencies and event classes are
+ * not measured and sinks are not notified. Invocation counters of {@link HandlerMethodInfo} are always updated.
+ * <p>
+ * Counters are exact, latencies are measured for a random sample of invocations (see
+ * {@link #setLatencySampling(int)}) because reading the clock may cost more than invocation of a simple handler.
+ */
+public class EventDispatcherMetrics {
+    public static final int DEFAULT_LATENCY_SAMPLING = 16;
+
+    private static final EventMetricsSink[] NO_SINKS = {};
+
+    private volatile boolean enabled;
+    private volatile int latencySamplingMask = DEFAULT_LATENCY_SAMPLING - 1;
+
+    private volatile EventMetricsSink[] sinks = NO_SINKS;
+    private volatile EventTracer tracer;
+    private volatile HandlerErrorPolicy errorPolicy = new DefaultHandlerErrorPolicy();
+    private final UnhandledEventTracker unhandledEventTracker = new UnhandledEventTracker();
+    /**
+     * Metrics are kept while their event classes are loaded, so they don't prevent class loaders of plugins from
+     * being collected.
+     */
+    private final WeakClassMap<EventClassMetrics> eventClasses = new WeakClassMap<EventClassMetrics>() {
+        @Override
+        EventClassMetrics create() {
+            return new EventClassMetrics();
+        }
+    };
+    private final LongAdder handlerExceptions = new LongAdder();
+    private final LongAdder unhandledEvents = new LongAdder();
+    private final AtomicInteger pendingRegistrations = new AtomicInteger();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getLatencySampling() {
+        return latencySamplingMask + 1;
+    }
+
+    /**
+     * @param sampling latency is measured for one of {@code sampling} invocations on average, should be a power of
+     *                 two; 1 means every invocation is measured
+     */
+    public void setLatencySampling(int sampling) {
+        if (sampling <= 0 || Integer.bitCount(sampling) != 1) {
+            throw new IllegalArgumentException("Latency sampling should be a positive power of two: " + sampling);
+        }
+        latencySamplingMask = sampling - 1;
+    }
+
+    boolean sampleLatency() {
+        int mask = latencySamplingMask;
+        return mask == 0 || (ThreadLocalRandom.current().nextInt() & mask) == 0;
+    }
+
+    public synchronized void addSink(EventMetricsSink sink) {
+        EventMetricsSink[] s = Arrays.copyOf(sinks, sinks.length + 1);
+        s[sinks.length] = sink;
+        sinks = s;
+    }
+
+    public synchronized void removeSink(EventMetricsSink sink) {
+        List<EventMetricsSink> s = new ArrayList<EventMetricsSink>(Arrays.asList(sinks));
+        if (s.remove(sink)) {
+            sinks = s.toArray(new EventMetricsSink[s.size()]);
+        }
+    }
+
+    /**
+     * @return tracer of dispatch, null if tracing is off
+     */
+    public EventTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * @param tracer tracer of dispatch, it's used even if metrics are disabled; null turns tracing off
+     */
+    public void setTracer(EventTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * @return policy for exceptions of handlers and unhandled events, it's used even if metrics are disabled
+     */
+    public HandlerErrorPolicy getErrorPolicy() {
+        return errorPolicy;
+    }
+
+    public void setErrorPolicy(HandlerErrorPolicy errorPolicy) {
+        if (errorPolicy == null) {
+            throw new IllegalArgumentException("errorPolicy");
+        }
+        this.errorPolicy = errorPolicy;
+    }
+
+    /**
+     * @return counters and sample of unhandled events, they are tracked even if metrics are disabled
+     */
+    public UnhandledEventTracker getUnhandledEventTracker() {
+        return unhandledEventTracker;
+    }
+
+    public long getHandlerExceptions() {
+        return handlerExceptions.sum();
+    }
+
+    public long getUnhandledEvents() {
+        return unhandledEvents.sum();
+    }
+
+    /**
+     * @return number of listeners registered by handlers which wait for the end of firing, maintained even if metrics
+     * are disabled
+     */
+    public int getPendingRegistrations() {
+        return pendingRegistrations.get();
+    }
+
+    void registrationDeferred() {
+        pendingRegistrations.incrementAndGet();
+    }
+
+    void registrationCompleted() {
+        pendingRegistrations.decrementAndGet();
+    }
+
+    /**
+     * @return metrics of event classes fired while metrics were enabled, classes which were unloaded are omitted
+     */
+    public Map<Class, EventClassMetrics> getEventClassMetrics() {
+        return Collections.unmodifiableMap(eventClasses.snapshot());
+    }
+
+    /**
+     * @param nanos duration of invocation, -1 if it was not sampled
+     */
+    void handlerInvoked(HandlerMethodInfo handler, Object event, long nanos, Throwable exception) {
+        if (exception != null) {
+            handlerExceptions.increment();
+        }
+        for (EventMetricsSink sink : sinks) {
+            sink.handlerInvoked(handler, event, nanos, exception);
+        }
+    }
+
+    /**
+     * @param nanos duration of dispatch, -1 if it was not sampled
+     */
+    void eventsDispatched(Class eventClass, int events, int unhandled, long nanos) {
+        eventClasses.get(eventClass).record(events, unhandled, nanos);
+        if (unhandled != 0) {
+            unhandledEvents.add(unhandled);
+        }
+        for (EventMetricsSink sink : sinks) {
+            sink.eventsDispatched(eventClass, events, unhandled, nanos);
+        }
+    }
+}
@@ -2,12 +2,16 @@ package com.maxifier.guice.events;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Binder;
+import com.google.inject.Module;
 import com.google.inject.TypeLiteral;
 import com.google.inject.matcher.Matchers;
+import com.google.inject.name.Names;
 import com.google.inject.spi.InjectionListener;
 import com.google.inject.spi.TypeEncounter;
 import com.google.inject.spi.TypeListener;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Created by IntelliJ IDEA.
  * User: dalex
@@ -27,6 +31,92 @@ public class EventDispatcherModule extends AbstractModule {
         binder.install(new EventDispatcherModule());
     }
 
+    /**
+     * Make module which binds {@link EventDispatcher} to {@link LockFreeEventDispatcher}.
+     *
+     * @return module to install
+     */
+    public static Module lockFree() {
+        return new EventDispatcherModule() {
+            @Override
+            protected void configure() {
+                super.configure();
+                bind(EventDispatcher.class).to(LockFreeEventDispatcher.class);
+            }
+        };
+    }
+
+    /**
+     * Make module which binds {@link EventDispatcher} to {@link AsyncEventDispatcher}.
+     *
+     * @param executors executors for asynchronous handlers
+     * @return module to install
+     */
+    public static Module async(final AsyncExecutors executors) {
+        return new EventDispatcherModule() {
+            @Override
+            protected void configure() {
+                super.configure();
+                bind(AsyncExecutors.class).toInstance(executors);
+                bind(EventDispatcher.class).to(AsyncEventDispatcher.class);
+            }
+        };
+    }
+
+    /**
+     * Make module which binds {@link EventDispatcher} to {@link VirtualThreadEventDispatcher}.
+     *
+     * @return module to install
+     */
+    public static Module virtualThreads() {
+        return new EventDispatcherModule() {
+            @Override
+            protected void configure() {
+                super.configure();
+                bind(EventDispatcher.class).to(VirtualThreadEventDispatcher.class);
+            }
+        };
+    }
+
+    /**
+     * Make module which binds {@link EventDispatcher} to {@link CoalescingEventDispatcher}.
+     *
+     * @param tick period of delivery of coalesced events
+     * @param unit unit of tick
+     * @return module to install
+     */
+    public static Module coalescing(final long tick, final TimeUnit unit) {
+        return new EventDispatcherModule() {
+            @Override
+            protected void configure() {
+                super.configure();
+                bindConstant().annotatedWith(Names.named(CoalescingEventDispatcher.TICK_MILLIS)).to(unit.toMillis(tick));
+                bind(EventDispatcher.class).to(CoalescingEventDispatcher.class);
+            }
+        };
+    }
+
+    /**
+     * Make module which binds {@link EventDispatcher} to {@link ShardedEventDispatcher}.
+     *
+     * @param shards number of shards
+     * @return module to install
+     */
+    public static Module sharded(final int shards) {
+        return new EventDispatcherModule() {
+            @Override
+            protected void configure() {
+                super.configure();
+                bindConstant().annotatedWith(Names.named(ShardedEventDispatcher.SHARDS)).to(shards);
+                bind(EventDispatcher.class).to(ShardedEventDispatcher.class);
+            }
+        };
+    }
+
+    /**
+     * Registers injected instances of types which have handlers. Whether a type has handlers is decided once when
+     * Guice encounters it, so objects without handlers cost nothing at injection.
+     */
     private static class RegistrationTypeListener implements TypeListener {
         private final ListenerRegistrationQueue q;
 
@@ -36,6 +126,9 @@ public class EventDispatcherModule extends AbstractModule {
 
         @Override
         public <I> void hear(TypeLiteral<I> iTypeLiteral, TypeEncounter<I> iTypeEncounter) {
+            if (!mayHaveHandlers(iTypeLiteral.getRawType())) {
+                return;
+            }
             iTypeEncounter.register(new InjectionListener<I>() {
                 @Override
                 public void afterInjection(I i) {
@@ -45,5 +138,14 @@ public class EventDispatcherModule extends AbstractModule {
                 }
             });
         }
+
+        private static boolean mayHaveHandlers(Class<?> c) {
+            try {
+                return !EventReflectionParser.getHandlerClasses(c).isEmpty();
+            } catch (RuntimeException e) {
+                // invalid handlers are reported by dispatcher on registration as before
+                return true;
+            }
+        }
     }
 }
@@ -0,0 +1,132 @@
+package com.maxifier.guice.events;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles matchers of a handler into a single matcher.
+ * <p>
+ * Plain {@link EnumMatcher}s are folded: matchers without values are dropped since they match everything, and
+ * matchers of the same enum class are intersected into one bit mask. Folded matchers are checked before other
+ * matchers as they are the cheapest ones.
+ */
+final class EventMatchers {
+    private EventMatchers() {
+    }
+
+    /**
+     * @return matcher equivalent to conjunction of given matchers, null if it matches every event
+     */
+    @SuppressWarnings({"unchecked"})
+    public static EventMatcher compile(List<EventMatcher> matchers) {
+        Map<Class, EnumSet> enums = new LinkedHashMap<Class, EnumSet>();
+        List<EventMatcher> res = new ArrayList<EventMatcher>(matchers.size());
+        List<EventMatcher> rest = new ArrayList<EventMatcher>(matchers.size());
+        for (EventMatcher matcher : matchers) {
+            if (!isFoldable(matcher)) {
+                rest.add(matcher);
+                continue;
+            }
+            EnumMatcher<?> enumMatcher = (EnumMatcher<?>) matcher;
+            EnumSet values = enumMatcher.getEnums();
+            if (values == null) {
+                continue;
+            }
+            Class enumClass = enumMatcher.getEnumClass();
+            EnumSet folded = enums.get(enumClass);
+            if (folded == null) {
+                enums.put(enumClass, EnumSet.copyOf(values));
+            } else {
+                folded.retainAll(values);
+            }
+        }
+        for (Map.Entry<Class, EnumSet> entry : enums.entrySet()) {
+            res.add(new EnumMaskMatcher(entry.getKey(), entry.getValue()));
+        }
+        res.addAll(rest);
+        switch (res.size()) {
+            case 0:
+                return null;
+            case 1:
+                return res.get(0);
+            default:
+                return new AllOf(res.toArray(new EventMatcher[res.size()]));
+        }
+    }
+
+    /**
+     * @return true if matcher is {@link EnumMatcher} which doesn't override matching logic
+     */
+    private static boolean isFoldable(EventMatcher matcher) {
+        if (!(matcher instanceof EnumMatcher)) {
+            return false;
+        }
+        try {
+            return matcher.getClass().getMethod("matches", Object.class).getDeclaringClass() == EnumMatcher.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Matches enum constants of a single class by ordinal.
+     */
+    static final class EnumMaskMatcher implements EventMatcher<Object> {
+        private final Class enumClass;
+        private final long mask;
+        /**
+         * Used for enums with more than 64 constants, null otherwise.
+         */
+        private final EnumSet values;
+
+        @SuppressWarnings({"unchecked"})
+        EnumMaskMatcher(Class enumClass, EnumSet values) {
+            this.enumClass = enumClass;
+            if (enumClass.getEnumConstants().length <= 64) {
+                long m = 0;
+                for (Object value : values) {
+                    m |= 1L << ((Enum) value).ordinal();
+                }
+                this.mask = m;
+                this.values = null;
+            } else {
+                this.mask = 0;
+                this.values = values;
+            }
+        }
+
+        @Override
+        public boolean matches(Object event) {
+            if (!(event instanceof Enum)) {
+                return false;
+            }
+            Enum e = (Enum) event;
+            if (e.getDeclaringClass() != enumClass) {
+                return false;
+            }
+            return values == null ? (mask & (1L << e.ordinal())) != 0 : values.contains(e);
+        }
+    }
+
+    static final class AllOf implements EventMatcher<Object> {
+        private final EventMatcher[] matchers;
+
+        AllOf(EventMatcher[] matchers) {
+            this.matchers = matchers;
+        }
+
+        @SuppressWarnings({"unchecked"})
+        @Override
+        public boolean matches(Object event) {
+            for (EventMatcher matcher : matchers) {
+                if (!matcher.matches(event)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.maxifier.guice.events;
+
+import javax.annotation.Nullable;
+
+/**
+ * Receives measurements of {@link EventDispatcher} while its metrics are enabled, see
+ * {@link EventDispatcherMetrics#addSink(EventMetricsSink)}. Methods are invoked in the threads which fire events and
+ * run handlers, so implementations should be thread-safe and fast.
+ */
+public interface EventMetricsSink {
+    /**
+     * @param handler   invoked handler
+     * @param event     event, or list of events for batch handler
+     * @param nanos     duration of invocation, -1 if it was not sampled (see
+     *                  {@link EventDispatcherMetrics#setLatencySampling(int)})
+     * @param exception exception thrown by handler, null if it completed normally
+     */
+    void handlerInvoked(HandlerMethodInfo handler, Object event, long nanos, @Nullable Throwable exception);
+
+    /**
+     * @param eventClass class of fired events
+     * @param events     number of fired events
+     * @param unhandled  number of events which were not passed to any listener
+     * @param nanos      duration of dispatch including synchronous handlers, -1 if it was not sampled
+     */
+    void eventsDispatched(Class eventClass, int events, int unhandled, long nanos);
+}
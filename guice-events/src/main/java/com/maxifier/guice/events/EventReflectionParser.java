@@ -1,15 +1,16 @@
 package com.maxifier.guice.events;
 
-import gnu.trove.map.hash.THashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Set;
 
 /**
  * Created by IntelliJ IDEA.
@@ -18,36 +19,58 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * Time: 17:00:25
  */
 class EventReflectionParser {
-    private static final Map<Class<? extends Annotation>, HandlerAnnotation> annotationInfos = new THashMap<Class<? extends Annotation>, HandlerAnnotation>();
-    private static final Map<Class, ListenerClass> classInfos = new THashMap<Class, ListenerClass>();
-
-    private static final HandlerAnnotation processing = new HandlerAnnotation(null, null, null);
+    private static final Logger LOG = LoggerFactory.getLogger(EventReflectionParser.class);
+
+    /**
+     * Per-class state is stored in {@link ClassValue}s, so it doesn't prevent classes from being unloaded together
+     * with their class loader.
+     */
+    private static final ClassValue<HandlerAnnotation> annotationInfos = new ClassValue<HandlerAnnotation>() {
+        @SuppressWarnings({"unchecked"})
+        @Override
+        protected HandlerAnnotation computeValue(Class<?> ac) {
+            Set<Class> parsing = PARSING.get();
+            if (!parsing.add(ac)) {
+                throw new CyclicFilterAnnotationException(ac.toString());
+            }
+            try {
+                return parseAnnotationInfo((Class<? extends Annotation>) ac);
+            } finally {
+                parsing.remove(ac);
+            }
+        }
+    };
+
+    /**
+     * Annotation classes being parsed by current thread, used to detect cyclic filter annotations.
+     */
+    private static final ThreadLocal<Set<Class>> PARSING = new ThreadLocal<Set<Class>>() {
+        @Override
+        protected Set<Class> initialValue() {
+            return new HashSet<Class>();
+        }
+    };
 
-    private static final Lock readLock;
-    private static final Lock writeLock;
+    private static final ClassValue<ListenerClass> classInfos = new ClassValue<ListenerClass>() {
+        @Override
+        protected ListenerClass computeValue(Class<?> c) {
+            return parseClassInfo(c);
+        }
+    };
 
-    static {
-        ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
-        readLock = rwl.readLock();
-        writeLock = rwl.writeLock();
-    }
+    private static final ClassValue<List<ListenerClass<?>>> hierarchyInfos = new ClassValue<List<ListenerClass<?>>>() {
+        @Override
+        protected List<ListenerClass<?>> computeValue(Class<?> c) {
+            return parseHierarchyInfo(c);
+        }
+    };
 
     private EventReflectionParser() {
     }
 
 
     private static HandlerAnnotation getOrParseAnnotationInfo(Annotation a) throws CyclicFilterAnnotationException {
-        Class<? extends Annotation> ac = a.annotationType();
-        HandlerAnnotation c = annotationInfos.get(ac);
-
-        if (c == processing) {
-            throw new CyclicFilterAnnotationException(ac.toString());
-        }
-        if (c == null) {
-            c = parseAnnotationInfo(ac);
-            annotationInfos.put(ac, c);
-        }
-        return c;
+        return annotationInfos.get(a.annotationType());
     }
 
     private static HandlerAnnotation parseAnnotationInfo(Class<? extends Annotation> ac) throws CyclicFilterAnnotationException {
@@ -55,7 +78,6 @@ class EventReflectionParser {
         if (filter == null) {
             return new HandlerAnnotation(null, null, null);
         }
-        annotationInfos.put(ac, processing);
         List<EventMatcher> matchers = new ArrayList<EventMatcher>();
         List<EventClassMatcher> classMatchers = new ArrayList<EventClassMatcher>();
         for (Annotation annotation : ac.getAnnotations()) {
@@ -72,33 +94,75 @@ class EventReflectionParser {
 
     @SuppressWarnings({"unchecked"})
     public static <T> ListenerClass<T> getOrCreateClassInfo(Class<T> c) throws CyclicFilterAnnotationException {
-        ListenerClass<T> ci;
-        readLock.lock();
-        try {
-            ci = classInfos.get(c);
-        } finally {
-            readLock.unlock();
+        return classInfos.get(c);
+    }
+
+    private static <T> ListenerClass<T> parseClassInfo(Class<T> c) throws CyclicFilterAnnotationException {
+        String[] indexed = ListenerIndex.getHandlers(c);
+        if (indexed != null) {
+            List<HandlerMethod<T>> m = parseIndexedMethods(c, indexed);
+            if (m != null) {
+                return new ListenerClass<T>(c, m);
+            }
+            LOG.warn("Listener index is out of date for " + c + ", it's parsed by reflection");
         }
-        if (ci == null) {
-            writeLock.lock();
-            try {
-                ci = classInfos.get(c);
-                if (ci == null) {
-                    List<HandlerMethod<T>> m = new ArrayList<HandlerMethod<T>>();
-                    for (Method method : c.getDeclaredMethods()) {
-                        if (isHandlerMethod(method)) {
-                            m.add(EventReflectionParser.<T>parseHandlerMethod(method));
-                        }
-                    }
+        List<HandlerMethod<T>> m = new ArrayList<HandlerMethod<T>>();
+        for (Method method : c.getDeclaredMethods()) {
+            if (isHandlerMethod(method)) {
+                m.add(EventReflectionParser.<T>parseHandlerMethod(method));
+            }
+        }
+        return new ListenerClass<T>(c, m);
+    }
 
-                    ci = new ListenerClass<T>(c, m);
-                    classInfos.put(c, ci);
-                }
-            } finally {
-                writeLock.unlock();
+    /**
+     * @return handler methods resolved by descriptors from {@link ListenerIndex}, null if some method is not found
+     */
+    private static <T> List<HandlerMethod<T>> parseIndexedMethods(Class<T> c, String[] descriptors) throws CyclicFilterAnnotationException {
+        if (descriptors.length == 0) {
+            return Collections.emptyList();
+        }
+        List<HandlerMethod<T>> m = new ArrayList<HandlerMethod<T>>(descriptors.length);
+        for (String descriptor : descriptors) {
+            Method method = ListenerIndex.resolve(c, descriptor);
+            if (method == null || !isHandlerMethod(method)) {
+                return null;
             }
+            m.add(EventReflectionParser.<T>parseHandlerMethod(method));
         }
-        return ci;
+        return m;
+    }
+
+    /**
+     * @return classes with handlers among the class, its superclasses and interfaces, empty list if instances of
+     *         the class don't have handlers
+     */
+    public static List<ListenerClass<?>> getHandlerClasses(Class<?> c) throws CyclicFilterAnnotationException {
+        return hierarchyInfos.get(c);
+    }
+
+    private static List<ListenerClass<?>> parseHierarchyInfo(Class<?> c) throws CyclicFilterAnnotationException {
+        Class<?> currentClass = c;
+        Set<Class<?>> classes = new HashSet<Class<?>>();
+        List<ListenerClass<?>> lc = new ArrayList<ListenerClass<?>>();
+        do {
+            if (classes.add(currentClass)) {
+                ListenerClass<?> l = getOrCreateClassInfo(currentClass);
+                if (l.hasHandlers()) {
+                    lc.add(l);
+                }
+            }
+            for (Class<?> interf : currentClass.getInterfaces()) {
+                if (classes.add(interf)) {
+                    ListenerClass<?> l = getOrCreateClassInfo(interf);
+                    if (l.hasHandlers()) {
+                        lc.add(l);
+                    }
+                }
+            }
+            currentClass = currentClass.getSuperclass();
+        } while (currentClass != null);
+        return lc.isEmpty() ? Collections.<ListenerClass<?>>emptyList() : Collections.unmodifiableList(lc);
     }
 
     private static boolean isHandlerMethod(Method method) {
@@ -123,8 +187,7 @@ class EventReflectionParser {
         for (Annotation a : method.getAnnotations()) {
             getOrParseAnnotationInfo(a).append(a, matchers, classMatchers);
         }
-        return new HandlerMethod<T>(matchers, classMatchers, new ReflectionHandlerInvocator<Object, T>(method));
-//        return new HandlerMethod<T>(matchers, classMatchers, new ClassgenHandlerInvocator<Object, T>(method));
+        return new HandlerMethod<T>(matchers, classMatchers, new LambdaHandlerInvocator<Object, T>(method), method.getAnnotation(Handler.class));
     }
 
 }
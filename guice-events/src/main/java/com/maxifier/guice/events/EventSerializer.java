@@ -0,0 +1,13 @@
+package com.maxifier.guice.events;
+
+import java.io.IOException;
+
+/**
+ * Converts events to bytes and back for storing them or passing to other processes, e.g. by event bridge or
+ * event journal. Events written with one serializer should be read with a compatible one.
+ */
+public interface EventSerializer {
+    byte[] serialize(Object event) throws IOException;
+
+    Object deserialize(byte[] data) throws IOException;
+}
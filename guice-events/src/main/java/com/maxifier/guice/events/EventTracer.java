@@ -0,0 +1,37 @@
+package com.maxifier.guice.events;
+
+import javax.annotation.Nullable;
+
+/**
+ * Receives spans of event dispatch, see {@link EventDispatcherMetrics#setTracer(EventTracer)}. Tracing is independent
+ * of metrics and is off while no tracer is set.
+ * <p>
+ * Calls are nested in the thread which runs them: a handler span starts and finishes within the dispatch span of its
+ * event, and events fired by the handler are dispatched within the handler span. So the implementation can restore
+ * the cascade with a per-thread stack, see {@link TraceRecorder}. Asynchronous handlers are traced in the threads
+ * running them without a parent span. Finish of a span is reported to the tracer which received its start, even if
+ * the tracer was replaced meanwhile.
+ * <p>
+ * Methods are invoked in the threads which fire events and run handlers, so they should be thread-safe, fast and
+ * shouldn't throw exceptions.
+ */
+public interface EventTracer {
+    /**
+     * @param eventClass class of fired events
+     * @param events     number of fired events, more than one for events of the class fired at once by
+     *                   {@link EventDispatcher#fireEvents(java.util.Collection)}
+     */
+    void dispatchStarted(Class eventClass, int events);
+
+    /**
+     * @param unhandled number of events which were not passed to any listener
+     */
+    void dispatchFinished(Class eventClass, int events, int unhandled);
+
+    void handlerStarted(HandlerMethodInfo handler);
+
+    /**
+     * @param exception exception thrown by handler, null if it completed normally
+     */
+    void handlerFinished(HandlerMethodInfo handler, @Nullable Throwable exception);
+}
@@ -0,0 +1,236 @@
+package com.maxifier.guice.events;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends unhandled events to a local file so that they can be inspected or fired again later, see
+ * {@link #readAll(File, EventSerializer)}. Each record is the length of serialized event followed by its bytes.
+ * <p>
+ * Events are queued and serialized by a background thread, firing thread is never blocked: if the queue is full the
+ * event is dropped and counted, see {@link #getDropped()}. Events are serialized after they are queued, so they
+ * should not be modified after firing. Each record is written by a single call; after the first write error nothing
+ * more is written, so the file may end with at most one partial record.
+ */
+public class FileDeadLetterHandler implements DeadLetterHandler, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(FileDeadLetterHandler.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final Object CLOSE = new Object();
+
+    private final File file;
+    private final EventSerializer serializer;
+    private final BlockingQueue<Object> queue;
+    private final OutputStream out;
+    private final Thread writer;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed;
+    /**
+     * Set by writer when it stops taking events from the queue.
+     */
+    private volatile boolean finished;
+    /**
+     * Set by writer after write error, accessed by writer only.
+     */
+    private boolean failed;
+
+    /**
+     * @param file          events are appended to the file, it's created if it doesn't exist
+     * @param queueCapacity maximum number of events waiting to be written
+     */
+    public FileDeadLetterHandler(File file, EventSerializer serializer, int queueCapacity) throws IOException {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity should be positive, but it is " + queueCapacity);
+        }
+        this.file = file;
+        this.serializer = serializer;
+        this.queue = new ArrayBlockingQueue<Object>(queueCapacity);
+        this.out = new BufferedOutputStream(new FileOutputStream(file, true));
+        this.writer = new Thread("FileDeadLetterHandler writer " + file.getName()) {
+            @Override
+            public void run() {
+                write();
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public FileDeadLetterHandler(File file) throws IOException {
+        this(file, new JavaEventSerializer(), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void deadLetter(Object event) {
+        if (closed || !queue.offer(event)) {
+            dropped.incrementAndGet();
+        } else if (finished) {
+            // closed concurrently, writer won't take the event
+            dropLeftovers();
+        }
+    }
+
+    /**
+     * Counts events queued after writer was finished as dropped.
+     */
+    private void dropLeftovers() {
+        Object event;
+        while ((event = queue.poll()) != null) {
+            if (event != CLOSE) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    private void write() {
+        try {
+            while (true) {
+                Object event = queue.take();
+                if (event == CLOSE) {
+                    break;
+                }
+                write(event);
+                if (queue.isEmpty()) {
+                    flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Dead letter writer is interrupted, " + queue.size() + " events are not written");
+        }
+        finished = true;
+        dropLeftovers();
+        flush();
+        try {
+            out.close();
+        } catch (IOException e) {
+            LOG.error("Unable to close " + file, e);
+        }
+    }
+
+    private void write(Object event) {
+        if (failed) {
+            dropped.incrementAndGet();
+            return;
+        }
+        byte[] data;
+        try {
+            data = serializer.serialize(event);
+        } catch (IOException e) {
+            dropped.incrementAndGet();
+            LOG.error("Unable to serialize dead letter " + event.getClass().getName(), e);
+            return;
+        } catch (RuntimeException e) {
+            dropped.incrementAndGet();
+            LOG.error("Unable to serialize dead letter " + event.getClass().getName(), e);
+            return;
+        }
+        byte[] record = new byte[4 + data.length];
+        record[0] = (byte) (data.length >>> 24);
+        record[1] = (byte) (data.length >>> 16);
+        record[2] = (byte) (data.length >>> 8);
+        record[3] = (byte) data.length;
+        System.arraycopy(data, 0, record, 4, data.length);
+        try {
+            out.write(record);
+            written.incrementAndGet();
+        } catch (IOException e) {
+            failed = true;
+            dropped.incrementAndGet();
+            LOG.error("Unable to write dead letter " + event.getClass().getName() + " to " + file + ", next ones are dropped", e);
+        }
+    }
+
+    private void flush() {
+        if (failed) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            failed = true;
+            LOG.error("Unable to flush " + file + ", next dead letters are dropped", e);
+        }
+    }
+
+    /**
+     * @return number of events written to the file
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * @return number of events which were not written because the queue was full, they couldn't be serialized, the
+     * file couldn't be written or the handler was closed
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes queued events and closes the file. Events passed after this call are dropped.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(CLOSE);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads events written to the file, a partially written last record is ignored.
+     */
+    public static List<Object> readAll(File file, EventSerializer serializer) throws IOException {
+        List<Object> res = new ArrayList<Object>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                byte[] data;
+                try {
+                    int length = in.readInt();
+                    if (length < 0) {
+                        throw new IOException("Corrupted dead letter file " + file + ": record length " + length);
+                    }
+                    data = new byte[length];
+                    in.readFully(data);
+                } catch (EOFException e) {
+                    break;
+                }
+                res.add(serializer.deserialize(data));
+            }
+        } finally {
+            in.close();
+        }
+        return res;
+    }
+}
@@ -0,0 +1,16 @@
+package com.maxifier.guice.events;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Handler which receives only {@link Keyed} events with the key of its listener, which should implement
+ * {@link Keyed} too. Listeners of keyed handlers are indexed by key, so dispatch of an event doesn't iterate over
+ * listeners of other keys. Batch handlers can't be keyed.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface HandleKey {
+}
@@ -14,4 +14,35 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target({ElementType.METHOD})
 public @interface Handler {
+    /**
+     * Asynchronous handlers are invoked by the executor of {@link AsyncEventDispatcher} or in virtual threads of
+     * {@link VirtualThreadEventDispatcher}, other dispatchers invoke them in the thread which fires event.
+     */
+    boolean async() default false;
+
+    /**
+     * Name of {@link AsyncEventDispatcher} executor to run this handler. Non-empty name implies {@link #async()}.
+     */
+    String executor() default "";
+
+    /**
+     * Batch handler takes {@code List<T>} instead of {@code T}. It receives all matching events of the same class
+     * passed to {@link EventDispatcher#fireEvents(java.util.Collection)} in a single invocation, and a singleton list
+     * for {@link EventDispatcher#fireEvent(Object)}.
+     */
+    boolean batch() default false;
+
+    /**
+     * Handlers with higher priority are invoked first, handlers with equal priority are invoked in order of
+     * registration of their listener classes and in order of declaration within a class.
+     *
+     * @see ConsumableEvent
+     */
+    int priority() default 0;
+
+    /**
+     * Maximum number of concurrent invocations of asynchronous handler by {@link VirtualThreadEventDispatcher},
+     * shared by all listeners of the declaring class and its subclasses. Zero means no limit.
+     */
+    int maxConcurrency() default 0;
 }
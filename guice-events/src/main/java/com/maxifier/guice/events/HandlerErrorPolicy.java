@@ -0,0 +1,14 @@
+package com.maxifier.guice.events;
+
+/**
+ * Reacts to exceptions thrown by handlers and to events which were not passed to any handler. It is invoked in the
+ * thread which invoked the handler or fired the event, so it should be fast and shouldn't throw exceptions.
+ *
+ * @see EventDispatcherMetrics#setErrorPolicy(HandlerErrorPolicy)
+ * @see DefaultHandlerErrorPolicy
+ */
+public interface HandlerErrorPolicy {
+    void handlerFailed(HandlerMethodInfo handler, Object event, Throwable exception);
+
+    void eventUnhandled(Object event);
+}
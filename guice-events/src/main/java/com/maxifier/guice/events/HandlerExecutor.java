@@ -0,0 +1,12 @@
+package com.maxifier.guice.events;
+
+/**
+ * Runs handler invocations which should not be performed in the thread firing event.
+ */
+interface HandlerExecutor {
+    /**
+     * @param completion completion of {@link EventDispatcher#fireEventAsync(Object)} which should be notified
+     *                   by {@link Completion#done()} when the invocation is finished or dropped, null if none
+     */
+    <T> void execute(HandlerMethodInstance<T> method, T listener, Object event, Completion completion);
+}
@@ -0,0 +1,93 @@
+package com.maxifier.guice.events;
+
+import gnu.trove.map.hash.THashMap;
+import gnu.trove.set.hash.THashSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of handlers by their parameter type. Handlers for an event class are resolved by walking supertypes of the
+ * class, so resolution cost depends on the depth of event class hierarchy rather than on the number of handlers.
+ * <p>
+ * Resolved handlers are ordered by {@link Handler#priority() priority} and then by registration: listener classes
+ * in order of registration, handlers of the same listener class in order of declaration.
+ * <p>
+ * This class is not thread-safe.
+ */
+class HandlerIndex {
+    private final Map<Class, List<HandlerMethodInstance>> byParamType = new THashMap<Class, List<HandlerMethodInstance>>();
+    private int sequence;
+
+    public void add(ListenerClassInstance<?> listenerClass) {
+        for (HandlerMethodInstance<?> handler : listenerClass.getHandlers()) {
+            handler.setSequence(sequence++);
+            Class paramType = handler.getParamType();
+            if (paramType == null) {
+                // handler without parameter is matched by filters only, every event class is a subclass of Object
+                paramType = Object.class;
+            } else if (paramType.isPrimitive()) {
+                // events are objects, such a handler would never be matched
+                continue;
+            }
+            List<HandlerMethodInstance> l = byParamType.get(paramType);
+            if (l == null) {
+                l = new ArrayList<HandlerMethodInstance>();
+                byParamType.put(paramType, l);
+            }
+            l.add(handler);
+        }
+    }
+
+    public void remove(ListenerClassInstance<?> listenerClass) {
+        for (HandlerMethodInstance<?> handler : listenerClass.getHandlers()) {
+            Class paramType = handler.getParamType() == null ? Object.class : handler.getParamType();
+            List<HandlerMethodInstance> l = byParamType.get(paramType);
+            if (l != null) {
+                l.remove(handler);
+                if (l.isEmpty()) {
+                    // don't keep references to classes which may be unloaded
+                    byParamType.remove(paramType);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param c event class
+     * @return handlers which accept events of given class
+     */
+    public List<HandlerMethodInstance> resolve(Class c) {
+        List<HandlerMethodInstance> candidates = new ArrayList<HandlerMethodInstance>();
+        collect(c, new THashSet<Class>(), candidates);
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Collections.sort(candidates, HandlerMethodInstance.DISPATCH_ORDER);
+        List<HandlerMethodInstance> res = new ArrayList<HandlerMethodInstance>(candidates.size());
+        for (HandlerMethodInstance candidate : candidates) {
+            if (candidate.checkClass(c)) {
+                res.add(candidate);
+            }
+        }
+        return res;
+    }
+
+    private void collect(Class c, Set<Class> visited, List<HandlerMethodInstance> dst) {
+        if (c == null || !visited.add(c)) {
+            return;
+        }
+        List<HandlerMethodInstance> l = byParamType.get(c);
+        if (l != null) {
+            dst.addAll(l);
+        }
+        collect(c.getSuperclass(), visited, dst);
+        for (Class i : c.getInterfaces()) {
+            collect(i, visited, dst);
+        }
+    }
+
+}
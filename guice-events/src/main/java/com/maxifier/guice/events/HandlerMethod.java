@@ -2,29 +2,106 @@ package com.maxifier.guice.events;
 
 
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
 import java.util.List;
 
 class HandlerMethod<T> {
-    private final List<EventMatcher> matchers;
-    private final List<EventClassMatcher> classMatchers;
+    /**
+     * Compiled event matchers, null if every event of accepted class is matched.
+     */
+    private final EventMatcher matcher;
+    private final EventClassMatcher[] classMatchers;
+    /**
+     * Results of class matchers, cached since the handler is shared by all dispatchers. Null if there are no
+     * class matchers.
+     */
+    private final ClassValue<Boolean> classMatched;
     private final HandlerInvocator<Object, T> method;
     private final Class paramType;
+    private final String executor;
+    private final boolean batch;
+    private final int priority;
+    private final int maxConcurrency;
+    private final boolean keyed;
 
     public HandlerMethod(List<EventMatcher> matchers, List<EventClassMatcher> classMatchers, HandlerInvocator<Object, T> method) {
-        this.matchers = matchers;
-        this.classMatchers = classMatchers;
+        this(matchers, classMatchers, method, null);
+    }
+
+    /**
+     * @param handler annotation of handler method, null means default handler attributes
+     */
+    public HandlerMethod(List<EventMatcher> matchers, List<EventClassMatcher> classMatchers, HandlerInvocator<Object, T> method, Handler handler) {
+        this.matcher = EventMatchers.compile(matchers);
+        this.classMatchers = classMatchers.toArray(new EventClassMatcher[classMatchers.size()]);
+        this.classMatched = classMatchers.isEmpty() ? null : new ClassValue<Boolean>() {
+            @Override
+            protected Boolean computeValue(Class<?> c) {
+                return matchClass(c);
+            }
+        };
         this.method = method;
+        if (handler == null) {
+            executor = null;
+            batch = false;
+            priority = 0;
+            maxConcurrency = 0;
+        } else {
+            executor = handler.async() || !handler.executor().isEmpty() ? handler.executor() : null;
+            batch = handler.batch();
+            priority = handler.priority();
+            maxConcurrency = handler.maxConcurrency();
+        }
+        if (maxConcurrency < 0) {
+            throw new RuntimeException("Handler " + method + " has negative maxConcurrency");
+        }
+        keyed = method.getMethod() != null && method.getMethod().isAnnotationPresent(HandleKey.class);
+        if (keyed && batch) {
+            throw new RuntimeException("Batch handler " + method + " can't be keyed");
+        }
 
-        paramType = method.getParamType();
+        paramType = batch ? getBatchElementType(method.getMethod()) : method.getParamType();
         if (classMatchers.isEmpty() && matchers.isEmpty() && paramType == null) {
             throw new RuntimeException("Handler " + method + " has neither filters nor parameter");
         }
     }
 
+    private static Class getBatchElementType(Method method) {
+        Class<?>[] pt = method.getParameterTypes();
+        if (pt.length != 1 || pt[0] != List.class) {
+            throw new RuntimeException("Batch handler method should have exactly one parameter of type List, but " + method + " has not");
+        }
+        Type t = method.getGenericParameterTypes()[0];
+        if (!(t instanceof ParameterizedType)) {
+            return Object.class;
+        }
+        Type arg = ((ParameterizedType) t).getActualTypeArguments()[0];
+        if (arg instanceof WildcardType) {
+            arg = ((WildcardType) arg).getUpperBounds()[0];
+        }
+        if (arg instanceof ParameterizedType) {
+            arg = ((ParameterizedType) arg).getRawType();
+        }
+        if (!(arg instanceof Class)) {
+            throw new RuntimeException("Batch handler method " + method + " should declare element type of List");
+        }
+        return (Class) arg;
+    }
+
     public boolean checkClass(Class c) {
         if (paramType != null && !paramType.isAssignableFrom(c)) {
             return false;
         }
+        if (keyed && !Keyed.class.isAssignableFrom(c)) {
+            return false;
+        }
+        return classMatched == null || classMatched.get(c);
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private boolean matchClass(Class c) {
         for (EventClassMatcher matcher : classMatchers) {
             if (!matcher.matches(c)) {
                 return false;
@@ -39,12 +116,7 @@ class HandlerMethod<T> {
 
     @SuppressWarnings({"unchecked"})
     public boolean isMatched(Object event) {
-        for (EventMatcher matcher : matchers) {
-            if (!matcher.matches(event)) {
-                return false;
-            }
-        }
-        return true;
+        return matcher == null || matcher.matches(event);
     }
 
     @Override
@@ -55,4 +127,47 @@ class HandlerMethod<T> {
     public Method getMethod() {
         return method.getMethod();
     }
+
+    /**
+     * @return type of events accepted by the handler, element type for batch handler, null if handler has no parameter
+     */
+    public Class getParamType() {
+        return paramType;
+    }
+
+    /**
+     * @return maximum number of concurrent invocations of asynchronous handler, 0 if unlimited
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public boolean isAsync() {
+        return executor != null;
+    }
+
+    /**
+     * @return name of executor for asynchronous handler, null for synchronous one
+     */
+    public String getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return true if the handler takes list of events rather than a single event
+     */
+    public boolean isBatch() {
+        return batch;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return true if the handler is annotated with {@link HandleKey}
+     */
+    public boolean isKeyed() {
+        return keyed;
+    }
 }
@@ -13,7 +13,14 @@ public interface HandlerMethodInfo {
 
     Method getMethod();
 
-    int getMatcherInvocations();
+    /**
+     * Counters are always updated, latencies only while {@link EventDispatcherMetrics metrics} are enabled.
+     */
+    long getMatcherInvocations();
 
-    int getMethodInvocations();
+    long getMethodInvocations();
+
+    long getExceptions();
+
+    LatencyHistogram getLatency();
 }
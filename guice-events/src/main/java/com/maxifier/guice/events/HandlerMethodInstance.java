@@ -1,9 +1,11 @@
 package com.maxifier.guice.events;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Created by IntelliJ IDEA.
@@ -12,31 +14,203 @@ import java.lang.reflect.Method;
  * Time: 16:48:33
  */
 class HandlerMethodInstance<T> implements HandlerMethodInfo {
-    private static final Logger LOG = LoggerFactory.getLogger(HandlerMethodInstance.class);
+    /**
+     * Policy of handlers which don't belong to a dispatcher.
+     */
+    private static final HandlerErrorPolicy DEFAULT_ERROR_POLICY = new DefaultHandlerErrorPolicy();
+
+    /**
+     * Order of invocation: higher priority first, then in order of registration.
+     */
+    static final Comparator<HandlerMethodInstance> DISPATCH_ORDER = new Comparator<HandlerMethodInstance>() {
+        @Override
+        public int compare(HandlerMethodInstance o1, HandlerMethodInstance o2) {
+            int p1 = o1.method.getPriority();
+            int p2 = o2.method.getPriority();
+            if (p1 != p2) {
+                return p1 > p2 ? -1 : 1;
+            }
+            return o1.sequence < o2.sequence ? -1 : (o1.sequence == o2.sequence ? 0 : 1);
+        }
+    };
 
     private final HandlerMethod<T> method;
     private final ListenerClassInstance<T> listenerClass;
+    private final HandlerExecutor executor;
+    private final EventDispatcherMetrics metrics;
+
+    private final LongAdder matcherInvocations = new LongAdder();
+    private final LongAdder methodInvocations = new LongAdder();
+    private final LongAdder exceptions = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
 
-    private int matcherInvocations = 0;
-    private int methodInvocations = 0;
+    /**
+     * Registration order of the handler within dispatcher, assigned by {@link HandlerIndex}.
+     */
+    private int sequence;
 
     public HandlerMethodInstance(HandlerMethod<T> method, ListenerClassInstance<T> listenerClass) {
+        this(method, listenerClass, null, null);
+    }
+
+    /**
+     * @param executor executor for asynchronous invocations, null if handler is invoked in the thread firing event
+     * @param metrics  metrics of dispatcher, if null nothing is measured
+     */
+    public HandlerMethodInstance(HandlerMethod<T> method, ListenerClassInstance<T> listenerClass, HandlerExecutor executor, EventDispatcherMetrics metrics) {
         this.method = method;
         this.listenerClass = listenerClass;
+        this.executor = executor;
+        this.metrics = metrics;
+    }
+
+    private boolean isMetricsEnabled() {
+        return metrics != null && metrics.isEnabled();
     }
 
     public boolean invokeIfMatched(Object event) {
-        matcherInvocations++;
-        return method.isMatched(event) && listenerClass.invokeHandler(this, event);
+        matcherInvocations.increment();
+        if (!method.isMatched(event)) {
+            return false;
+        }
+        return listenerClass.invokeHandler(this, method.isBatch() ? Collections.singletonList(event) : event);
+    }
+
+    /**
+     * Invokes the handler for each matched event of the list, or once with the list of matched events for
+     * batch handler.
+     *
+     * @param events  events of the same class
+     * @param handled flags of handled events, set for events which were passed to at least one listener
+     */
+    public void invokeIfMatched(List<?> events, boolean[] handled) {
+        if (!method.isBatch()) {
+            for (int i = 0; i < events.size(); i++) {
+                Object event = events.get(i);
+                if (!isConsumed(event) && invokeIfMatched(event)) {
+                    handled[i] = true;
+                }
+            }
+            return;
+        }
+        boolean[] matched = new boolean[events.size()];
+        List<Object> batch = new ArrayList<Object>(events.size());
+        matcherInvocations.add(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            Object event = events.get(i);
+            if (!isConsumed(event) && method.isMatched(event)) {
+                matched[i] = true;
+                batch.add(event);
+            }
+        }
+        if (!batch.isEmpty() && listenerClass.invokeHandler(this, Collections.unmodifiableList(batch))) {
+            for (int i = 0; i < matched.length; i++) {
+                if (matched[i]) {
+                    handled[i] = true;
+                }
+            }
+        }
+    }
+
+    static boolean isConsumed(Object event) {
+        return event instanceof ConsumableEvent && ((ConsumableEvent) event).isConsumed();
     }
 
     public void invokeHandler(T listener, Object o) {
-        methodInvocations++;
+        if (executor == null) {
+            invokeNow(listener, o);
+            return;
+        }
+        Completion completion = Completion.current();
+        if (completion != null) {
+            completion.fork();
+        }
+        try {
+            executor.execute(this, listener, o, completion);
+        } catch (RuntimeException e) {
+            if (completion != null) {
+                completion.done();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Invokes the handler in current thread.
+     */
+    public void invokeNow(T listener, Object o) {
+        EventTracer tracer = metrics == null ? null : metrics.getTracer();
+        if (tracer == null) {
+            invoke(listener, o);
+            return;
+        }
+        tracer.handlerStarted(this);
+        Throwable exception = null;
+        try {
+            exception = invoke(listener, o);
+        } finally {
+            tracer.handlerFinished(this, exception);
+        }
+    }
+
+    /**
+     * @return exception thrown by handler, null if it completed normally
+     */
+    private Throwable invoke(T listener, Object o) {
+        // counters are always updated, only reading the clock and notifying sinks depend on metrics
+        boolean enabled = isMetricsEnabled();
+        boolean sampled = enabled && metrics.sampleLatency();
+        long start = sampled ? System.nanoTime() : 0;
+        Throwable exception = null;
         try {
             method.invokeHandler(listener, o);
         } catch (Throwable e) {
-            LOG.warn("Unhandled exception in handler " + method, e);
+            exception = e;
+            handlerFailed(o, e);
+        }
+        long nanos = -1;
+        if (sampled) {
+            nanos = System.nanoTime() - start;
+            latency.record(nanos);
+        }
+        methodInvocations.increment();
+        if (exception != null) {
+            exceptions.increment();
         }
+        if (enabled) {
+            metrics.handlerInvoked(this, o, nanos, exception);
+        }
+        return exception;
+    }
+
+    private void handlerFailed(Object event, Throwable e) {
+        HandlerErrorPolicy policy = metrics == null ? DEFAULT_ERROR_POLICY : metrics.getErrorPolicy();
+        try {
+            policy.handlerFailed(this, event, e);
+        } catch (RuntimeException policyException) {
+            // dispatch should go on whatever the policy does
+            DEFAULT_ERROR_POLICY.handlerFailed(this, event, policyException);
+        }
+    }
+
+    public int getPriority() {
+        return method.getPriority();
+    }
+
+    public boolean isKeyed() {
+        return method.isKeyed();
+    }
+
+    int getSequence() {
+        return sequence;
+    }
+
+    void setSequence(int sequence) {
+        this.sequence = sequence;
+    }
+
+    public Class getParamType() {
+        return method.getParamType();
     }
 
     public boolean checkClass(Class c) {
@@ -54,13 +228,23 @@ class HandlerMethodInstance<T> implements HandlerMethodInfo {
     }
 
     @Override
-    public int getMatcherInvocations() {
-        return matcherInvocations;
+    public long getMatcherInvocations() {
+        return matcherInvocations.sum();
+    }
+
+    @Override
+    public long getMethodInvocations() {
+        return methodInvocations.sum();
+    }
+
+    @Override
+    public long getExceptions() {
+        return exceptions.sum();
     }
 
     @Override
-    public int getMethodInvocations() {
-        return methodInvocations;
+    public LatencyHistogram getLatency() {
+        return latency;
     }
 
     @Override
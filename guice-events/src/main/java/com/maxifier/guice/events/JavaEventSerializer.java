@@ -0,0 +1,159 @@
+package com.maxifier.guice.events;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@link EventSerializer} based on java serialization, events should implement {@link java.io.Serializable}.
+ * <p>
+ * Data may come from files written by other processes, so every class met while reading, not only the class of
+ * event, should be allowed by {@link ClassFilter}; otherwise reading fails before any object of the class is
+ * created. By default only JDK value classes are allowed, see {@link #JDK_VALUES} and
+ * {@link #annotatedWith(Class)}.
+ */
+public class JavaEventSerializer implements EventSerializer {
+    /**
+     * Decides which classes may be deserialized, like {@code java.io.ObjectInputFilter} of Java 9.
+     */
+    public interface ClassFilter {
+        boolean isAllowed(Class<?> c);
+    }
+
+    private static final Set<String> JDK_VALUE_PACKAGES = new HashSet<String>(Arrays.asList(
+            "java.lang", "java.math", "java.time", "java.util"));
+
+    /**
+     * Allows primitives, classes of {@code java.lang}, {@code java.math}, {@code java.time} and {@code java.util}
+     * (but not of their subpackages), {@link java.io.Serializable} as array component type and arrays of them.
+     */
+    public static final ClassFilter JDK_VALUES = new ClassFilter() {
+        @Override
+        public boolean isAllowed(Class<?> c) {
+            while (c.isArray()) {
+                c = c.getComponentType();
+            }
+            if (c.isPrimitive() || c == Serializable.class) {
+                return true;
+            }
+            String name = c.getName();
+            int dot = name.lastIndexOf('.');
+            return dot > 0 && JDK_VALUE_PACKAGES.contains(name.substring(0, dot));
+        }
+    };
+
+    /**
+     * Allows every class. Use it only for data which can't be written by others.
+     */
+    public static final ClassFilter ANY = new ClassFilter() {
+        @Override
+        public boolean isAllowed(Class<?> c) {
+            return true;
+        }
+    };
+
+    private final ClassLoader classLoader;
+    private final ClassFilter filter;
+
+    /**
+     * Creates serializer which reads only {@link #JDK_VALUES}.
+     */
+    public JavaEventSerializer() {
+        this(JDK_VALUES);
+    }
+
+    public JavaEventSerializer(ClassFilter filter) {
+        this(JavaEventSerializer.class.getClassLoader(), filter);
+    }
+
+    /**
+     * @param classLoader class loader used to resolve classes of received events
+     * @param filter      classes which may be deserialized
+     */
+    public JavaEventSerializer(ClassLoader classLoader, ClassFilter filter) {
+        this.classLoader = classLoader;
+        this.filter = filter;
+    }
+
+    /**
+     * @return filter which allows {@link #JDK_VALUES} and classes annotated with the annotation (or extending
+     * annotated classes, if it's {@link java.lang.annotation.Inherited}), and arrays of them
+     */
+    public static ClassFilter annotatedWith(final Class<? extends Annotation> annotation) {
+        return new ClassFilter() {
+            @Override
+            public boolean isAllowed(Class<?> c) {
+                if (JDK_VALUES.isAllowed(c)) {
+                    return true;
+                }
+                while (c.isArray()) {
+                    c = c.getComponentType();
+                }
+                return c.isAnnotationPresent(annotation);
+            }
+        };
+    }
+
+    @Override
+    public byte[] serialize(Object event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        try {
+            out.writeObject(event);
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object deserialize(byte[] data) throws IOException {
+        ObjectInputStream in = new FilteringObjectInputStream(new ByteArrayInputStream(data));
+        try {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown event class", e);
+        } finally {
+            in.close();
+        }
+    }
+
+    private class FilteringObjectInputStream extends ObjectInputStream {
+        FilteringObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            Class<?> c;
+            try {
+                c = Class.forName(desc.getName(), false, classLoader);
+            } catch (ClassNotFoundException e) {
+                c = super.resolveClass(desc);
+            }
+            return check(c);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+            return check(super.resolveProxyClass(interfaces));
+        }
+
+        private Class<?> check(Class<?> c) throws InvalidClassException {
+            if (!filter.isAllowed(c)) {
+                throw new InvalidClassException(c.getName(), "Class is not allowed to be deserialized");
+            }
+            return c;
+        }
+    }
+}
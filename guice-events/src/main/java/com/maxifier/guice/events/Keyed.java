@@ -0,0 +1,14 @@
+package com.maxifier.guice.events;
+
+/**
+ * Event or listener with a key for {@link HandleKey keyed handlers}.
+ * <p>
+ * Keyed handler of a listener receives only events with the key equal to the key of the listener. The key of
+ * a listener should not change while it is registered; {@code null} key matches nothing.
+ */
+public interface Keyed {
+    /**
+     * @return key of the event or key of events the listener is interested in, compared with {@code equals}
+     */
+    Object getEventKey();
+}
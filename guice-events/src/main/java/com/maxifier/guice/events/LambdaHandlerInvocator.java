@@ -0,0 +1,157 @@
+package com.maxifier.guice.events;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * Invokes handler via a class generated by {@link LambdaMetafactory} which calls handler method directly.
+ * <p>
+ * Unlike {@link ReflectionHandlerInvocator} and {@link ClassgenHandlerInvocator} it doesn't allocate argument array
+ * per invocation, doesn't wrap exceptions thrown by handler and works for package-private classes and methods.
+ * If the class can't be generated (e.g. declaring class is not accessible from this module) the method is invoked
+ * via {@link MethodHandle} which is allocation-free as well but slower.
+ */
+public class LambdaHandlerInvocator<T, L> extends HandlerInvocator<T, L> {
+    private static final Logger log = LoggerFactory.getLogger(LambdaHandlerInvocator.class);
+
+    private static final MethodType INVOCATION_TYPE = MethodType.methodType(Object.class, Object.class, Object.class);
+
+    /**
+     * {@code MethodHandles.privateLookupIn}, available since Java 9.
+     */
+    private static final Method PRIVATE_LOOKUP_IN = findPrivateLookupIn();
+
+    public interface Invoker {
+        Object invoke(Object listener, Object event);
+    }
+
+    public interface NoArgInvoker {
+        Object invoke(Object listener);
+    }
+
+    public interface VoidInvoker {
+        void invoke(Object listener, Object event);
+    }
+
+    public interface VoidNoArgInvoker {
+        void invoke(Object listener);
+    }
+
+    private final Invoker invoker;
+    private final NoArgInvoker noArgInvoker;
+    private final VoidInvoker voidInvoker;
+    private final VoidNoArgInvoker voidNoArgInvoker;
+    private final MethodHandle handle;
+
+    public LambdaHandlerInvocator(Method method) {
+        super(method);
+        method.setAccessible(true);
+
+        boolean isVoid = method.getReturnType() == void.class;
+        Class<?> samType;
+        if (paramType == null) {
+            samType = isVoid ? VoidNoArgInvoker.class : NoArgInvoker.class;
+        } else {
+            samType = isVoid ? VoidInvoker.class : Invoker.class;
+        }
+        Object generated = generate(method, samType);
+        invoker = samType == Invoker.class ? (Invoker) generated : null;
+        noArgInvoker = samType == NoArgInvoker.class ? (NoArgInvoker) generated : null;
+        voidInvoker = samType == VoidInvoker.class ? (VoidInvoker) generated : null;
+        voidNoArgInvoker = samType == VoidNoArgInvoker.class ? (VoidNoArgInvoker) generated : null;
+        handle = generated == null ? createMethodHandle(method, paramType == null) : null;
+    }
+
+    private static Object generate(Method method, Class<?> samType) {
+        try {
+            MethodHandles.Lookup lookup = lookupIn(method.getDeclaringClass());
+            MethodHandle target = lookup.unreflect(method);
+            Method sam = samType.getMethods()[0];
+            MethodType samMethodType = MethodType.methodType(sam.getReturnType(), sam.getParameterTypes());
+            MethodType instantiatedType = target.type();
+            Class<?> returnType = instantiatedType.returnType();
+            if (returnType.isPrimitive() && returnType != void.class) {
+                instantiatedType = instantiatedType.changeReturnType(MethodType.methodType(returnType).wrap().returnType());
+            }
+            CallSite site = LambdaMetafactory.metafactory(lookup, "invoke", MethodType.methodType(samType), samMethodType, target, instantiatedType);
+            return site.getTarget().invoke();
+        } catch (Throwable e) {
+            log.debug("Unable to generate invocator for {}, method handle will be used", method, e);
+            return null;
+        }
+    }
+
+    private static MethodHandles.Lookup lookupIn(Class<?> c) throws Exception {
+        if (PRIVATE_LOOKUP_IN != null) {
+            return (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, c, MethodHandles.lookup());
+        }
+        // Java 8 doesn't have a public way to get lookup with private access to other class
+        Constructor<MethodHandles.Lookup> constructor = MethodHandles.Lookup.class.getDeclaredConstructor(Class.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(c);
+    }
+
+    private static Method findPrivateLookupIn() {
+        try {
+            return MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle createMethodHandle(Method method, boolean noArgs) {
+        MethodHandle h;
+        try {
+            h = MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Unable to access handler method " + method, e);
+        }
+        if (noArgs) {
+            h = MethodHandles.dropArguments(h, 1, Object.class);
+        }
+        return h.asType(INVOCATION_TYPE);
+    }
+
+    @Override
+    public Object invoke(L instance, T message) throws Exception {
+        if (voidInvoker != null) {
+            voidInvoker.invoke(instance, message);
+            return null;
+        }
+        if (voidNoArgInvoker != null) {
+            voidNoArgInvoker.invoke(instance);
+            return null;
+        }
+        if (invoker != null) {
+            return invoker.invoke(instance, message);
+        }
+        if (noArgInvoker != null) {
+            return noArgInvoker.invoke(instance);
+        }
+        try {
+            return handle.invokeExact((Object) instance, (Object) message);
+        } catch (Exception e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    /**
+     * @return true if direct-call class was generated for the method, false if it is invoked via method handle
+     */
+    public boolean isGenerated() {
+        return handle == null;
+    }
+}
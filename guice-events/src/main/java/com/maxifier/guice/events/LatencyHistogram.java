@@ -0,0 +1,91 @@
+package com.maxifier.guice.events;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies with power of two buckets: bucket {@code i} counts latencies in
+ * {@code [2^i, 2^(i+1))} nanoseconds, bucket 0 also counts zero latencies.
+ * <p>
+ * Recording is lock-free, reading methods return approximate values if latencies are recorded concurrently.
+ */
+public final class LatencyHistogram {
+    static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    void record(long nanos) {
+        int bucket = nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    /**
+     * Adds latencies recorded by other histogram to this one.
+     */
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = other.buckets.get(i);
+            if (n != 0) {
+                buckets.addAndGet(i, n);
+            }
+        }
+        count.add(other.count.sum());
+        totalNanos.add(other.totalNanos.sum());
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public double getMeanNanos() {
+        long c = count.sum();
+        return c == 0 ? 0 : (double) totalNanos.sum() / c;
+    }
+
+    /**
+     * @param fraction fraction of recorded latencies, e.g. 0.99
+     * @return upper bound of the bucket which contains the latency at given fraction, 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("Fraction should be in [0, 1]: " + fraction);
+        }
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return upperBound(i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * @return number of latencies recorded in the bucket
+     */
+    public long getBucket(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    static long upperBound(int bucket) {
+        return bucket >= 62 ? Long.MAX_VALUE : (1L << (bucket + 1)) - 1;
+    }
+}
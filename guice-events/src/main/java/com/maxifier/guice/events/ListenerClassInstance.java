@@ -1,16 +1,17 @@
 package com.maxifier.guice.events;
 
-import gnu.trove.set.hash.THashSet;
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TObjectIntHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.ref.ReferenceQueue;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by IntelliJ IDEA.
@@ -21,91 +22,327 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 class ListenerClassInstance<T> {
     private static final Logger LOG = LoggerFactory.getLogger(ListenerClass.class);
 
+    private static final ListenerRef[] NO_LISTENERS = {};
+    private static final int INITIAL_CAPACITY = 4;
+    /**
+     * Listeners array is compacted when number of tombstones exceeds both this threshold and number of live listeners.
+     */
+    private static final int MIN_TOMBSTONES_TO_COMPACT = 16;
+
     private final Class elementClass;
 
+    /**
+     * Dispatch reads this snapshot without locking. Slots of removed listeners are set to null (tombstones),
+     * new listeners are appended to spare capacity of the array. A new snapshot is published after each write to the
+     * array, so the write is visible to dispatch which reads the snapshot afterwards.
+     */
     @SuppressWarnings({"unchecked"})
-    private final Set<ListenerReference<T>> listeners = new THashSet();
+    private volatile Listeners<T> listeners = new Listeners<T>(NO_LISTENERS, 0);
+
+    /**
+     * Slot of each listener in the array, used to find existing references of any strength. Guarded by {@link #lock}.
+     */
+    private final TObjectIntHashMap<ListenerRef<T>> slots = new TObjectIntHashMap<ListenerRef<T>>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, -1);
+    /**
+     * Guarded by {@link #lock}.
+     */
+    private int tombstones;
+    /**
+     * Set when dispatcher drops this empty listener class, new listeners are not accepted after that.
+     * Guarded by {@link #lock}.
+     */
+    private boolean detached;
+    private final Object lock = new Object();
+
+    /**
+     * Listeners by their keys for {@link HandleKey keyed} handlers, null if the class has no such handlers. Arrays
+     * are replaced on change, so dispatch reads them without locking.
+     */
+    private final ConcurrentHashMap<Object, ListenerRef<T>[]> byKey;
+    /**
+     * Keys of registered listeners with non-null key, null if the class has no keyed handlers. Guarded by {@link #lock}.
+     */
+    private final Map<ListenerRef<T>, Object> keys;
+
+    private final Strength defaultStrength;
     private final List<HandlerMethodInstance<T>> handlers;
     private final ReferenceQueue<T> queue;
-    private final Lock readLock;
-    private final Lock writeLock;
 
     public ListenerClassInstance(Class elementClass, ReferenceQueue<T> queue, List<ListenerClass<?>> lc) {
+        this(elementClass, queue, lc, null);
+    }
+
+    /**
+     * @param dispatcher dispatcher which provides executors for asynchronous handlers, if null all handlers are
+     *                   invoked synchronously
+     */
+    public ListenerClassInstance(Class elementClass, ReferenceQueue<T> queue, List<ListenerClass<?>> lc, EventDispatcherImpl dispatcher) {
         this.queue = queue;
         this.elementClass = elementClass;
         this.handlers = new ArrayList<HandlerMethodInstance<T>>();
+        ListenerStrength strength = (ListenerStrength) elementClass.getAnnotation(ListenerStrength.class);
+        this.defaultStrength = strength == null ? Strength.WEAK : strength.value();
 
+        boolean keyed = false;
         for (ListenerClass<?> listenerClass : lc) {
             for (HandlerMethod<?> method : listenerClass.getHandlers()) {
+                HandlerExecutor executor = dispatcher == null || !method.isAsync() ? null : dispatcher.getHandlerExecutor(method);
                 //noinspection unchecked
-                handlers.add(new HandlerMethodInstance<T>((HandlerMethod<T>) method, this));
+                handlers.add(new HandlerMethodInstance<T>((HandlerMethod<T>) method, this, executor, dispatcher == null ? null : dispatcher.getMetrics()));
+                keyed |= method.isKeyed();
             }
         }
-
-        ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
-        readLock = rwl.readLock();
-        writeLock = rwl.writeLock();
+        if (keyed && !Keyed.class.isAssignableFrom(elementClass)) {
+            throw new RuntimeException("Listener " + elementClass + " has keyed handlers, so it should implement " + Keyed.class.getName());
+        }
+        byKey = keyed ? new ConcurrentHashMap<Object, ListenerRef<T>[]>() : null;
+        keys = keyed ? new HashMap<ListenerRef<T>, Object>() : null;
     }
 
-    public void remove(ListenerReference<T> ref) {
+    public void remove(ListenerRef<T> ref) {
         if (!handlers.isEmpty()) {
-            writeLock.lock();
-            try {
-                LOG.debug("Lost reference to {}", elementClass);
-                listeners.remove(ref);
-            } finally {
-                writeLock.unlock();
+            synchronized (lock) {
+                int slot = slots.remove(ref);
+                if (slot >= 0) {
+                    if (ref.getStrength() == Strength.WEAK && ref.get() == null) {
+                        LOG.debug("Lost reference to {}", elementClass);
+                    }
+                    removeSlot(slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the listener.
+     *
+     * @return true if the listener was registered
+     */
+    public boolean removeListener(T listener) {
+        if (handlers.isEmpty()) {
+            return false;
+        }
+        synchronized (lock) {
+            int slot = slots.remove(new StrongListenerReference<T>(listener));
+            if (slot < 0) {
+                return false;
             }
+            removeSlot(slot);
+            return true;
         }
     }
 
+    // Should be called under lock
+    private void removeSlot(int slot) {
+        Listeners<T> l = listeners;
+        ListenerRef<T> ref = l.refs[slot];
+        // plain store is published by the volatile write of a new snapshot, dispatch which is in progress may
+        // still invoke the listener
+        l.refs[slot] = null;
+        listeners = new Listeners<T>(l.refs, l.end);
+        if (keys != null) {
+            Object key = keys.remove(ref);
+            if (key != null) {
+                replaceKeyed(key, ref, null);
+            }
+        }
+        if (ref instanceof ListenerReference) {
+            ((ListenerReference<T>) ref).clear();
+        }
+        tombstones++;
+        if (tombstones >= MIN_TOMBSTONES_TO_COMPACT && tombstones > slots.size()) {
+            compact(l, slots.size() * 2);
+        }
+    }
 
-    public void addListener(final T listener) {
+    // Should be called under lock
+    @SuppressWarnings({"unchecked"})
+    private void compact(Listeners<T> l, int capacity) {
+        ListenerRef<T>[] refs = new ListenerRef[Math.max(capacity, INITIAL_CAPACITY)];
+        int n = 0;
+        for (int i = 0; i < l.end; i++) {
+            ListenerRef<T> ref = l.refs[i];
+            if (ref != null) {
+                slots.put(ref, n);
+                refs[n++] = ref;
+            }
+        }
+        tombstones = 0;
+        listeners = new Listeners<T>(refs, n);
+    }
+
+    /**
+     * Adds the listener. If it is already added with weak reference and strong one is requested, the reference is
+     * replaced.
+     *
+     * @param strength reference strength, if null the default strength of listener class is used
+     * @return false if this listener class was detached from dispatcher, so the listener was not added
+     */
+    public boolean addListener(final T listener, Strength strength) {
         if (!handlers.isEmpty()) {
-            writeLock.lock();
-            try {
-                listeners.add(new ListenerReference<T>(this, listener, queue));
-            } finally {
-                writeLock.unlock();
+            if (strength == null) {
+                strength = defaultStrength;
+            }
+            synchronized (lock) {
+                if (detached) {
+                    return false;
+                }
+                StrongListenerReference<T> strong = new StrongListenerReference<T>(listener);
+                int slot = slots.get(strong);
+                if (slot >= 0) {
+                    Listeners<T> l = listeners;
+                    ListenerRef<T> existing = l.refs[slot];
+                    if (existing.getStrength() == strength || strength == Strength.WEAK) {
+                        return true;
+                    }
+                    // the listener keeps its position in the array
+                    slots.remove(existing);
+                    slots.put(strong, slot);
+                    l.refs[slot] = strong;
+                    // publish the strong reference before the weak one is cleared
+                    listeners = new Listeners<T>(l.refs, l.end);
+                    if (keys != null) {
+                        Object key = keys.remove(existing);
+                        if (key != null) {
+                            keys.put(strong, key);
+                            replaceKeyed(key, existing, strong);
+                        }
+                    }
+                    ((ListenerReference<T>) existing).clear();
+                    return true;
+                }
+                ListenerRef<T> ref = strength == Strength.STRONG ? strong : new ListenerReference<T>(this, listener, queue);
+                Listeners<T> l = listeners;
+                if (l.end == l.refs.length) {
+                    // grows the array if there are only few tombstones
+                    compact(l, slots.size() < l.end / 2 ? l.end : l.end * 2);
+                    l = listeners;
+                }
+                l.refs[l.end] = ref;
+                slots.put(ref, l.end);
+                if (keys != null) {
+                    Object key = ((Keyed) listener).getEventKey();
+                    if (key != null) {
+                        keys.put(ref, key);
+                        replaceKeyed(key, null, ref);
+                    }
+                }
+                // spare capacity of the array is not visible to dispatch until the new bound is published
+                listeners = new Listeners<T>(l.refs, l.end + 1);
             }
         }
+        return true;
     }
 
-    public boolean invokeHandler(HandlerMethodInstance<T> method, Object event) {
-        readLock.lock();
-        try {
-            boolean invoked = false;
-            for (ListenerReference<T> listener : listeners) {
-                final T l = listener.get();
-                if (l != null) {
-                    method.invokeHandler(l, event);
-                    invoked = true;
+    /**
+     * Replaces, removes (if {@code ref} is null) or appends (if {@code existing} is null) listener of the key.
+     * Should be called under lock.
+     */
+    @SuppressWarnings({"unchecked"})
+    private void replaceKeyed(Object key, ListenerRef<T> existing, ListenerRef<T> ref) {
+        ListenerRef<T>[] refs = byKey.get(key);
+        if (existing == null) {
+            if (refs == null) {
+                byKey.put(key, new ListenerRef[]{ref});
+            } else {
+                ListenerRef<T>[] res = Arrays.copyOf(refs, refs.length + 1);
+                res[refs.length] = ref;
+                byKey.put(key, res);
+            }
+            return;
+        }
+        for (int i = 0; i < refs.length; i++) {
+            if (refs[i] == existing) {
+                if (ref != null) {
+                    ListenerRef<T>[] res = refs.clone();
+                    res[i] = ref;
+                    byKey.put(key, res);
+                } else if (refs.length == 1) {
+                    byKey.remove(key);
+                } else {
+                    ListenerRef<T>[] res = new ListenerRef[refs.length - 1];
+                    System.arraycopy(refs, 0, res, 0, i);
+                    System.arraycopy(refs, i + 1, res, i, res.length - i);
+                    byKey.put(key, res);
                 }
+                return;
             }
-            return invoked;
-        } finally {
-            readLock.unlock();
         }
     }
 
-    public void bindHandlers(List<HandlerMethodInstance> dst, Class c) {
-        for (HandlerMethodInstance handler : handlers) {
-            if (handler.checkClass(c)) {
-                dst.add(handler);
+    public boolean addListener(final T listener) {
+        return addListener(listener, null);
+    }
+
+    /**
+     * Detaches this listener class if it has no listeners, so it can be dropped by dispatcher.
+     *
+     * @return true if the listener class was detached
+     */
+    public boolean detachIfEmpty() {
+        synchronized (lock) {
+            if (slots.isEmpty()) {
+                detached = true;
             }
+            return detached;
         }
     }
 
-    public void bindHandlers(Map<Class, List<HandlerMethodInstance>> mapping) {
-        for (Map.Entry<Class, List<HandlerMethodInstance>> e : mapping.entrySet()) {
-            Class c = e.getKey();
-            List<HandlerMethodInstance> l = e.getValue();
-            for (HandlerMethodInstance<T> handler : handlers) {
-                if (handler.checkClass(c)) {
-                    l.add(handler);
+    /**
+     * @return strength of listeners registered without explicit strength
+     */
+    public Strength getDefaultStrength() {
+        return defaultStrength;
+    }
+
+    public boolean invokeHandler(HandlerMethodInstance<T> method, Object event) {
+        ListenerRef<T>[] refs;
+        int end;
+        if (method.isKeyed()) {
+            // keyed handler is resolved only for keyed events
+            Object key = ((Keyed) event).getEventKey();
+            refs = key == null ? null : byKey.get(key);
+            if (refs == null) {
+                return false;
+            }
+            end = refs.length;
+        } else {
+            Listeners<T> l = listeners;
+            refs = l.refs;
+            end = l.end;
+        }
+        ConsumableEvent consumable = event instanceof ConsumableEvent ? (ConsumableEvent) event : null;
+        boolean invoked = false;
+        for (int i = 0; i < end; i++) {
+            ListenerRef<T> ref = refs[i];
+            if (ref != null) {
+                T listener = ref.get();
+                if (listener != null) {
+                    method.invokeHandler(listener, event);
+                    invoked = true;
+                    if (consumable != null && consumable.isConsumed()) {
+                        break;
+                    }
                 }
             }
         }
+        return invoked;
+    }
+
+    /**
+     * @return number of registered listeners, including weakly referenced ones which were collected but not removed yet
+     */
+    int getListenerCount() {
+        synchronized (lock) {
+            return slots.size();
+        }
+    }
+
+    /**
+     * @return size of the listeners array including tombstones
+     */
+    int getListenerSlots() {
+        return listeners.end;
     }
 
     public List<HandlerMethodInstance<T>> getHandlers() {
@@ -120,4 +357,18 @@ class ListenerClassInstance<T> {
     public Class getElementClass() {
         return elementClass;
     }
+
+    private static final class Listeners<T> {
+        final ListenerRef<T>[] refs;
+        /**
+         * Slots from this index are not used yet.
+         */
+        final int end;
+
+        @SuppressWarnings({"unchecked"})
+        Listeners(ListenerRef[] refs, int end) {
+            this.refs = refs;
+            this.end = end;
+        }
+    }
 }
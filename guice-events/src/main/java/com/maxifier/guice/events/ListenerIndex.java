@@ -0,0 +1,194 @@
+package com.maxifier.guice.events;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Handler methods of classes recorded at compile time by {@code guice-events-processor}.
+ * <p>
+ * Every jar or class directory built with the processor contains {@link #RESOURCE} with a line per compiled class:
+ * binary name of the class, number of its declared methods which are not synthetic and descriptors of its handler
+ * methods in order of declaration, e.g. {@code com.acme.Listener 3 onOrder(com.acme.Order) onTick()}. Annotations of
+ * methods of classes listed without handlers are not parsed at all, classes missing from the index are parsed as
+ * usual.
+ * <p>
+ * Index may be out of date if a class was compiled again without the processor. Such class is parsed by reflection
+ * if the number of its methods differs from the index, so a handler added to it is not missed. Handlers listed in the
+ * index are checked to be annotated by {@link EventReflectionParser}.
+ */
+final class ListenerIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(ListenerIndex.class);
+
+    static final String RESOURCE = "META-INF/x-guice/event-handlers.idx";
+
+    private static final String[] NO_HANDLERS = new String[0];
+
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>();
+
+    static {
+        for (Class<?> c : new Class<?>[]{boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class}) {
+            PRIMITIVES.put(c.getName(), c);
+        }
+    }
+
+    /**
+     * Merged indexes visible to class loader, weak keys let class loaders be collected.
+     */
+    private static final Map<ClassLoader, Map<String, Entry>> indexes = new WeakHashMap<ClassLoader, Map<String, Entry>>();
+
+    private ListenerIndex() {
+    }
+
+    /**
+     * @return descriptors of handler methods declared by the class, null if the class is not indexed or the index is
+     * out of date
+     */
+    static String[] getHandlers(Class<?> c) {
+        ClassLoader loader = c.getClassLoader();
+        if (loader == null) {
+            return null;
+        }
+        Map<String, Entry> index;
+        synchronized (indexes) {
+            index = indexes.get(loader);
+            if (index == null) {
+                index = load(loader);
+                indexes.put(loader, index);
+            }
+        }
+        Entry entry = index.get(c.getName());
+        if (entry == null) {
+            return null;
+        }
+        if (entry.methods != countMethods(c)) {
+            LOG.warn("Listener index is out of date for " + c + ", it's parsed by reflection");
+            return null;
+        }
+        return entry.handlers;
+    }
+
+    /**
+     * @return number of declared methods which are not synthetic, like lambdas or bridges, so they are the methods
+     * seen by the processor
+     */
+    static int countMethods(Class<?> c) {
+        int n = 0;
+        for (Method method : c.getDeclaredMethods()) {
+            if (!method.isSynthetic()) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static Map<String, Entry> load(ClassLoader loader) {
+        Enumeration<URL> resources;
+        try {
+            resources = loader.getResources(RESOURCE);
+        } catch (IOException e) {
+            LOG.warn("Unable to find listener indexes", e);
+            return Collections.emptyMap();
+        }
+        Map<String, Entry> index = new HashMap<String, Entry>();
+        while (resources.hasMoreElements()) {
+            URL url = resources.nextElement();
+            try {
+                BufferedReader in = new BufferedReader(new InputStreamReader(url.openStream(), Charset.forName("UTF-8")));
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        line = line.trim();
+                        if (line.isEmpty() || line.startsWith("#")) {
+                            continue;
+                        }
+                        String[] tokens = line.split(" +");
+                        Entry entry = parse(tokens);
+                        if (entry == null) {
+                            LOG.warn("Malformed line of listener index " + url + ": " + line);
+                        } else {
+                            index.put(tokens[0], entry);
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                LOG.warn("Unable to read listener index " + url, e);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return entry of class name, number of methods and descriptors of handlers; null if the number is missing
+     */
+    private static Entry parse(String[] tokens) {
+        if (tokens.length < 2) {
+            return null;
+        }
+        int methods;
+        try {
+            methods = Integer.parseInt(tokens[1]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String[] handlers = NO_HANDLERS;
+        if (tokens.length > 2) {
+            handlers = new String[tokens.length - 2];
+            System.arraycopy(tokens, 2, handlers, 0, handlers.length);
+        }
+        return new Entry(methods, handlers);
+    }
+
+    /**
+     * @param descriptor {@code name(paramType)} or {@code name()}
+     * @return declared method of the class or null if there is no such method
+     */
+    static Method resolve(Class<?> c, String descriptor) {
+        int open = descriptor.indexOf('(');
+        if (open <= 0 || !descriptor.endsWith(")")) {
+            return null;
+        }
+        String name = descriptor.substring(0, open);
+        String param = descriptor.substring(open + 1, descriptor.length() - 1);
+        try {
+            if (param.isEmpty()) {
+                return c.getDeclaredMethod(name);
+            }
+            Class<?> paramType = PRIMITIVES.get(param);
+            if (paramType == null) {
+                paramType = Class.forName(param, false, c.getClassLoader());
+            }
+            return c.getDeclaredMethod(name, paramType);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static final class Entry {
+        /**
+         * Number of declared methods which are not synthetic.
+         */
+        final int methods;
+        final String[] handlers;
+
+        Entry(int methods, String[] handlers) {
+            this.methods = methods;
+            this.handlers = handlers;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.maxifier.guice.events;
+
+/**
+ * Reference to registered listener. References to the same listener are equal regardless of their strength.
+ */
+interface ListenerRef<T> {
+    /**
+     * @return listener or null if it was garbage collected
+     */
+    T get();
+
+    Strength getStrength();
+}
@@ -4,7 +4,7 @@ import javax.annotation.Nonnull;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 
-class ListenerReference<T> extends WeakReference<T> {
+class ListenerReference<T> extends WeakReference<T> implements ListenerRef<T> {
     private final ListenerClassInstance<T> listenerClass;
     private final int hash;
 
@@ -19,13 +19,19 @@ class ListenerReference<T> extends WeakReference<T> {
         listenerClass.remove(this);
     }
 
+    @Override
+    public Strength getStrength() {
+        return Strength.WEAK;
+    }
+
     @Override
     public boolean equals(Object o) {
         // Even if the referenced object was GCed the reference is still equal to itself...
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        // References of different strength to the same listener are equal
+        if (!(o instanceof ListenerRef)) return false;
 
-        ListenerReference that = (ListenerReference) o;
+        ListenerRef that = (ListenerRef) o;
         T t1 = get();
         Object t2 = that.get();
         // But after GC all references become unequal, even if they led to the same object before
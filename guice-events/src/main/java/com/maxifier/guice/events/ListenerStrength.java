@@ -0,0 +1,18 @@
+package com.maxifier.guice.events;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Default reference strength for listeners of annotated class registered with {@link EventDispatcher#register(Object)}.
+ * Listeners of classes without this annotation are referenced weakly.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+@Inherited
+public @interface ListenerStrength {
+    Strength value();
+}
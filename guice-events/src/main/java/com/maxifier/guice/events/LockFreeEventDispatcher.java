@@ -0,0 +1,20 @@
+package com.maxifier.guice.events;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * {@link EventDispatcher} which never defers listener registration.
+ * <p>
+ * Firing an event takes no locks and does no writes to shared state once handlers of the event class are resolved:
+ * resolutions are invalidated by registration of a new listener class and refreshed on the next firing.
+ * Listener registered from a handler starts receiving events immediately, even the events fired by the same
+ * handler later.
+ */
+@Singleton
+public class LockFreeEventDispatcher extends EventDispatcherImpl {
+    @Inject
+    public LockFreeEventDispatcher(ListenerRegistrationQueue q) {
+        super(q, false);
+    }
+}
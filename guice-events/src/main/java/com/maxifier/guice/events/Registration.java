@@ -0,0 +1,14 @@
+package com.maxifier.guice.events;
+
+/**
+ * Handle of a listener registered with {@link EventDispatcher#register(Object, Strength)}.
+ * It doesn't prevent weakly referenced listener from being garbage collected.
+ */
+public interface Registration extends AutoCloseable {
+    /**
+     * Unregisters the listener, same as {@link EventDispatcher#unregister(Object)}. Does nothing if the listener was
+     * already unregistered or garbage collected.
+     */
+    @Override
+    void close();
+}
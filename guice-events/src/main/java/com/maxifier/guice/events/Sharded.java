@@ -0,0 +1,14 @@
+package com.maxifier.guice.events;
+
+/**
+ * Event or listener which belongs to a shard of {@link ShardedEventDispatcher}.
+ * <p>
+ * Event is delivered to listeners of its shard and to listeners which are not sharded. Listener receives events of
+ * its shard and events which are not sharded. The key of a listener should not change while it is registered.
+ */
+public interface Sharded {
+    /**
+     * @return key which determines the shard, compared with {@code equals}
+     */
+    Object getShardKey();
+}
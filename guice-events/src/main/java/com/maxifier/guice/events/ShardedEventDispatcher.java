@@ -0,0 +1,163 @@
+package com.maxifier.guice.events;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import gnu.trove.map.hash.THashMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link EventDispatcher} which partitions listeners into shards with independent state.
+ * <p>
+ * Listeners implementing {@link Sharded} are registered in the shard of their key, other listeners are registered
+ * in a common part. Event implementing {@link Sharded} is delivered to the common part and to the shard of its key
+ * only, so the cost of its dispatch doesn't depend on listeners of other shards. Other events are delivered to the
+ * common part and to every shard.
+ * <p>
+ * Priorities and {@link ConsumableEvent consumption} are respected within the common part and within a shard;
+ * the common part is always invoked first. Listeners registered by handlers are registered when the outermost firing
+ * of the thread is finished, just like with {@link EventDispatcherImpl}.
+ * <p>
+ * {@link #fireEvents(java.util.Collection)} dispatches events grouped by class like {@link EventDispatcherImpl}, each
+ * part receives events of a class in order of firing.
+ */
+@Singleton
+public class ShardedEventDispatcher extends AbstractEventDispatcher {
+    /**
+     * Name of {@code int} constant binding with the number of shards.
+     */
+    public static final String SHARDS = "com.maxifier.guice.events.shards";
+
+    private final EventDispatcherImpl common;
+    private final EventDispatcherImpl[] shards;
+
+    @Inject
+    public ShardedEventDispatcher(ListenerRegistrationQueue q, @Named(SHARDS) int shards) {
+        super(new EventDispatcherMetrics(), true);
+        if (shards <= 0) {
+            throw new IllegalArgumentException("Number of shards should be positive, but it is " + shards);
+        }
+        common = new EventDispatcherImpl(metrics, null);
+        this.shards = new EventDispatcherImpl[shards];
+        for (int i = 0; i < shards; i++) {
+            // all parts share the reference watcher thread of the common part
+            this.shards[i] = new EventDispatcherImpl(metrics, common);
+        }
+        q.setDispatcher(this);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    private EventDispatcherImpl route(Object o) {
+        return o instanceof Sharded ? shards[shardIndex(((Sharded) o).getShardKey())] : common;
+    }
+
+    private int shardIndex(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % shards.length;
+    }
+
+    @Override
+    boolean fireEvent0(Object event) {
+        boolean handled = common.fireEvent0(event);
+        if (event instanceof Sharded) {
+            return (!HandlerMethodInstance.isConsumed(event) && route(event).fireEvent0(event)) | handled;
+        }
+        for (EventDispatcherImpl shard : shards) {
+            if (HandlerMethodInstance.isConsumed(event)) {
+                break;
+            }
+            handled |= shard.fireEvent0(event);
+        }
+        return handled;
+    }
+
+    @Override
+    void fireEvents0(Class eventClass, List<Object> events, boolean[] handled) {
+        common.fireEvents0(eventClass, events, handled);
+        if (!Sharded.class.isAssignableFrom(eventClass)) {
+            // consumed events are skipped by each part
+            for (EventDispatcherImpl shard : shards) {
+                shard.fireEvents0(eventClass, events, handled);
+            }
+            return;
+        }
+        // positions of events of each shard in the list, in order of firing
+        int[] shardOf = new int[events.size()];
+        int[] sizes = new int[shards.length];
+        for (int i = 0; i < shardOf.length; i++) {
+            shardOf[i] = shardIndex(((Sharded) events.get(i)).getShardKey());
+            sizes[shardOf[i]]++;
+        }
+        for (int s = 0; s < shards.length; s++) {
+            if (sizes[s] == 0) {
+                continue;
+            }
+            int[] positions = new int[sizes[s]];
+            List<Object> shardEvents = new ArrayList<Object>(sizes[s]);
+            for (int i = 0; i < shardOf.length; i++) {
+                if (shardOf[i] == s) {
+                    positions[shardEvents.size()] = i;
+                    shardEvents.add(events.get(i));
+                }
+            }
+            boolean[] shardHandled = new boolean[positions.length];
+            shards[s].fireEvents0(eventClass, shardEvents, shardHandled);
+            for (int k = 0; k < positions.length; k++) {
+                if (shardHandled[k]) {
+                    handled[positions[k]] = true;
+                }
+            }
+        }
+    }
+
+    @Override
+    void register0(Object o, Strength strength) {
+        route(o).register0(o, strength);
+    }
+
+    @Override
+    void unregister0(Object o) {
+        route(o).unregister0(o);
+    }
+
+    @Override
+    public Map<Class, List<? extends HandlerMethodInfo>> getHandlersByEventClass() {
+        Map<Class, List<? extends HandlerMethodInfo>> res = new THashMap<Class, List<? extends HandlerMethodInfo>>();
+        merge(res, common.getHandlersByEventClass());
+        for (EventDispatcherImpl shard : shards) {
+            merge(res, shard.getHandlersByEventClass());
+        }
+        return Collections.unmodifiableMap(res);
+    }
+
+    @Override
+    public Map<Class, List<? extends HandlerMethodInfo>> getHandlersByListenerClass() {
+        Map<Class, List<? extends HandlerMethodInfo>> res = new THashMap<Class, List<? extends HandlerMethodInfo>>();
+        merge(res, common.getHandlersByListenerClass());
+        for (EventDispatcherImpl shard : shards) {
+            merge(res, shard.getHandlersByListenerClass());
+        }
+        return res;
+    }
+
+    private static void merge(Map<Class, List<? extends HandlerMethodInfo>> res, Map<Class, List<? extends HandlerMethodInfo>> m) {
+        for (Map.Entry<Class, List<? extends HandlerMethodInfo>> entry : m.entrySet()) {
+            List<? extends HandlerMethodInfo> l = res.get(entry.getKey());
+            if (l == null) {
+                res.put(entry.getKey(), entry.getValue());
+            } else {
+                List<HandlerMethodInfo> merged = new ArrayList<HandlerMethodInfo>(l);
+                merged.addAll(entry.getValue());
+                res.put(entry.getKey(), Collections.unmodifiableList(merged));
+            }
+        }
+    }
+}
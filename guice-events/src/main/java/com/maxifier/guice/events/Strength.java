@@ -0,0 +1,16 @@
+package com.maxifier.guice.events;
+
+/**
+ * How {@link EventDispatcher} references registered listener.
+ */
+public enum Strength {
+    /**
+     * Listener is referenced weakly and is unregistered automatically once it is garbage collected.
+     */
+    WEAK,
+    /**
+     * Listener is referenced strongly and receives events until it is unregistered explicitly with
+     * {@link EventDispatcher#unregister(Object)} or {@link Registration#close()}.
+     */
+    STRONG
+}
@@ -0,0 +1,34 @@
+package com.maxifier.guice.events;
+
+import javax.annotation.Nonnull;
+
+class StrongListenerReference<T> implements ListenerRef<T> {
+    private final T referent;
+
+    public StrongListenerReference(@Nonnull T referent) {
+        this.referent = referent;
+    }
+
+    @Override
+    public T get() {
+        return referent;
+    }
+
+    @Override
+    public Strength getStrength() {
+        return Strength.STRONG;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ListenerRef)) return false;
+        // Referential equality is used, see ListenerReference
+        return referent == ((ListenerRef) o).get();
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(referent);
+    }
+}
@@ -0,0 +1,357 @@
+package com.maxifier.guice.events;
+
+import javax.annotation.Nullable;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link EventTracer} which keeps the last finished spans in memory, older spans are overwritten. Each span refers
+ * to the span it was started within, so a cascade of events fired by handlers can be restored.
+ * <p>
+ * Spans can be exported in Chrome trace event format with {@link #writeChromeTrace(File)}, which is shown by
+ * {@code chrome://tracing}, Perfetto UI and other trace viewers: dispatch and handler spans of each thread are drawn
+ * nested, so the slow hop of a cascade is seen at once.
+ */
+public class TraceRecorder implements EventTracer {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final long origin = System.nanoTime();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicReferenceArray<Span> spans;
+    private final AtomicLong count = new AtomicLong();
+
+    private final ThreadLocal<Stack> stacks = new ThreadLocal<Stack>() {
+        @Override
+        protected Stack initialValue() {
+            return new Stack();
+        }
+    };
+
+    public TraceRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of the last spans to keep
+     */
+    public TraceRecorder(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be positive, but it is " + capacity);
+        }
+        spans = new AtomicReferenceArray<Span>(capacity);
+    }
+
+    @Override
+    public void dispatchStarted(Class eventClass, int events) {
+        stacks.get().push(ids.incrementAndGet(), System.nanoTime());
+    }
+
+    @Override
+    public void dispatchFinished(Class eventClass, int events, int unhandled) {
+        finish(eventClass, events, unhandled, false);
+    }
+
+    @Override
+    public void handlerStarted(HandlerMethodInfo handler) {
+        stacks.get().push(ids.incrementAndGet(), System.nanoTime());
+    }
+
+    @Override
+    public void handlerFinished(HandlerMethodInfo handler, @Nullable Throwable exception) {
+        finish(handler, 0, 0, exception != null);
+    }
+
+    private void finish(Object subject, int events, int unhandled, boolean failed) {
+        long end = System.nanoTime();
+        Stack stack = stacks.get();
+        if (stack.depth == 0) {
+            // started before the recorder was set
+            stacks.remove();
+            return;
+        }
+        stack.depth--;
+        long start = stack.starts[stack.depth];
+        Thread thread = Thread.currentThread();
+        Span span = new Span(stack.ids[stack.depth], stack.depth == 0 ? 0 : stack.ids[stack.depth - 1],
+                thread.getId(), thread.getName(), subject, events, unhandled, failed, start - origin, end - start);
+        spans.set((int) (count.getAndIncrement() % spans.length()), span);
+        if (stack.depth == 0) {
+            // the outermost span is finished, nothing is kept for the thread until it starts a new one
+            stacks.remove();
+        }
+    }
+
+    /**
+     * @return the last finished spans in order of finish, children precede their parents
+     */
+    public List<Span> getSpans() {
+        long n = count.get();
+        int size = (int) Math.min(n, spans.length());
+        List<Span> res = new ArrayList<Span>(size);
+        for (long i = n - size; i < n; i++) {
+            Span span = spans.get((int) (i % spans.length()));
+            if (span != null) {
+                res.add(span);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return number of spans finished since creation or {@link #clear()}, including overwritten ones
+     */
+    public long getSpanCount() {
+        return count.get();
+    }
+
+    /**
+     * Drops recorded spans. Spans in progress are recorded when they finish.
+     */
+    public void clear() {
+        for (int i = 0; i < spans.length(); i++) {
+            spans.set(i, null);
+        }
+        count.set(0);
+    }
+
+    /**
+     * Writes recorded spans to the file in Chrome trace event format.
+     *
+     * @return number of written spans
+     */
+    public int writeChromeTrace(File file) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            return writeChromeTrace(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes recorded spans as JSON object of Chrome trace event format: a complete event per span with time in
+     * microseconds since creation of the recorder and ids of the span and its parent in arguments.
+     *
+     * @return number of written spans
+     */
+    public int writeChromeTrace(Writer out) throws IOException {
+        List<Span> recorded = getSpans();
+        out.write("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[");
+        boolean first = true;
+        for (Span span : recorded) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            out.write("\n{\"name\":");
+            writeString(out, span.getName());
+            out.write(",\"cat\":\"");
+            out.write(span.isHandler() ? "handler" : "dispatch");
+            out.write("\",\"ph\":\"X\",\"pid\":1,\"tid\":");
+            out.write(Long.toString(span.getThreadId()));
+            out.write(",\"ts\":");
+            out.write(micros(span.getStartNanos()));
+            out.write(",\"dur\":");
+            out.write(micros(span.getDurationNanos()));
+            out.write(",\"args\":{\"id\":");
+            out.write(Long.toString(span.getId()));
+            out.write(",\"parent\":");
+            out.write(Long.toString(span.getParentId()));
+            if (span.isHandler()) {
+                out.write(",\"failed\":");
+                out.write(Boolean.toString(span.isFailed()));
+            } else {
+                out.write(",\"events\":");
+                out.write(Integer.toString(span.getEvents()));
+                out.write(",\"unhandled\":");
+                out.write(Integer.toString(span.getUnhandled()));
+            }
+            out.write("}}");
+        }
+        // name threads, viewers show their ids otherwise
+        Set<Long> named = new HashSet<Long>();
+        for (Span span : recorded) {
+            if (named.add(span.getThreadId())) {
+                out.write(first ? "\n" : ",\n");
+                first = false;
+                out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":");
+                out.write(Long.toString(span.getThreadId()));
+                out.write(",\"args\":{\"name\":");
+                writeString(out, span.getThreadName());
+                out.write("}}");
+            }
+        }
+        out.write("\n]}\n");
+        return recorded.size();
+    }
+
+    private static String micros(long nanos) {
+        return nanos / 1000 + "." + String.format("%03d", nanos % 1000);
+    }
+
+    private static void writeString(Writer out, String s) throws IOException {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write(String.format("\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+
+    /**
+     * Ids and start times of spans in progress in a thread.
+     */
+    private static final class Stack {
+        long[] ids = new long[16];
+        long[] starts = new long[16];
+        int depth;
+
+        void push(long id, long start) {
+            if (depth == ids.length) {
+                ids = Arrays.copyOf(ids, depth * 2);
+                starts = Arrays.copyOf(starts, depth * 2);
+            }
+            ids[depth] = id;
+            starts[depth] = start;
+            depth++;
+        }
+    }
+
+    /**
+     * Dispatch of events of a class or invocation of a handler.
+     */
+    public static final class Span {
+        private final long id;
+        private final long parentId;
+        private final long threadId;
+        private final String threadName;
+        private final Object subject;
+        private final int events;
+        private final int unhandled;
+        private final boolean failed;
+        private final long startNanos;
+        private final long durationNanos;
+
+        Span(long id, long parentId, long threadId, String threadName, Object subject, int events, int unhandled, boolean failed, long startNanos, long durationNanos) {
+            this.id = id;
+            this.parentId = parentId;
+            this.threadId = threadId;
+            this.threadName = threadName;
+            this.subject = subject;
+            this.events = events;
+            this.unhandled = unhandled;
+            this.failed = failed;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return id of the span this one was started within, 0 if none
+         */
+        public long getParentId() {
+            return parentId;
+        }
+
+        public long getThreadId() {
+            return threadId;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+
+        public boolean isHandler() {
+            return subject instanceof HandlerMethodInfo;
+        }
+
+        /**
+         * @return invoked handler, null for dispatch span
+         */
+        public HandlerMethodInfo getHandler() {
+            return isHandler() ? (HandlerMethodInfo) subject : null;
+        }
+
+        /**
+         * @return class of dispatched events, null for handler span
+         */
+        public Class getEventClass() {
+            return isHandler() ? null : (Class) subject;
+        }
+
+        /**
+         * @return number of dispatched events
+         */
+        public int getEvents() {
+            return events;
+        }
+
+        /**
+         * @return number of dispatched events which were not passed to any listener
+         */
+        public int getUnhandled() {
+            return unhandled;
+        }
+
+        /**
+         * @return true if handler threw exception
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+
+        /**
+         * @return start time in nanoseconds since creation of the recorder
+         */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * @return short name of event class, or of listener class and handler method
+         */
+        public String getName() {
+            if (isHandler()) {
+                HandlerMethodInfo handler = (HandlerMethodInfo) subject;
+                return shortName(handler.getListenerClass()) + "." + handler.getMethod().getName();
+            }
+            String name = shortName((Class) subject);
+            return events == 1 ? name : name + " x" + events;
+        }
+
+        private static String shortName(Class c) {
+            String name = c.getName();
+            return name.substring(name.lastIndexOf('.') + 1);
+        }
+
+        @Override
+        public String toString() {
+            return "#" + id + (parentId == 0 ? "" : " <- #" + parentId) + " " + getName() + " " + durationNanos + " ns";
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.maxifier.guice.events;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps track of events which were not passed to any handler: counters per event class and a uniform random sample
+ * of events of the current sampling window (reservoir sampling), so that the cost doesn't depend on the rate of
+ * unhandled events. Events may also be passed to a {@link DeadLetterHandler}.
+ * <p>
+ * Counters are kept while their event classes are loaded. Sampled events are referenced strongly until they are
+ * replaced or their window ends, so the sample may keep a few events and their classes alive for a window.
+ * <p>
+ * Tracking is done even if {@link EventDispatcherMetrics metrics} are disabled.
+ */
+public class UnhandledEventTracker {
+    private static final Logger LOG = LoggerFactory.getLogger(UnhandledEventTracker.class);
+
+    public static final int DEFAULT_SAMPLE_SIZE = 32;
+    public static final long DEFAULT_WINDOW_MILLIS = 60000;
+
+    private final WeakClassMap<LongAdder> counts = new WeakClassMap<LongAdder>() {
+        @Override
+        LongAdder create() {
+            return new LongAdder();
+        }
+    };
+    private final int sampleSize;
+    private final long windowNanos;
+    private volatile Window window;
+    private volatile DeadLetterHandler deadLetterHandler;
+
+    public UnhandledEventTracker() {
+        this(DEFAULT_SAMPLE_SIZE, DEFAULT_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param sampleSize maximum number of sampled events
+     * @param window     sample is started anew after this period
+     */
+    public UnhandledEventTracker(int sampleSize, long window, TimeUnit unit) {
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("Sample size should be positive, but it is " + sampleSize);
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("Sampling window should be positive, but it is " + window);
+        }
+        this.sampleSize = sampleSize;
+        this.windowNanos = unit.toNanos(window);
+        this.window = new Window(System.nanoTime(), sampleSize);
+    }
+
+    public void setDeadLetterHandler(DeadLetterHandler deadLetterHandler) {
+        this.deadLetterHandler = deadLetterHandler;
+    }
+
+    public DeadLetterHandler getDeadLetterHandler() {
+        return deadLetterHandler;
+    }
+
+    void record(Object event) {
+        Class c = event.getClass();
+        counts.get(c).increment();
+
+        long now = System.nanoTime();
+        Window w = window;
+        if (now - w.start >= windowNanos) {
+            // concurrent events may be sampled into the old window, that's fine for a sample
+            w = new Window(now, sampleSize);
+            window = w;
+        }
+        w.offer(event);
+
+        DeadLetterHandler h = deadLetterHandler;
+        if (h != null) {
+            try {
+                h.deadLetter(event);
+            } catch (RuntimeException e) {
+                LOG.error("Dead letter handler failed on event of " + c, e);
+            }
+        }
+    }
+
+    /**
+     * @return number of unhandled events of each class, classes which were unloaded are omitted
+     */
+    public Map<Class, Long> getCounts() {
+        Map<Class, Long> res = new HashMap<Class, Long>();
+        for (Map.Entry<Class, LongAdder> entry : counts.snapshot().entrySet()) {
+            res.put(entry.getKey(), entry.getValue().sum());
+        }
+        return Collections.unmodifiableMap(res);
+    }
+
+    /**
+     * @return sample of unhandled events of the current window, in no particular order; the events are kept alive
+     * until they are replaced or the window ends
+     */
+    public List<Object> getSample() {
+        return window.getSample();
+    }
+
+    /**
+     * @return number of unhandled events seen in the current sampling window
+     */
+    public long getWindowCount() {
+        return window.seen.get();
+    }
+
+    /**
+     * Clears counters and sample.
+     */
+    public void reset() {
+        counts.clear();
+        window = new Window(System.nanoTime(), sampleSize);
+    }
+
+    private static final class Window {
+        final long start;
+        final AtomicLong seen = new AtomicLong();
+        final AtomicReferenceArray<Object> sample;
+
+        Window(long start, int size) {
+            this.start = start;
+            this.sample = new AtomicReferenceArray<Object>(size);
+        }
+
+        void offer(Object event) {
+            long n = seen.incrementAndGet();
+            if (n <= sample.length()) {
+                sample.set((int) (n - 1), event);
+            } else {
+                // Algorithm R: n-th event replaces a random one with probability size / n
+                long i = ThreadLocalRandom.current().nextLong(n);
+                if (i < sample.length()) {
+                    sample.set((int) i, event);
+                }
+            }
+        }
+
+        List<Object> getSample() {
+            List<Object> res = new ArrayList<Object>(sample.length());
+            for (int i = 0; i < sample.length(); i++) {
+                Object event = sample.get(i);
+                if (event != null) {
+                    res.add(event);
+                }
+            }
+            return res;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.maxifier.guice.events;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link EventDispatcher} which runs each invocation of handler annotated with {@code @Handler(async = true)} or
+ * {@code @Handler(executor = "name")} in its own virtual thread, so handlers may block on I/O without occupying
+ * a pool thread. Executor names are ignored. On JDK older than 21 invocations run in a cached pool of platform
+ * threads instead.
+ * <p>
+ * Concurrent invocations of a handler may be limited by {@link Handler#maxConcurrency()}, invocations over the limit
+ * are queued and started as running ones finish, so firing never blocks and waiting invocations occupy no threads.
+ * Unlike {@link AsyncEventDispatcher} there is no
+ * ordering of invocations, use {@link #fireEventAsync(Object)} to wait for handlers of an event.
+ * <p>
+ * Invocations scheduled after {@link #shutdown()} are dropped, see {@link #getDroppedInvocations()}.
+ */
+@Singleton
+public class VirtualThreadEventDispatcher extends EventDispatcherImpl {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadEventDispatcher.class);
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final HandlerExecutor unlimited;
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * Executors of handlers with limited concurrency. Handler methods are shared by subclasses of the declaring class,
+     * so are the limits.
+     */
+    private final ConcurrentMap<HandlerMethod<?>, HandlerExecutor> limited = new ConcurrentHashMap<HandlerMethod<?>, HandlerExecutor>();
+
+    @Inject
+    public VirtualThreadEventDispatcher(ListenerRegistrationQueue q) {
+        // Registration queue may contain listeners awaiting for dispatcher, they should not be registered before
+        // the executor is created, so we attach to the queue ourselves.
+        super(new ListenerRegistrationQueue(), true);
+        ExecutorService virtualExecutor = createVirtualExecutor();
+        virtual = virtualExecutor != null;
+        executor = virtual ? virtualExecutor : createPlatformExecutor();
+        unlimited = new Invoker(executor, dropped);
+        q.setDispatcher(this);
+    }
+
+    private static ExecutorService createVirtualExecutor() {
+        Method factory;
+        try {
+            factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            LOG.info("Virtual threads are not available, asynchronous handlers will run in platform threads");
+            return null;
+        }
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (Exception e) {
+            LOG.warn("Unable to create virtual thread executor, asynchronous handlers will run in platform threads", e);
+            return null;
+        }
+    }
+
+    private static ExecutorService createPlatformExecutor() {
+        final AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "EventDispatcher handler #" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    @Override
+    HandlerExecutor getHandlerExecutor(HandlerMethod<?> method) {
+        int limit = method.getMaxConcurrency();
+        if (limit == 0) {
+            return unlimited;
+        }
+        HandlerExecutor res = limited.get(method);
+        if (res == null) {
+            HandlerExecutor created = new LimitedInvoker(executor, dropped, limit);
+            res = limited.putIfAbsent(method, created);
+            if (res == null) {
+                res = created;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return true if handlers run in virtual threads, false if platform threads are used
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @return number of asynchronous invocations which were dropped instead of being performed
+     */
+    public long getDroppedInvocations() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops accepting new invocations, already scheduled ones are performed and new ones are dropped.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Blocks until all scheduled invocations have completed after {@link #shutdown()}.
+     *
+     * @return true if executor terminated, false if the timeout elapsed
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private static final class Invocation<T> implements Runnable {
+        private final HandlerMethodInstance<T> method;
+        private final T listener;
+        private final Object event;
+        private final Completion completion;
+
+        Invocation(HandlerMethodInstance<T> method, T listener, Object event, Completion completion) {
+            this.method = method;
+            this.listener = listener;
+            this.event = event;
+            this.completion = completion;
+        }
+
+        @Override
+        public void run() {
+            try {
+                method.invokeNow(listener, event);
+            } finally {
+                drop();
+            }
+        }
+
+        /**
+         * Called instead of {@link #run()} for invocation which can't be performed.
+         */
+        void drop() {
+            if (completion != null) {
+                completion.done();
+            }
+        }
+    }
+
+    private static final class Invoker implements HandlerExecutor {
+        private final ExecutorService executor;
+        private final AtomicLong dropped;
+
+        Invoker(ExecutorService executor, AtomicLong dropped) {
+            this.executor = executor;
+            this.dropped = dropped;
+        }
+
+        @Override
+        public <T> void execute(HandlerMethodInstance<T> method, T listener, Object event, Completion completion) {
+            Invocation<T> invocation = new Invocation<T>(method, listener, event, completion);
+            try {
+                executor.execute(invocation);
+            } catch (RejectedExecutionException e) {
+                // executor is shut down, the other handlers of the event should still be invoked
+                dropped.incrementAndGet();
+                invocation.drop();
+            }
+        }
+    }
+
+    /**
+     * Queues invocations of a handler, each of at most {@code limit} workers runs queued invocations one by one while
+     * holding a permit.
+     */
+    private static final class LimitedInvoker implements HandlerExecutor {
+        private final ExecutorService executor;
+        private final AtomicLong dropped;
+        private final Semaphore permits;
+        private final Queue<Invocation<?>> pending = new ConcurrentLinkedQueue<Invocation<?>>();
+
+        private final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                drain(true);
+            }
+        };
+
+        LimitedInvoker(ExecutorService executor, AtomicLong dropped, int limit) {
+            this.executor = executor;
+            this.dropped = dropped;
+            this.permits = new Semaphore(limit);
+        }
+
+        @Override
+        public <T> void execute(HandlerMethodInstance<T> method, T listener, Object event, Completion completion) {
+            pending.add(new Invocation<T>(method, listener, event, completion));
+            if (permits.tryAcquire()) {
+                try {
+                    executor.execute(worker);
+                } catch (RejectedExecutionException e) {
+                    // executor is shut down, nobody would run queued invocations
+                    drain(false);
+                }
+            }
+        }
+
+        /**
+         * Runs or drops queued invocations while holding a permit, releases it when the queue is empty.
+         */
+        private void drain(boolean run) {
+            while (true) {
+                Invocation<?> invocation = pending.poll();
+                if (invocation != null) {
+                    if (!run) {
+                        dropped.incrementAndGet();
+                        invocation.drop();
+                        continue;
+                    }
+                    try {
+                        invocation.run();
+                    } catch (Throwable e) {
+                        LOG.error("Asynchronous handler " + invocation.method + " failed", e);
+                    }
+                    continue;
+                }
+                permits.release();
+                // invocation queued meanwhile by a thread which didn't get a permit should not be left behind
+                if (pending.isEmpty() || !permits.tryAcquire()) {
+                    return;
+                }
+            }
+        }
+    }
+}
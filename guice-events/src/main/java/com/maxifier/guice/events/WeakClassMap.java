@@ -0,0 +1,55 @@
+package com.maxifier.guice.events;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Values per class which don't prevent classes from being unloaded. Lookup goes through a {@link ClassValue}, values
+ * are also kept in a weak map to be enumerated. Values should not refer to their classes.
+ */
+abstract class WeakClassMap<V> {
+    private final Map<Class, V> registry = new WeakHashMap<Class, V>();
+    private final ClassValue<V> values = new ClassValue<V>() {
+        @Override
+        protected V computeValue(Class<?> type) {
+            // value may be computed concurrently, the registered one wins
+            synchronized (registry) {
+                V v = registry.get(type);
+                if (v == null) {
+                    v = create();
+                    registry.put(type, v);
+                }
+                return v;
+            }
+        }
+    };
+
+    abstract V create();
+
+    V get(Class c) {
+        return values.get(c);
+    }
+
+    /**
+     * @return values of classes which are not unloaded yet
+     */
+    Map<Class, V> snapshot() {
+        synchronized (registry) {
+            return registry.isEmpty() ? Collections.<Class, V>emptyMap() : new HashMap<Class, V>(registry);
+        }
+    }
+
+    /**
+     * Drops all values, new ones are created on demand.
+     */
+    void clear() {
+        synchronized (registry) {
+            for (Class c : registry.keySet()) {
+                values.remove(c);
+            }
+            registry.clear();
+        }
+    }
+}
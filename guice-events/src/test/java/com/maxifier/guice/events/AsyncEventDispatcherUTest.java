@@ -0,0 +1,239 @@
+package com.maxifier.guice.events;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class AsyncEventDispatcherUTest {
+
+    @Test(timeOut = 60000)
+    public void testAsyncHandlerRunsInExecutor() throws Exception {
+        AsyncEventDispatcher d = new AsyncEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class), new AsyncExecutors());
+        try {
+            final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+            final CountDownLatch done = new CountDownLatch(2);
+            d.register(new Object() {
+                @Handler
+                public void sync(String s) {
+                    threads.add(Thread.currentThread());
+                    done.countDown();
+                }
+            });
+            d.register(new Object() {
+                @Handler(async = true)
+                public void async(String s) {
+                    threads.add(Thread.currentThread());
+                    done.countDown();
+                }
+            });
+            d.fireEvent("test");
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+
+            assertEquals(threads.size(), 2);
+            assertTrue(threads.contains(Thread.currentThread()));
+            assertNotSame(threads.get(0), threads.get(1));
+        } finally {
+            d.shutdown();
+        }
+    }
+
+    @Test(timeOut = 60000)
+    public void testListenerOrdering() throws Exception {
+        AsyncEventDispatcher d = new AsyncEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class),
+                new AsyncExecutors().withDefault(4, 16, BackpressurePolicy.BLOCK));
+        try {
+            final int events = 1000;
+            final CountDownLatch done = new CountDownLatch(events * 2);
+            class OrderedListener {
+                final List<Integer> received = new ArrayList<Integer>();
+
+                @Handler(async = true)
+                public void handle(Integer i) {
+                    received.add(i);
+                    done.countDown();
+                }
+            }
+            OrderedListener l1 = new OrderedListener();
+            OrderedListener l2 = new OrderedListener();
+            d.register(l1);
+            d.register(l2);
+            for (int i = 0; i < events; i++) {
+                d.fireEvent(i);
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+
+            for (int i = 0; i < events; i++) {
+                assertEquals(l1.received.get(i).intValue(), i);
+                assertEquals(l2.received.get(i).intValue(), i);
+            }
+        } finally {
+            d.shutdown();
+        }
+    }
+
+    @Test(timeOut = 60000)
+    public void testDropOldest() throws Exception {
+        AsyncEventDispatcher d = new AsyncEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class),
+                new AsyncExecutors().with("slow", 1, 1, BackpressurePolicy.DROP_OLDEST));
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+            d.register(new Object() {
+                @Handler(executor = "slow")
+                public void handle(Integer i) {
+                    started.countDown();
+                    await(release);
+                    received.add(i);
+                }
+            });
+            d.fireEvent(0);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // the lane is busy with 0 and has room for one more invocation
+            for (int i = 1; i <= 5; i++) {
+                d.fireEvent(i);
+            }
+            release.countDown();
+            d.shutdown();
+            assertTrue(d.awaitTermination(10, TimeUnit.SECONDS));
+
+            assertEquals(received, Arrays.asList(0, 5));
+            assertEquals(d.getDroppedInvocations(), 4);
+        } finally {
+            d.shutdown();
+        }
+    }
+
+    @Test(timeOut = 60000)
+    public void testCallerRuns() throws Exception {
+        AsyncEventDispatcher d = new AsyncEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class),
+                new AsyncExecutors().withDefault(1, 1, BackpressurePolicy.CALLER_RUNS));
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+            d.register(new Object() {
+                @Handler(async = true)
+                public void handle(Integer i) {
+                    if (i == 0) {
+                        started.countDown();
+                        await(release);
+                    }
+                    threads.add(Thread.currentThread());
+                }
+            });
+            d.fireEvent(0);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            d.fireEvent(1);
+            d.fireEvent(2);
+            assertEquals(threads.size(), 1);
+            assertSame(threads.get(0), Thread.currentThread());
+            release.countDown();
+        } finally {
+            d.shutdown();
+        }
+    }
+
+    @Test(timeOut = 60000)
+    public void testBlockInOwnLaneDoesNotDeadlock() throws Exception {
+        final AsyncEventDispatcher d = new AsyncEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class),
+                new AsyncExecutors().withDefault(1, 1, BackpressurePolicy.BLOCK));
+        try {
+            final CountDownLatch done = new CountDownLatch(4);
+            d.register(new Object() {
+                @Handler(async = true)
+                public void handle(Integer i) {
+                    if (i == 0) {
+                        // the queue holds only one of them
+                        for (int j = 1; j <= 3; j++) {
+                            d.fireEvent(j);
+                        }
+                    }
+                    done.countDown();
+                }
+            });
+            d.fireEvent(0);
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(d.getDroppedInvocations(), 0);
+        } finally {
+            d.shutdown();
+        }
+    }
+
+    @Test(timeOut = 60000)
+    public void testInvocationsAfterShutdownAreDropped() throws Exception {
+        for (BackpressurePolicy policy : BackpressurePolicy.values()) {
+            AsyncEventDispatcher d = new AsyncEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class),
+                    new AsyncExecutors().withDefault(1, 1, policy));
+            final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+            d.register(new Object() {
+                @Handler(async = true)
+                public void handle(Integer i) {
+                    received.add(i);
+                }
+            });
+            d.shutdown();
+            d.fireEventAsync(1).get(10, TimeUnit.SECONDS);
+            d.fireEvent(2);
+            assertEquals(d.getDroppedInvocations(), 2, policy.toString());
+            assertTrue(received.isEmpty(), policy.toString());
+        }
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void testUnknownExecutor() {
+        AsyncEventDispatcher d = new AsyncEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class), new AsyncExecutors());
+        try {
+            d.register(new Object() {
+                @Handler(executor = "unknown")
+                public void handle(String s) {
+                }
+            });
+        } finally {
+            d.shutdown();
+        }
+    }
+
+    @Test
+    public void testSyncDispatcherRunsAsyncHandlersInPlace() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        final List<Thread> threads = new ArrayList<Thread>();
+        d.register(new Object() {
+            @Handler(executor = "any")
+            public void handle(String s) {
+                threads.add(Thread.currentThread());
+            }
+        });
+        d.fireEvent("test");
+        assertEquals(threads, Collections.singletonList(Thread.currentThread()));
+    }
+
+    @Test
+    public void testModule() {
+        Injector inj = Guice.createInjector(EventDispatcherModule.async(new AsyncExecutors()));
+        EventDispatcher d = inj.getInstance(EventDispatcher.class);
+        assertTrue(d instanceof AsyncEventDispatcher);
+        ((AsyncEventDispatcher) d).shutdown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
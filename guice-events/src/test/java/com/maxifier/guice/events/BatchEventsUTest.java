@@ -0,0 +1,103 @@
+package com.maxifier.guice.events;
+
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+public class BatchEventsUTest {
+
+    static class BatchListener {
+        final List<List<String>> strings = new ArrayList<List<String>>();
+        final List<List<Animal>> dangerous = new ArrayList<List<Animal>>();
+        final List<Object> singles = new ArrayList<Object>();
+
+        @Handler(batch = true)
+        void strings(List<String> s) {
+            strings.add(new ArrayList<String>(s));
+        }
+
+        @Handler(batch = true)
+        @AnimalHandler({Animal.CROCODILE, Animal.TIGER})
+        void dangerous(List<? extends Animal> animals) {
+            dangerous.add(new ArrayList<Animal>(animals));
+        }
+
+        @Handler
+        void single(Animal animal) {
+            singles.add(animal);
+        }
+    }
+
+    static class UnhandledTracker extends EventDispatcherImpl {
+        final List<Object> unhandled = new ArrayList<Object>();
+
+        UnhandledTracker() {
+            super(Mockito.mock(ListenerRegistrationQueue.class));
+        }
+
+        @Override
+        protected void unhandledEvent(Object event) {
+            unhandled.add(event);
+        }
+    }
+
+    @Test
+    public void testFireEvents() {
+        UnhandledTracker d = new UnhandledTracker();
+        BatchListener l = new BatchListener();
+        d.register(l);
+
+        d.fireEvents(Arrays.asList("a", Animal.CAT, "b", Animal.TIGER, 1, Animal.CROCODILE, "c"));
+
+        assertEquals(l.strings, Collections.singletonList(Arrays.asList("a", "b", "c")));
+        assertEquals(l.dangerous, Collections.singletonList(Arrays.asList(Animal.TIGER, Animal.CROCODILE)));
+        assertEquals(l.singles, Arrays.<Object>asList(Animal.CAT, Animal.TIGER, Animal.CROCODILE));
+        assertEquals(d.unhandled, Collections.<Object>singletonList(1));
+    }
+
+    @Test
+    public void testBatchHandlerReceivesSingleEvent() {
+        UnhandledTracker d = new UnhandledTracker();
+        BatchListener l = new BatchListener();
+        d.register(l);
+
+        d.fireEvent("a");
+        d.fireEvent(Animal.RABBIT);
+
+        assertEquals(l.strings, Collections.singletonList(Collections.singletonList("a")));
+        assertEquals(l.dangerous, Collections.emptyList());
+        assertEquals(l.singles, Collections.<Object>singletonList(Animal.RABBIT));
+        assertEquals(d.unhandled, Collections.emptyList());
+    }
+
+    @Test
+    public void testNotMatchedEventsAreUnhandled() {
+        UnhandledTracker d = new UnhandledTracker();
+        d.register(new Object() {
+            @Handler(batch = true)
+            @AnimalHandler(Animal.DOG)
+            void dogs(List<Animal> dogs) {
+            }
+        });
+
+        d.fireEvents(Arrays.asList(Animal.CAT, Animal.DOG, Animal.TIGER));
+
+        assertEquals(d.unhandled, Arrays.<Object>asList(Animal.CAT, Animal.TIGER));
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void testInvalidBatchHandler() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        d.register(new Object() {
+            @Handler(batch = true)
+            void strings(String s) {
+            }
+        });
+    }
+}
@@ -81,4 +81,39 @@ public class ClassgenHandlerInvocatorUTest {
         Mockito.verify(test).returnIt("test");
         Mockito.verifyNoMoreInteractions(test);
     }
+
+    @Test
+    public void testNestedInvocation() throws Exception {
+        final HandlerInvocator<String, TestInvoker> inv = new ClassgenHandlerInvocator<String, TestInvoker>(TestInvoker.class.getMethod("returnIt", String.class));
+
+        TestInvoker test = new TestInvoker() {
+            @Override
+            public void doIt(String s) {
+            }
+
+            @Override
+            public void doIt() {
+            }
+
+            @Override
+            public String returnIt() {
+                return null;
+            }
+
+            @Override
+            public String returnIt(String s) {
+                if (s.length() < 3) {
+                    try {
+                        // overwrites argument of the outer invocation
+                        return inv.invoke(this, s + "x") + s;
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return s;
+            }
+        };
+
+        assertEquals(inv.invoke(test, "a"), "axxaxa");
+    }
 }
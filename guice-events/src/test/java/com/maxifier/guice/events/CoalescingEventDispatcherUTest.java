@@ -0,0 +1,181 @@
+package com.maxifier.guice.events;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class CoalescingEventDispatcherUTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Coalesce(key = "symbol")
+    static class Price {
+        private final String symbol;
+        private final int value;
+
+        Price(String symbol, int value) {
+            this.symbol = symbol;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return symbol + "=" + value;
+        }
+    }
+
+    @Coalesce(key = "getState")
+    static class Status {
+        private final String state;
+
+        Status(String state) {
+            this.state = state;
+        }
+
+        String getState() {
+            return state;
+        }
+    }
+
+    @Coalesce
+    static class Heartbeat {
+    }
+
+    @Coalesce(key = "missing")
+    static class InvalidKey {
+    }
+
+    static class Recorder {
+        final List<Object> received = Collections.synchronizedList(new ArrayList<Object>());
+
+        @Handler
+        void price(Price p) {
+            received.add(p.toString());
+        }
+
+        @Handler
+        void heartbeat(Heartbeat h) {
+            received.add("heartbeat");
+        }
+
+        @Handler
+        void status(Status s) {
+            received.add(s.getState());
+        }
+
+        @Handler
+        void string(String s) {
+            received.add(s);
+        }
+    }
+
+    @Test
+    public void testLatestValueWins() {
+        CoalescingEventDispatcher d = new CoalescingEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class), HOUR);
+        try {
+            Recorder r = new Recorder();
+            d.register(r, Strength.STRONG);
+
+            d.fireEvent(new Price("A", 1));
+            d.fireEvent(new Price("B", 1));
+            d.fireEvent("immediate");
+            d.fireEvent(new Price("A", 2));
+            d.fireEvents(Arrays.asList(new Price("A", 3), new Heartbeat(), new Heartbeat(), new Status("up")));
+            assertEquals(r.received, Collections.<Object>singletonList("immediate"));
+
+            d.flush();
+            assertEquals(r.received, Arrays.<Object>asList("immediate", "A=3", "B=1", "heartbeat", "up"));
+            assertEquals(d.getCoalescedEvents(), 3);
+        } finally {
+            d.shutdown();
+        }
+    }
+
+    @Test(timeOut = 60000)
+    public void testTick() throws Exception {
+        CoalescingEventDispatcher d = new CoalescingEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class), 10);
+        try {
+            final CountDownLatch delivered = new CountDownLatch(1);
+            final List<Thread> threads = new ArrayList<Thread>();
+            d.register(new Object() {
+                @Handler
+                void price(Price p) {
+                    threads.add(Thread.currentThread());
+                    delivered.countDown();
+                }
+            }, Strength.STRONG);
+
+            for (int i = 0; i < 100; i++) {
+                d.fireEvent(new Price("A", i));
+            }
+            assertTrue(delivered.await(10, TimeUnit.SECONDS));
+            assertFalse(threads.contains(Thread.currentThread()));
+        } finally {
+            d.shutdown();
+        }
+    }
+
+    @Test(timeOut = 60000)
+    public void testFireEventAsync() throws Exception {
+        CoalescingEventDispatcher d = new CoalescingEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class), HOUR);
+        try {
+            Recorder r = new Recorder();
+            d.register(r, Strength.STRONG);
+
+            CompletableFuture<Void> f1 = d.fireEventAsync(new Price("A", 1));
+            CompletableFuture<Void> f2 = d.fireEventAsync(new Price("A", 2));
+            assertFalse(f1.isDone());
+            assertFalse(f2.isDone());
+
+            d.flush();
+            f1.get(10, TimeUnit.SECONDS);
+            f2.get(10, TimeUnit.SECONDS);
+            assertEquals(r.received, Collections.<Object>singletonList("A=2"));
+        } finally {
+            d.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdownDeliversPending() {
+        CoalescingEventDispatcher d = new CoalescingEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class), HOUR);
+        Recorder r = new Recorder();
+        d.register(r, Strength.STRONG);
+        d.fireEvent(new Heartbeat());
+        d.shutdown();
+        assertEquals(r.received, Collections.<Object>singletonList("heartbeat"));
+
+        d.fireEvent(new Heartbeat());
+        assertEquals(r.received, Arrays.<Object>asList("heartbeat", "heartbeat"));
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void testInvalidKey() {
+        CoalescingEventDispatcher d = new CoalescingEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class), HOUR);
+        try {
+            d.fireEvent(new InvalidKey());
+        } finally {
+            d.shutdown();
+        }
+    }
+
+    @Test
+    public void testModule() {
+        Injector inj = Guice.createInjector(EventDispatcherModule.coalescing(100, TimeUnit.MILLISECONDS));
+        EventDispatcher d = inj.getInstance(EventDispatcher.class);
+        assertTrue(d instanceof CoalescingEventDispatcher);
+        ((CoalescingEventDispatcher) d).shutdown();
+    }
+}
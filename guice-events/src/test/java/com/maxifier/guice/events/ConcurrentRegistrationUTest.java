@@ -0,0 +1,120 @@
+package com.maxifier.guice.events;
+
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ConcurrentRegistrationUTest {
+    static class Recorder {
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+
+        @Handler
+        void test(String s) {
+            received.add(s);
+        }
+    }
+
+    @Test(timeOut = 60000)
+    public void testRegistrationIsNotDelayedByFiringInOtherThread() throws Exception {
+        final EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        d.register(new Object() {
+            @Handler
+            void block(Integer i) {
+                entered.countDown();
+                await(release);
+            }
+        }, Strength.STRONG);
+        Thread firing = new Thread() {
+            @Override
+            public void run() {
+                d.fireEvent(1);
+            }
+        };
+        firing.start();
+        try {
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+            Recorder r = new Recorder();
+            d.register(r, Strength.STRONG);
+            d.fireEvent("1");
+            assertEquals(r.received, Collections.singletonList("1"));
+            assertEquals(d.getMetrics().getPendingRegistrations(), 0);
+        } finally {
+            release.countDown();
+            firing.join();
+        }
+    }
+
+    @Test
+    public void testPendingRegistrations() {
+        final EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        final Recorder r = new Recorder();
+        final List<Integer> pending = new ArrayList<Integer>();
+        d.register(new Object() {
+            @Handler
+            void test(Integer i) {
+                d.register(r, Strength.STRONG);
+                pending.add(d.getMetrics().getPendingRegistrations());
+                d.fireEvent("nested");
+            }
+        }, Strength.STRONG);
+
+        d.fireEvent(1);
+        assertEquals(pending, Collections.singletonList(1));
+        assertEquals(d.getMetrics().getPendingRegistrations(), 0);
+        assertEquals(r.received, Collections.emptyList());
+
+        d.fireEvent("1");
+        assertEquals(r.received, Collections.singletonList("1"));
+    }
+
+    @Test(timeOut = 60000)
+    public void testUnregisterPendingFromOtherThread() throws Exception {
+        final EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        final Recorder r = new Recorder();
+        final CountDownLatch registered = new CountDownLatch(1);
+        final CountDownLatch unregistered = new CountDownLatch(1);
+        d.register(new Object() {
+            @Handler
+            void test(Integer i) {
+                d.register(r, Strength.STRONG);
+                registered.countDown();
+                await(unregistered);
+            }
+        }, Strength.STRONG);
+        Thread firing = new Thread() {
+            @Override
+            public void run() {
+                d.fireEvent(1);
+            }
+        };
+        firing.start();
+        assertTrue(registered.await(10, TimeUnit.SECONDS));
+        assertEquals(d.getMetrics().getPendingRegistrations(), 1);
+        d.unregister(r);
+        assertEquals(d.getMetrics().getPendingRegistrations(), 0);
+        unregistered.countDown();
+        firing.join();
+
+        d.fireEvent("1");
+        assertEquals(r.received, Collections.emptyList());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
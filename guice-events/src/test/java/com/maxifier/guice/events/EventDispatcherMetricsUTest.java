@@ -0,0 +1,189 @@
+package com.maxifier.guice.events;
+
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+public class EventDispatcherMetricsUTest {
+    static class Listener {
+        @Handler
+        void string(String s) {
+            if (s.equals("fail")) {
+                throw new IllegalStateException(s);
+            }
+        }
+
+        @Handler
+        @AnimalHandler(Animal.CAT)
+        void cat(Animal a) {
+        }
+    }
+
+    static class RecordingSink implements EventMetricsSink {
+        final List<Object> handled = Collections.synchronizedList(new ArrayList<Object>());
+        final List<Throwable> exceptions = Collections.synchronizedList(new ArrayList<Throwable>());
+        final List<Class> dispatched = Collections.synchronizedList(new ArrayList<Class>());
+
+        @Override
+        public void handlerInvoked(HandlerMethodInfo handler, Object event, long nanos, Throwable exception) {
+            handled.add(event);
+            if (exception != null) {
+                exceptions.add(exception);
+            }
+        }
+
+        @Override
+        public void eventsDispatched(Class eventClass, int events, int unhandled, long nanos) {
+            dispatched.add(eventClass);
+        }
+    }
+
+    private static HandlerMethodInfo handler(EventDispatcher d, String name) {
+        for (HandlerMethodInfo info : d.getHandlersByListenerClass().get(Listener.class)) {
+            if (info.getMethod().getName().equals(name)) {
+                return info;
+            }
+        }
+        throw new AssertionError(name);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        Listener l = new Listener();
+        d.register(l);
+        RecordingSink sink = new RecordingSink();
+        d.getMetrics().addSink(sink);
+
+        d.fireEvent("test");
+        d.fireEvent(1);
+
+        // counters are always on
+        assertEquals(handler(d, "string").getMethodInvocations(), 1);
+        assertEquals(handler(d, "string").getMatcherInvocations(), 1);
+        assertEquals(handler(d, "string").getLatency().getCount(), 0);
+        assertEquals(d.getMetrics().getUnhandledEvents(), 0);
+        assertTrue(d.getMetrics().getEventClassMetrics().isEmpty());
+        assertTrue(sink.handled.isEmpty());
+    }
+
+    @Test
+    public void testMetrics() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        Listener l = new Listener();
+        d.register(l);
+        RecordingSink sink = new RecordingSink();
+        d.getMetrics().addSink(sink);
+        d.getMetrics().setEnabled(true);
+        d.getMetrics().setLatencySampling(1);
+
+        d.fireEvent("test");
+        d.fireEvent("fail");
+        d.fireEvent(Animal.CAT);
+        d.fireEvent(Animal.DOG);
+        d.fireEvents(Arrays.asList(Animal.CAT, Animal.TIGER, 1));
+
+        HandlerMethodInfo string = handler(d, "string");
+        assertEquals(string.getMethodInvocations(), 2);
+        assertEquals(string.getExceptions(), 1);
+        assertEquals(string.getLatency().getCount(), 2);
+        assertTrue(string.getLatency().getPercentileNanos(1) >= string.getLatency().getPercentileNanos(0.5));
+
+        HandlerMethodInfo cat = handler(d, "cat");
+        assertEquals(cat.getMatcherInvocations(), 4);
+        assertEquals(cat.getMethodInvocations(), 2);
+
+        EventDispatcherMetrics metrics = d.getMetrics();
+        assertEquals(metrics.getHandlerExceptions(), 1);
+        assertEquals(metrics.getUnhandledEvents(), 3);
+        Map<Class, EventClassMetrics> classes = metrics.getEventClassMetrics();
+        assertEquals(classes.get(String.class).getFired(), 2);
+        assertEquals(classes.get(Animal.class).getFired(), 4);
+        assertEquals(classes.get(Animal.class).getUnhandled(), 2);
+        assertEquals(classes.get(Animal.class).getLatency().getCount(), 3);
+        assertEquals(classes.get(Integer.class).getUnhandled(), 1);
+
+        assertEquals(sink.handled, Arrays.<Object>asList("test", "fail", Animal.CAT, Animal.CAT));
+        assertEquals(sink.exceptions.size(), 1);
+        assertEquals(sink.dispatched, Arrays.<Class>asList(String.class, String.class, Animal.class, Animal.class, Animal.class, Integer.class));
+    }
+
+    @Test
+    public void testControl() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        EventDispatcherControl control = new EventDispatcherControl(d);
+        Listener l = new Listener();
+        d.register(l);
+        control.setMetricsEnabled(true);
+        assertTrue(d.getMetrics().isEnabled());
+
+        d.fireEvent("fail");
+        d.fireEvent(1);
+
+        assertEquals(control.getHandlerExceptions(), 1);
+        assertEquals(control.getUnhandledEvents(), 1);
+
+        TabularData handlers = control.getHandlerMetrics();
+        assertEquals(handlers.size(), 2);
+        CompositeData row = handlers.get(new Object[]{Listener.class.getName() + "#string(String)"});
+        assertNotNull(row);
+        assertEquals(row.get("methodInvocations"), 1L);
+        assertEquals(row.get("exceptions"), 1L);
+
+        TabularData classes = control.getEventClassMetrics();
+        assertEquals(classes.get(new Object[]{Integer.class.getName()}).get("unhandled"), 1L);
+        assertEquals(classes.get(new Object[]{String.class.getName()}).get("fired"), 1L);
+    }
+
+    @Test
+    public void testLatencySampling() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        Listener l = new Listener();
+        d.register(l);
+        d.getMetrics().setEnabled(true);
+        assertEquals(d.getMetrics().getLatencySampling(), EventDispatcherMetrics.DEFAULT_LATENCY_SAMPLING);
+        d.getMetrics().setLatencySampling(4);
+
+        for (int i = 0; i < 10000; i++) {
+            d.fireEvent("test");
+        }
+        HandlerMethodInfo string = handler(d, "string");
+        assertEquals(string.getMethodInvocations(), 10000);
+        long sampled = string.getLatency().getCount();
+        assertTrue(sampled > 1000 && sampled < 5000, "Sampled " + sampled);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidLatencySampling() {
+        new EventDispatcherMetrics().setLatencySampling(3);
+    }
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(h.getPercentileNanos(0.5), 0);
+        for (int i = 0; i < 98; i++) {
+            h.record(100);
+        }
+        h.record(5000);
+        h.record(1000000);
+
+        assertEquals(h.getCount(), 100);
+        assertEquals(h.getTotalNanos(), 98 * 100 + 5000 + 1000000);
+        assertEquals(h.getPercentileNanos(0.5), 127);
+        assertEquals(h.getPercentileNanos(0.99), 8191);
+        assertEquals(h.getPercentileNanos(1), (1L << 20) - 1);
+        assertEquals(h.getBucket(6), 98);
+    }
+}
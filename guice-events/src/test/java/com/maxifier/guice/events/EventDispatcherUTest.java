@@ -6,6 +6,11 @@ import org.testng.annotations.Test;
 
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.testng.Assert.assertEquals;
@@ -275,6 +280,59 @@ public class EventDispatcherUTest {
         assertEquals(v.get(), 3);
     }
 
+    /**
+     * Implements only methods of the first version of {@link EventDispatcher}, like dispatchers written by users.
+     */
+    static class MinimalDispatcher implements EventDispatcher {
+        final List<Object> fired = new ArrayList<Object>();
+
+        @Override
+        public void fireEvent(Object event) {
+            fired.add(event);
+        }
+
+        @Override
+        public <T> void register(T o) {
+        }
+
+        @Override
+        public Map<Class, List<? extends HandlerMethodInfo>> getHandlersByEventClass() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Map<Class, List<? extends HandlerMethodInfo>> getHandlersByListenerClass() {
+            return Collections.emptyMap();
+        }
+    }
+
+    @Test
+    public void testDefaultMethods() {
+        MinimalDispatcher d = new MinimalDispatcher();
+        d.fireEvents(Arrays.asList("a", "b"));
+        assertEquals(d.fired, Arrays.asList("a", "b"));
+        assertTrue(d.fireEventAsync("c").isDone());
+        assertEquals(d.fired, Arrays.asList("a", "b", "c"));
+        try {
+            d.register(new Object(), Strength.STRONG);
+            fail("Registered with strength");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            d.unregister(new Object());
+            fail("Unregistered");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            d.getMetrics();
+            fail("Provided metrics");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
     private void sleepABit() {
         try {
             Thread.sleep(100 + (int) (Math.random() * 10));
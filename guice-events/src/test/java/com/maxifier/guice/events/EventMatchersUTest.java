@@ -0,0 +1,73 @@
+package com.maxifier.guice.events;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class EventMatchersUTest {
+    enum Color {
+        RED, GREEN, BLUE
+    }
+
+    private static List<Object> matched(EventMatcher matcher, Object... events) {
+        List<Object> res = new ArrayList<Object>();
+        for (Object event : events) {
+            //noinspection unchecked
+            if (matcher.matches(event)) {
+                res.add(event);
+            }
+        }
+        return res;
+    }
+
+    @Test
+    public void testEmptyEnumMatchersAreDropped() {
+        assertNull(EventMatchers.compile(Collections.<EventMatcher>emptyList()));
+        assertNull(EventMatchers.compile(Arrays.<EventMatcher>asList(new EnumMatcher<Animal>(new Animal[0]), new EnumMatcher<Color>(new Color[0]))));
+    }
+
+    @Test
+    public void testEnumMatchersAreIntersected() {
+        EventMatcher m = EventMatchers.compile(Arrays.<EventMatcher>asList(
+                new EnumMatcher<Animal>(new Animal[]{Animal.CAT, Animal.DOG, Animal.TIGER}),
+                new EnumMatcher<Animal>(new Animal[0]),
+                new EnumMatcher<Animal>(new Animal[]{Animal.TIGER, Animal.CAT, Animal.RABBIT})));
+        assertTrue(m instanceof EventMatchers.EnumMaskMatcher);
+        assertEquals(matched(m, (Object[]) Animal.values()), Arrays.<Object>asList(Animal.CAT, Animal.TIGER));
+        assertEquals(matched(m, Color.RED, "CAT", 1), Collections.emptyList());
+    }
+
+    @Test
+    public void testCustomMatchersAreKept() {
+        final List<Object> checked = new ArrayList<Object>();
+        EventMatcher<Animal> custom = new EnumMatcher<Animal>(new Animal[]{Animal.CAT, Animal.DOG}) {
+            @Override
+            public boolean matches(Animal event) {
+                checked.add(event);
+                return super.matches(event);
+            }
+        };
+        EventMatcher m = EventMatchers.compile(Arrays.<EventMatcher>asList(custom, new EnumMatcher<Animal>(new Animal[]{Animal.DOG, Animal.TIGER})));
+        assertTrue(m instanceof EventMatchers.AllOf);
+        assertEquals(matched(m, (Object[]) Animal.values()), Collections.<Object>singletonList(Animal.DOG));
+        // folded enum matcher is checked first
+        assertEquals(checked, Arrays.<Object>asList(Animal.DOG, Animal.TIGER));
+    }
+
+    @Test
+    public void testDifferentEnumsNeverMatch() {
+        EventMatcher m = EventMatchers.compile(Arrays.<EventMatcher>asList(
+                new EnumMatcher<Animal>(new Animal[]{Animal.CAT}),
+                new EnumMatcher<Color>(new Color[]{Color.RED})));
+        assertFalse(m.matches(Animal.CAT));
+        assertFalse(m.matches(Color.RED));
+    }
+}
@@ -0,0 +1,76 @@
+package com.maxifier.guice.events;
+
+import org.mockito.Mockito;
+import org.testng.SkipException;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Checks that firing event of already seen class doesn't allocate. See {@code AllocationBenchmark} for
+ * the benchmark version.
+ */
+public class FireEventAllocationUTest {
+    private static final int ITERATIONS = 100000;
+
+    public static class Event {
+    }
+
+    public static class Listener {
+        int count;
+
+        @Handler
+        public void handle(Event e) {
+            count++;
+        }
+
+        @Handler
+        @HandleClass(Event.class)
+        void noArg() {
+            count++;
+        }
+    }
+
+    @DataProvider
+    public Object[][] dispatchers() {
+        return new Object[][]{
+                {new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class)), false},
+                {new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class)), true},
+                {new LockFreeEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class)), false},
+        };
+    }
+
+    @Test(dataProvider = "dispatchers")
+    public void testFireEventDoesNotAllocate(EventDispatcher d, boolean metrics) {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            throw new SkipException("Thread allocation counter is not supported");
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long thread = Thread.currentThread().getId();
+
+        d.getMetrics().setEnabled(metrics);
+        Listener[] listeners = new Listener[10];
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i] = new Listener();
+            d.register(listeners[i], Strength.STRONG);
+        }
+        Event event = new Event();
+        for (int i = 0; i < ITERATIONS; i++) {
+            d.fireEvent(event);
+        }
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; i++) {
+            d.fireEvent(event);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        // allow for allocations made by the counter itself, but not for a single byte per event
+        assertTrue(allocated < ITERATIONS, "Allocated " + allocated + " bytes for " + ITERATIONS + " events");
+        assertTrue(listeners[0].count == 4 * ITERATIONS);
+    }
+}
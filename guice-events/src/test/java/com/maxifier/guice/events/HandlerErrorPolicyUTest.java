@@ -0,0 +1,146 @@
+package com.maxifier.guice.events;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class HandlerErrorPolicyUTest {
+    static class Failing {
+        int invocations;
+
+        @Handler
+        void fail(String s) {
+            invocations++;
+            throw new IllegalStateException(s);
+        }
+    }
+
+    static class RecordingPolicy implements HandlerErrorPolicy {
+        final List<Object> failed = new ArrayList<Object>();
+        final List<Object> unhandled = new ArrayList<Object>();
+
+        @Override
+        public void handlerFailed(HandlerMethodInfo handler, Object event, Throwable exception) {
+            failed.add(event);
+        }
+
+        @Override
+        public void eventUnhandled(Object event) {
+            unhandled.add(event);
+        }
+    }
+
+    private static EventDispatcherImpl dispatcher() {
+        return new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+    }
+
+    @Test
+    public void testRateLimit() {
+        EventDispatcherImpl d = dispatcher();
+        DefaultHandlerErrorPolicy policy = new DefaultHandlerErrorPolicy(1, TimeUnit.HOURS, 10);
+        d.getMetrics().setErrorPolicy(policy);
+        Failing f = new Failing();
+        d.register(f, Strength.STRONG);
+        for (int i = 0; i < 1000; i++) {
+            d.fireEvent("e" + i);
+            d.fireEvent(i);
+        }
+        assertEquals(f.invocations, 1000);
+        assertEquals(policy.getHandlerFailures(), 1000);
+        assertEquals(policy.getUnhandledEvents(), 1000);
+        // one message for the handler and one for Integer events
+        assertEquals(policy.getSuppressedLogs(), 1998);
+
+        List<DefaultHandlerErrorPolicy.HandlerError> recent = policy.getRecentErrors();
+        assertEquals(recent.size(), 10);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(recent.get(i).getException().getMessage(), "e" + (990 + i));
+            assertEquals(recent.get(i).getEventClass(), String.class);
+            assertEquals(recent.get(i).getHandler().getListenerClass(), Failing.class);
+        }
+    }
+
+    @Test
+    public void testNoRateLimit() {
+        DefaultHandlerErrorPolicy policy = new DefaultHandlerErrorPolicy(0, TimeUnit.SECONDS, 10);
+        for (int i = 0; i < 5; i++) {
+            policy.eventUnhandled(i);
+        }
+        assertEquals(policy.getUnhandledEvents(), 5);
+        assertEquals(policy.getSuppressedLogs(), 0);
+        assertTrue(policy.getRecentErrors().isEmpty());
+    }
+
+    @Test
+    public void testCustomPolicy() {
+        EventDispatcherImpl d = dispatcher();
+        RecordingPolicy policy = new RecordingPolicy();
+        d.getMetrics().setErrorPolicy(policy);
+        d.register(new Failing(), Strength.STRONG);
+        d.fireEvent("a");
+        d.fireEvent(1);
+        assertEquals(policy.failed, Collections.<Object>singletonList("a"));
+        assertEquals(policy.unhandled, Collections.<Object>singletonList(1));
+    }
+
+    @Test
+    public void testFailingPolicyDoesNotBreakDispatch() {
+        EventDispatcherImpl d = dispatcher();
+        d.getMetrics().setErrorPolicy(new RecordingPolicy() {
+            @Override
+            public void handlerFailed(HandlerMethodInfo handler, Object event, Throwable exception) {
+                throw new RuntimeException("policy");
+            }
+        });
+        Failing f1 = new Failing();
+        Failing f2 = new Failing();
+        d.register(f1, Strength.STRONG);
+        d.register(f2, Strength.STRONG);
+        d.fireEvent("a");
+        assertEquals(f1.invocations, 1);
+        assertEquals(f2.invocations, 1);
+    }
+
+    @Test
+    public void testBoundPolicy() {
+        final RecordingPolicy policy = new RecordingPolicy();
+        Injector inj = Guice.createInjector(EventDispatcherModule.sharded(2), new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(HandlerErrorPolicy.class).toInstance(policy);
+            }
+        });
+        EventDispatcher d = inj.getInstance(EventDispatcher.class);
+        assertSame(d.getMetrics().getErrorPolicy(), policy);
+        d.fireEvent(1);
+        assertEquals(policy.unhandled, Collections.<Object>singletonList(1));
+    }
+
+    @Test
+    public void testControl() {
+        EventDispatcherImpl d = dispatcher();
+        EventDispatcherControl control = new EventDispatcherControl(d);
+        d.register(new Failing(), Strength.STRONG);
+        d.fireEvent("a");
+        d.fireEvent("b");
+        assertEquals(control.getSuppressedErrorLogs(), 1);
+        String errors = control.showRecentErrors();
+        assertEquals(errors.split("\n").length, 2);
+        assertTrue(errors.contains("java.lang.IllegalStateException: b"), errors);
+
+        d.getMetrics().setErrorPolicy(new RecordingPolicy());
+        assertEquals(control.getSuppressedErrorLogs(), -1);
+        assertEquals(control.showRecentErrors(), "");
+    }
+}
@@ -0,0 +1,114 @@
+package com.maxifier.guice.events;
+
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+public class HandlerIndexUTest {
+    interface Marker {
+    }
+
+    static class Base implements Marker {
+    }
+
+    static class Derived extends Base implements Serializable {
+    }
+
+    static class Listener1 {
+        @Handler
+        void base(Base b) {
+        }
+
+        @Handler
+        void marker(Marker m) {
+        }
+
+        @Handler
+        void primitive(int i) {
+        }
+    }
+
+    static class Listener2 {
+        @Handler
+        void any(Object o) {
+        }
+
+        @Handler
+        @HandleClass(Derived.class)
+        void derivedOnly() {
+        }
+
+        @Handler
+        void serializable(Serializable s) {
+        }
+
+        @Handler
+        void string(String s) {
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ListenerClassInstance<?> listenerClass(Class<?> c) {
+        List<ListenerClass<?>> lc = Collections.<ListenerClass<?>>singletonList(EventReflectionParser.getOrCreateClassInfo(c));
+        return new ListenerClassInstance(c, new ReferenceQueue(), lc);
+    }
+
+    private static List<String> names(List<HandlerMethodInstance> handlers) {
+        List<String> res = new ArrayList<String>();
+        for (HandlerMethodInstance handler : handlers) {
+            res.add(handler.getMethod().getName());
+        }
+        return res;
+    }
+
+    @Test
+    public void testResolve() {
+        HandlerIndex index = new HandlerIndex();
+        ListenerClassInstance<?> l1 = listenerClass(Listener1.class);
+        ListenerClassInstance<?> l2 = listenerClass(Listener2.class);
+        index.add(l1);
+        index.add(l2);
+
+        List<String> derived = names(index.resolve(Derived.class));
+        Collections.sort(derived);
+        assertEquals(derived, Arrays.asList("any", "base", "derivedOnly", "marker", "serializable"));
+
+        List<String> base = names(index.resolve(Base.class));
+        Collections.sort(base);
+        assertEquals(base, Arrays.asList("any", "base", "marker"));
+
+        List<String> string = names(index.resolve(String.class));
+        Collections.sort(string);
+        assertEquals(string, Arrays.asList("any", "serializable", "string"));
+
+        assertEquals(names(index.resolve(Object.class)), Collections.singletonList("any"));
+    }
+
+    @Test
+    public void testMatchesFullScan() {
+        HandlerIndex index = new HandlerIndex();
+        List<HandlerMethodInstance> all = new ArrayList<HandlerMethodInstance>();
+        for (Class<?> c : Arrays.<Class<?>>asList(Listener1.class, Listener2.class, AnimalListenerWrapper.class)) {
+            ListenerClassInstance<?> l = listenerClass(c);
+            index.add(l);
+            all.addAll(l.getHandlers());
+        }
+        for (Class<?> c : Arrays.<Class<?>>asList(Object.class, Base.class, Derived.class, String.class, Animal.class, Integer.class)) {
+            List<HandlerMethodInstance> expected = new ArrayList<HandlerMethodInstance>();
+            for (HandlerMethodInstance h : all) {
+                if (h.checkClass(c)) {
+                    expected.add(h);
+                }
+            }
+            // order of registration is preserved
+            assertEquals(index.resolve(c), expected, "Handlers for " + c);
+        }
+    }
+}
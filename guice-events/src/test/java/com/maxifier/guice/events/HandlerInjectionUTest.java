@@ -47,6 +47,40 @@ public class HandlerInjectionUTest {
         }
     }
 
+    static class Plain {
+    }
+
+    static class PlainSubclass extends Plain implements Comparable<Plain> {
+        @Override
+        public int compareTo(Plain o) {
+            return 0;
+        }
+    }
+
+    static class InheritedListener extends SomeServiceImpl {
+    }
+
+    @Test
+    public void testOnlyListenersAreRegistered() {
+        final EventDispatcher eventDispatcher = Mockito.mock(EventDispatcher.class);
+        Injector inj = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                install(new EventDispatcherModule());
+                bind(EventDispatcher.class).toInstance(eventDispatcher);
+            }
+        });
+        Plain plain = inj.getInstance(Plain.class);
+        PlainSubclass plainSubclass = inj.getInstance(PlainSubclass.class);
+        InheritedListener listener = inj.getInstance(InheritedListener.class);
+
+        inj.getInstance(ListenerRegistrationQueue.class).setDispatcher(eventDispatcher);
+
+        Mockito.verify(eventDispatcher).register(listener);
+        Mockito.verify(eventDispatcher, Mockito.never()).register(plain);
+        Mockito.verify(eventDispatcher, Mockito.never()).register(plainSubclass);
+    }
+
     @Test
     public void testEventDispatcherInjection() {
         Injector inj = Guice.createInjector(new AbstractModule() {
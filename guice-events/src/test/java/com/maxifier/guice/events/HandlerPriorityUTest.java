@@ -0,0 +1,131 @@
+package com.maxifier.guice.events;
+
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+public class HandlerPriorityUTest {
+    static class Command implements ConsumableEvent {
+        final String name;
+        boolean consumed;
+
+        Command(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean isConsumed() {
+            return consumed;
+        }
+    }
+
+    static class Log {
+        final List<String> calls = new ArrayList<String>();
+    }
+
+    static class LowPriority {
+        final Log log;
+
+        LowPriority(Log log) {
+            this.log = log;
+        }
+
+        @Handler(priority = -10)
+        void low(Command c) {
+            log.calls.add("low");
+        }
+
+        @Handler
+        void normal(Command c) {
+            log.calls.add("normal");
+        }
+    }
+
+    static class HighPriority {
+        final Log log;
+
+        HighPriority(Log log) {
+            this.log = log;
+        }
+
+        @Handler(priority = 10)
+        void high(Command c) {
+            log.calls.add("high " + c.name);
+            if (c.name.equals("consume")) {
+                c.consumed = true;
+            }
+        }
+    }
+
+    @Test
+    public void testPriorityOnResolve() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        Log log = new Log();
+        LowPriority low = new LowPriority(log);
+        HighPriority high = new HighPriority(log);
+        d.register(low);
+        d.register(high);
+
+        d.fireEvent(new Command("a"));
+        assertEquals(log.calls, Arrays.asList("high a", "normal", "low"));
+    }
+
+    @Test
+    public void testPriorityOnRebind() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        Log log = new Log();
+        LowPriority low = new LowPriority(log);
+        HighPriority high = new HighPriority(log);
+        d.register(low);
+        // dispatch table for Command is built before HighPriority is registered
+        d.fireEvent(new Command("a"));
+        d.register(high);
+        log.calls.clear();
+
+        d.fireEvent(new Command("b"));
+        assertEquals(log.calls, Arrays.asList("high b", "normal", "low"));
+    }
+
+    @Test
+    public void testConsumedEventStopsDispatch() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        Log log = new Log();
+        LowPriority low = new LowPriority(log);
+        HighPriority high1 = new HighPriority(log);
+        HighPriority high2 = new HighPriority(log);
+        d.register(low);
+        d.register(high1);
+        d.register(high2);
+
+        // the second listener of the same class is skipped as well
+        d.fireEvent(new Command("consume"));
+        assertEquals(log.calls, Collections.singletonList("high consume"));
+    }
+
+    @Test
+    public void testFireEventsSkipsConsumed() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        Log log = new Log();
+        final List<String> batch = new ArrayList<String>();
+        d.register(new LowPriority(log));
+        d.register(new HighPriority(log));
+        d.register(new Object() {
+            @Handler(batch = true)
+            void commands(List<Command> commands) {
+                for (Command command : commands) {
+                    batch.add(command.name);
+                }
+            }
+        });
+
+        d.fireEvents(Arrays.asList(new Command("a"), new Command("consume"), new Command("b")));
+        assertEquals(log.calls, Arrays.asList("high a", "high consume", "high b", "normal", "normal", "low", "low"));
+        assertEquals(batch, Arrays.asList("a", "b"));
+    }
+}
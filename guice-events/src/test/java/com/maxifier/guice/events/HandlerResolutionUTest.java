@@ -0,0 +1,187 @@
+package com.maxifier.guice.events;
+
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class HandlerResolutionUTest {
+    public static class PluginListener {
+        public final List<Object> received = new ArrayList<Object>();
+
+        @Handler
+        public void test(String s) {
+            received.add(s);
+        }
+    }
+
+    static class OtherListener {
+        final List<Object> received = new ArrayList<Object>();
+
+        @Handler
+        void test(Object o) {
+            received.add(o);
+        }
+    }
+
+    static class NoHandlers {
+    }
+
+    /**
+     * Loads {@link PluginListener} in its own class loader, like a plugin would be loaded.
+     */
+    static class PluginClassLoader extends ClassLoader {
+        PluginClassLoader() {
+            super(HandlerResolutionUTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(PluginListener.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    byte[] bytes = readClass(name);
+                    c = defineClass(name, bytes, 0, bytes.length);
+                }
+                return c;
+            }
+        }
+
+        private static byte[] readClass(String name) throws ClassNotFoundException {
+            InputStream in = HandlerResolutionUTest.class.getResourceAsStream("/" + name.replace('.', '/') + ".class");
+            if (in == null) {
+                throw new ClassNotFoundException(name);
+            }
+            try {
+                try {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buf = new byte[4096];
+                    int n;
+                    while ((n = in.read(buf)) > 0) {
+                        out.write(buf, 0, n);
+                    }
+                    return out.toByteArray();
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+
+    @Test
+    public void testNewListenerClassIsResolved() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        PluginListener l1 = new PluginListener();
+        d.register(l1, Strength.STRONG);
+        d.fireEvent("1");
+
+        OtherListener l2 = new OtherListener();
+        d.register(l2, Strength.STRONG);
+        d.fireEvent("2");
+
+        assertEquals(l1.received, Arrays.<Object>asList("1", "2"));
+        assertEquals(l2.received, Collections.<Object>singletonList("2"));
+        assertEquals(d.getHandlersByEventClass().get(String.class).size(), 2);
+    }
+
+    @Test
+    public void testClassWithoutHandlersIsNotStored() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        d.register(new NoHandlers(), Strength.STRONG);
+        assertTrue(d.getHandlersByListenerClass().isEmpty());
+    }
+
+    @Test
+    public void testEmptyListenerClassIsDropped() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        PluginListener l1 = new PluginListener();
+        d.register(l1, Strength.STRONG);
+        d.fireEvent("1");
+        d.unregister(l1);
+
+        OtherListener l2 = new OtherListener();
+        d.register(l2, Strength.STRONG);
+        assertEquals(d.getHandlersByListenerClass().keySet(), Collections.singleton(OtherListener.class));
+
+        d.fireEvent("2");
+        assertEquals(l1.received, Collections.<Object>singletonList("1"));
+        assertEquals(l2.received, Collections.<Object>singletonList("2"));
+
+        // listener of dropped class may be registered again
+        d.register(l1, Strength.STRONG);
+        d.fireEvent("3");
+        assertEquals(l1.received, Arrays.<Object>asList("1", "3"));
+    }
+
+    @Test
+    public void testPluginClassIsUnloaded() throws Exception {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        WeakReference<ClassLoader> loader = registerPlugin(d);
+
+        d.register(new OtherListener(), Strength.STRONG);
+        d.fireEvent("2");
+
+        for (int i = 0; i < 50 && loader.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(loader.get(), "Plugin class loader is retained");
+    }
+
+    @Test
+    public void testPluginEventClassIsUnloaded() throws Exception {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        d.register(new Object() {
+            @Handler
+            void test(Object o) {
+            }
+        }, Strength.STRONG);
+        d.getMetrics().setEnabled(true);
+        WeakReference<ClassLoader> loader = firePluginEvent(d);
+
+        for (int i = 0; i < 50 && loader.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(loader.get(), "Plugin class loader is retained");
+        assertEquals(d.getMetrics().getEventClassMetrics().keySet(), Collections.singleton(String.class));
+    }
+
+    private static WeakReference<ClassLoader> firePluginEvent(EventDispatcher d) throws Exception {
+        ClassLoader loader = new PluginClassLoader();
+        Class<?> c = loader.loadClass(PluginListener.class.getName());
+        d.fireEvent(c.getDeclaredConstructor().newInstance());
+        d.fireEvent("1");
+        assertEquals(d.getMetrics().getEventClassMetrics().size(), 2);
+        return new WeakReference<ClassLoader>(loader);
+    }
+
+    private static WeakReference<ClassLoader> registerPlugin(EventDispatcher d) throws Exception {
+        ClassLoader loader = new PluginClassLoader();
+        Class<?> c = loader.loadClass(PluginListener.class.getName());
+        assertFalse(c == PluginListener.class);
+        Object listener = c.getDeclaredConstructor().newInstance();
+        d.register(listener, Strength.STRONG);
+        d.fireEvent("1");
+        assertEquals(c.getField("received").get(listener), Collections.singletonList("1"));
+        d.unregister(listener);
+        return new WeakReference<ClassLoader>(loader);
+    }
+}
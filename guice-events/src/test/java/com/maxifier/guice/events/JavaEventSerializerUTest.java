@@ -0,0 +1,86 @@
+package com.maxifier.guice.events;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.Serializable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class JavaEventSerializerUTest {
+    @Retention(RetentionPolicy.RUNTIME)
+    @interface Marked {
+    }
+
+    @Marked
+    static class Event implements Serializable {
+        final Object payload;
+
+        Event(Object payload) {
+            this.payload = payload;
+        }
+    }
+
+    static class Unmarked implements Serializable {
+    }
+
+    static class Handler implements InvocationHandler, Serializable {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            return null;
+        }
+    }
+
+    private static void assertRejected(JavaEventSerializer serializer, Object event) throws IOException {
+        byte[] data = serializer.serialize(event);
+        try {
+            serializer.deserialize(data);
+            fail("Deserialized " + event);
+        } catch (InvalidClassException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testJdkValues() throws IOException {
+        JavaEventSerializer serializer = new JavaEventSerializer();
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("a", Arrays.asList(1, 2L, new BigDecimal("3.5"), "5"));
+        List<Object> list = new ArrayList<Object>();
+        list.add(map);
+        assertEquals(serializer.deserialize(serializer.serialize(list)), list);
+        assertEquals((long[]) serializer.deserialize(serializer.serialize(new long[]{4})), new long[]{4});
+        assertRejected(serializer, new Event(1));
+    }
+
+    @Test
+    public void testAnnotatedWith() throws IOException {
+        JavaEventSerializer serializer = new JavaEventSerializer(JavaEventSerializer.annotatedWith(Marked.class));
+        Event event = (Event) serializer.deserialize(serializer.serialize(new Event(new Event[]{new Event("x")})));
+        assertEquals(((Event[]) event.payload)[0].payload, "x");
+        // classes nested in allowed ones are checked too
+        assertRejected(serializer, new Event(new Unmarked()));
+        assertRejected(serializer, new Event(Arrays.asList(new Unmarked())));
+        assertRejected(serializer, new Unmarked());
+        assertRejected(serializer, new Event(Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Runnable.class}, new Handler())));
+    }
+
+    @Test
+    public void testAny() throws IOException {
+        JavaEventSerializer serializer = new JavaEventSerializer(JavaEventSerializer.ANY);
+        assertEquals(serializer.deserialize(serializer.serialize(new Unmarked())).getClass(), Unmarked.class);
+    }
+}
@@ -0,0 +1,176 @@
+package com.maxifier.guice.events;
+
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+public class KeyedHandlerUTest {
+    static class Trade implements Keyed {
+        final String portfolio;
+        final int id;
+
+        Trade(String portfolio, int id) {
+            this.portfolio = portfolio;
+            this.id = id;
+        }
+
+        @Override
+        public Object getEventKey() {
+            return portfolio;
+        }
+
+        @Override
+        public String toString() {
+            return portfolio + id;
+        }
+    }
+
+    static class ConsumableTrade extends Trade implements ConsumableEvent {
+        private boolean consumed;
+
+        ConsumableTrade(String portfolio, int id) {
+            super(portfolio, id);
+        }
+
+        void consume() {
+            consumed = true;
+        }
+
+        @Override
+        public boolean isConsumed() {
+            return consumed;
+        }
+    }
+
+    static class Portfolio implements Keyed {
+        final String name;
+        final List<String> received = new ArrayList<String>();
+
+        Portfolio(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Object getEventKey() {
+            return name;
+        }
+
+        @Handler(priority = 1)
+        @HandleKey
+        void trade(Trade t) {
+            received.add(t.toString());
+            if (t instanceof ConsumableTrade) {
+                ((ConsumableTrade) t).consume();
+            }
+        }
+
+        @Handler
+        @HandleKey
+        @HandleClass(String.class)
+        void keyedString() {
+            // String isn't keyed, so it's never invoked
+            received.add("string");
+        }
+
+        @Handler
+        void any(Trade t) {
+            received.add("any " + t);
+        }
+    }
+
+    static class NotKeyed {
+        @Handler
+        @HandleKey
+        void trade(Trade t) {
+        }
+    }
+
+    static class KeyedBatch implements Keyed {
+        @Override
+        public Object getEventKey() {
+            return null;
+        }
+
+        @Handler(batch = true)
+        @HandleKey
+        void trades(List<Trade> t) {
+        }
+    }
+
+    private static EventDispatcherImpl dispatcher() {
+        return new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+    }
+
+    @Test
+    public void testKeyedDispatch() {
+        EventDispatcherImpl d = dispatcher();
+        Portfolio a1 = new Portfolio("a");
+        Portfolio a2 = new Portfolio("a");
+        Portfolio b = new Portfolio("b");
+        Portfolio none = new Portfolio(null);
+        d.register(a1, Strength.STRONG);
+        d.register(b, Strength.STRONG);
+        d.register(a2, Strength.STRONG);
+        d.register(none, Strength.STRONG);
+
+        d.fireEvent(new Trade("a", 1));
+        d.fireEvent(new Trade("b", 2));
+        d.fireEvent(new Trade(null, 3));
+        d.fireEvent("s");
+
+        assertEquals(a1.received, Arrays.asList("a1", "any a1", "any b2", "any null3"));
+        assertEquals(a2.received, Arrays.asList("a1", "any a1", "any b2", "any null3"));
+        assertEquals(b.received, Arrays.asList("any a1", "b2", "any b2", "any null3"));
+        assertEquals(none.received, Arrays.asList("any a1", "any b2", "any null3"));
+    }
+
+    @Test
+    public void testUnregister() {
+        EventDispatcherImpl d = dispatcher();
+        Portfolio a1 = new Portfolio("a");
+        Portfolio a2 = new Portfolio("a");
+        d.register(a1, Strength.STRONG);
+        Registration r = d.register(a2, Strength.STRONG);
+        r.close();
+        d.unregister(a1);
+        // registered again with other strength
+        d.register(a1);
+        d.register(a1, Strength.STRONG);
+
+        d.fireEvent(new Trade("a", 1));
+        assertEquals(a1.received, Arrays.asList("a1", "any a1"));
+        assertEquals(a2.received, Collections.emptyList());
+
+        d.unregister(a1);
+        d.fireEvent(new Trade("a", 2));
+        assertEquals(a1.received, Arrays.asList("a1", "any a1"));
+    }
+
+    @Test
+    public void testConsumedByKeyedHandler() {
+        EventDispatcherImpl d = dispatcher();
+        Portfolio a1 = new Portfolio("a");
+        Portfolio a2 = new Portfolio("a");
+        d.register(a1, Strength.STRONG);
+        d.register(a2, Strength.STRONG);
+        d.fireEvent(new ConsumableTrade("a", 1));
+        assertEquals(a1.received, Collections.singletonList("a1"));
+        assertEquals(a2.received, Collections.emptyList());
+    }
+
+    @Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = ".*should implement.*Keyed")
+    public void testListenerShouldBeKeyed() {
+        dispatcher().register(new NotKeyed(), Strength.STRONG);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = "Batch handler .* can't be keyed")
+    public void testBatchCantBeKeyed() {
+        dispatcher().register(new KeyedBatch(), Strength.STRONG);
+    }
+}
@@ -0,0 +1,120 @@
+package com.maxifier.guice.events;
+
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class LambdaHandlerInvocatorUTest {
+    public interface TestInvoker {
+        void doIt(String s);
+
+        void doIt();
+
+        String returnIt();
+
+        String returnIt(String s);
+    }
+
+    static class PackagePrivateListener {
+        String received;
+
+        void handle(String s) {
+            received = s;
+        }
+
+        int count(String s) {
+            return s.length();
+        }
+
+        void fail(String s) {
+            throw new IllegalStateException(s);
+        }
+    }
+
+    @Test
+    public void testWParam() throws Exception {
+        HandlerInvocator<String, TestInvoker> inv = new LambdaHandlerInvocator<String, TestInvoker>(TestInvoker.class.getMethod("doIt", String.class));
+
+        TestInvoker test = Mockito.mock(TestInvoker.class);
+
+        assertEquals(inv.getParamType(), String.class);
+
+        assertNull(inv.invoke(test, "test"));
+
+        Mockito.verify(test).doIt("test");
+        Mockito.verifyNoMoreInteractions(test);
+    }
+
+    @Test
+    public void testWOParam() throws Exception {
+        HandlerInvocator<String, TestInvoker> inv = new LambdaHandlerInvocator<String, TestInvoker>(TestInvoker.class.getMethod("doIt"));
+
+        TestInvoker test = Mockito.mock(TestInvoker.class);
+
+        assertEquals(inv.getParamType(), null);
+
+        assertNull(inv.invoke(test, "test"));
+
+        Mockito.verify(test).doIt();
+        Mockito.verifyNoMoreInteractions(test);
+    }
+
+    @Test
+    public void testWReturnAndParam() throws Exception {
+        HandlerInvocator<String, TestInvoker> inv = new LambdaHandlerInvocator<String, TestInvoker>(TestInvoker.class.getMethod("returnIt", String.class));
+
+        TestInvoker test = Mockito.mock(TestInvoker.class);
+        Mockito.when(test.returnIt("test")).thenReturn("result");
+
+        assertEquals(inv.invoke(test, "test"), "result");
+
+        Mockito.verify(test).returnIt("test");
+        Mockito.verifyNoMoreInteractions(test);
+    }
+
+    @Test
+    public void testPackagePrivate() throws Exception {
+        PackagePrivateListener l = new PackagePrivateListener();
+
+        LambdaHandlerInvocator<String, PackagePrivateListener> handle = new LambdaHandlerInvocator<String, PackagePrivateListener>(PackagePrivateListener.class.getDeclaredMethod("handle", String.class));
+        assertTrue(handle.isGenerated());
+        assertNull(handle.invoke(l, "test"));
+        assertEquals(l.received, "test");
+
+        LambdaHandlerInvocator<String, PackagePrivateListener> count = new LambdaHandlerInvocator<String, PackagePrivateListener>(PackagePrivateListener.class.getDeclaredMethod("count", String.class));
+        assertTrue(count.isGenerated());
+        assertEquals(count.invoke(l, "test"), 4);
+    }
+
+    @Test
+    public void testPrimitiveParameterFallsBackToMethodHandle() throws Exception {
+        class PrimitiveListener {
+            int received;
+
+            void handle(int i) {
+                received = i;
+            }
+        }
+        PrimitiveListener l = new PrimitiveListener();
+        LambdaHandlerInvocator<Object, PrimitiveListener> inv = new LambdaHandlerInvocator<Object, PrimitiveListener>(PrimitiveListener.class.getDeclaredMethod("handle", int.class));
+        inv.invoke(l, 5);
+        assertEquals(l.received, 5);
+    }
+
+    @Test
+    public void testExceptionIsNotWrapped() throws Exception {
+        HandlerInvocator<String, PackagePrivateListener> inv = new LambdaHandlerInvocator<String, PackagePrivateListener>(PackagePrivateListener.class.getDeclaredMethod("fail", String.class));
+        try {
+            inv.invoke(new PackagePrivateListener(), "boom");
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+            assertSame(e.getClass(), IllegalStateException.class);
+            assertEquals(e.getMessage(), "boom");
+        }
+    }
+}
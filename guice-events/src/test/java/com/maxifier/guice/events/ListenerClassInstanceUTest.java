@@ -0,0 +1,101 @@
+package com.maxifier.guice.events;
+
+import org.testng.annotations.Test;
+
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class ListenerClassInstanceUTest {
+    static class Listener {
+        final int id;
+        final List<Integer> received;
+
+        Listener(int id, List<Integer> received) {
+            this.id = id;
+            this.received = received;
+        }
+
+        @Handler
+        void test(String s) {
+            received.add(id);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ListenerClassInstance<Listener> listenerClass() {
+        List<ListenerClass<?>> lc = Collections.<ListenerClass<?>>singletonList(EventReflectionParser.getOrCreateClassInfo(Listener.class));
+        return new ListenerClassInstance(Listener.class, new ReferenceQueue(), lc);
+    }
+
+    private static List<Integer> fire(ListenerClassInstance<Listener> lc, List<Integer> received) {
+        received.clear();
+        lc.invokeHandler(lc.getHandlers().get(0), "test");
+        return new ArrayList<Integer>(received);
+    }
+
+    @Test
+    public void testChurn() {
+        ListenerClassInstance<Listener> lc = listenerClass();
+        List<Integer> received = new ArrayList<Integer>();
+        List<Listener> listeners = new ArrayList<Listener>();
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            Listener l = new Listener(i, received);
+            listeners.add(l);
+            lc.addListener(l, Strength.STRONG);
+            expected.add(i);
+        }
+        assertEquals(fire(lc, received), expected);
+        assertEquals(lc.getListenerCount(), 1000);
+
+        // remove all but every 10th listener
+        for (int i = 0; i < 1000; i++) {
+            if (i % 10 != 0) {
+                assertTrue(lc.removeListener(listeners.get(i)));
+                expected.remove(Integer.valueOf(i));
+            }
+        }
+        assertFalse(lc.removeListener(listeners.get(1)));
+        assertEquals(lc.getListenerCount(), 100);
+        assertTrue(lc.getListenerSlots() < 1000, "Tombstones should be compacted");
+        // order of registration is preserved
+        assertEquals(fire(lc, received), expected);
+
+        Listener l = new Listener(1000, received);
+        lc.addListener(l, Strength.STRONG);
+        lc.addListener(l, Strength.STRONG);
+        expected.add(1000);
+        assertEquals(fire(lc, received), expected);
+    }
+
+    @Test
+    public void testReplaceWeakWithStrong() {
+        ListenerClassInstance<Listener> lc = listenerClass();
+        List<Integer> received = new ArrayList<Integer>();
+        Listener l1 = new Listener(1, received);
+        Listener l2 = new Listener(2, received);
+        lc.addListener(l1, Strength.WEAK);
+        lc.addListener(l2, Strength.WEAK);
+        lc.addListener(l1, Strength.STRONG);
+
+        assertEquals(lc.getListenerCount(), 2);
+        assertEquals(fire(lc, received), Arrays.asList(1, 2));
+    }
+
+    @Test
+    public void testListenerClassWithoutHandlers() {
+        List<ListenerClass<?>> lc = Collections.emptyList();
+        ListenerClassInstance<Object> instance = new ListenerClassInstance<Object>(Object.class, new ReferenceQueue<Object>(), lc);
+        Object o = new Object();
+        instance.addListener(o);
+        assertEquals(instance.getListenerCount(), 0);
+        assertFalse(instance.removeListener(o));
+    }
+}
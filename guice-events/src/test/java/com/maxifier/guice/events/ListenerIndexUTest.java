@@ -0,0 +1,120 @@
+package com.maxifier.guice.events;
+
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * Uses the index from test resources which describes the nested classes.
+ */
+public class ListenerIndexUTest {
+    static class Indexed {
+        final List<String> calls = new ArrayList<String>();
+
+        @Handler
+        @HandleClass(String.class)
+        void first() {
+            calls.add("first");
+        }
+
+        @Handler
+        void second(String s) {
+            calls.add("second");
+        }
+    }
+
+    // the index claims its only method is not a handler, so it's not parsed
+    static class Skipped {
+        final List<String> calls = new ArrayList<String>();
+
+        @Handler
+        void handle(String s) {
+            calls.add(s);
+        }
+    }
+
+    static class Stale {
+        final List<String> calls = new ArrayList<String>();
+
+        @Handler
+        void handle(String s) {
+            calls.add(s);
+        }
+    }
+
+    // a handler was added after the index was written
+    static class Grown {
+        final List<String> calls = new ArrayList<String>();
+
+        @Handler
+        void handle(String s) {
+            calls.add(s);
+        }
+    }
+
+    static class Malformed {
+        @Handler
+        void second(String s) {
+        }
+    }
+
+    @Test
+    public void testIndex() {
+        assertEquals(ListenerIndex.getHandlers(Indexed.class), new String[]{"second(java.lang.String)", "first()"});
+        assertEquals(ListenerIndex.getHandlers(Skipped.class), new String[0]);
+        assertNull(ListenerIndex.getHandlers(ListenerIndexUTest.class));
+        assertNull(ListenerIndex.getHandlers(String.class));
+        assertNull(ListenerIndex.getHandlers(Grown.class));
+        assertNull(ListenerIndex.getHandlers(Malformed.class));
+    }
+
+    @Test
+    public void testIndexedListeners() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        Indexed indexed = new Indexed();
+        Skipped skipped = new Skipped();
+        Stale stale = new Stale();
+        Grown grown = new Grown();
+        d.register(indexed, Strength.STRONG);
+        d.register(skipped, Strength.STRONG);
+        d.register(stale, Strength.STRONG);
+        d.register(grown, Strength.STRONG);
+        d.fireEvent("e");
+        // handlers are ordered as in the index
+        assertEquals(indexed.calls, Arrays.asList("second", "first"));
+        assertEquals(skipped.calls, Collections.emptyList());
+        // out of date index falls back to reflection
+        assertEquals(stale.calls, Collections.singletonList("e"));
+        assertEquals(grown.calls, Collections.singletonList("e"));
+    }
+
+    static class Bridged implements Comparable<Bridged> {
+        @Override
+        public int compareTo(Bridged o) {
+            return 0;
+        }
+    }
+
+    @Test
+    public void testCountMethods() {
+        // bridge compareTo(Object) is synthetic, the processor doesn't see it
+        assertEquals(ListenerIndex.countMethods(Bridged.class), 1);
+        assertEquals(ListenerIndex.countMethods(Indexed.class), 2);
+    }
+
+    @Test
+    public void testResolve() throws Exception {
+        assertEquals(ListenerIndex.resolve(Indexed.class, "second(java.lang.String)"), Indexed.class.getDeclaredMethod("second", String.class));
+        assertEquals(ListenerIndex.resolve(Indexed.class, "first()"), Indexed.class.getDeclaredMethod("first"));
+        assertNull(ListenerIndex.resolve(Indexed.class, "first(int)"));
+        assertNull(ListenerIndex.resolve(Indexed.class, "second(com.acme.Missing)"));
+        assertNull(ListenerIndex.resolve(Indexed.class, "broken"));
+    }
+}
@@ -0,0 +1,162 @@
+package com.maxifier.guice.events;
+
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class ListenerStrengthUTest {
+    static class Counter {
+        final List<String> received = new ArrayList<String>();
+    }
+
+    static class CountingListener {
+        final Counter counter;
+
+        CountingListener(Counter counter) {
+            this.counter = counter;
+        }
+
+        @Handler
+        void test(String s) {
+            counter.received.add(s);
+        }
+    }
+
+    @ListenerStrength(Strength.STRONG)
+    static class StrongListener extends CountingListener {
+        StrongListener(Counter counter) {
+            super(counter);
+        }
+    }
+
+    @Test
+    public void testStrongListenerIsNotCollected() throws Exception {
+        EventDispatcherImpl d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        Counter counter = new Counter();
+        ReferenceQueue<Object> q = new ReferenceQueue<Object>();
+        WeakReference<Object> wr = new WeakReference<Object>(register(d, counter), q);
+
+        System.gc();
+        Thread.sleep(100);
+        assertNull(q.poll());
+
+        d.fireEvent("123");
+        assertEquals(counter.received, Collections.singletonList("123"));
+
+        d.unregister(wr.get());
+        d.fireEvent("456");
+        assertEquals(counter.received, Collections.singletonList("123"));
+        assertFalse(d.isReferenceWatcherStarted());
+    }
+
+    private static Object register(EventDispatcher d, Counter counter) {
+        Object listener = new CountingListener(counter);
+        d.register(listener, Strength.STRONG);
+        return listener;
+    }
+
+    @Test
+    public void testAnnotatedClass() {
+        EventDispatcherImpl d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        Counter counter = new Counter();
+        d.register(new StrongListener(counter));
+        System.gc();
+
+        d.fireEvent("123");
+        assertEquals(counter.received, Collections.singletonList("123"));
+        assertFalse(d.isReferenceWatcherStarted());
+
+        d.register(new CountingListener(counter));
+        assertTrue(d.isReferenceWatcherStarted());
+    }
+
+    @Test
+    public void testRegistrationClose() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        Counter counter = new Counter();
+        CountingListener weak = new CountingListener(counter);
+        Registration weakRegistration = d.register(weak, Strength.WEAK);
+        Registration strongRegistration = d.register(new CountingListener(counter), Strength.STRONG);
+
+        d.fireEvent("1");
+        weakRegistration.close();
+        d.fireEvent("2");
+        strongRegistration.close();
+        d.fireEvent("3");
+        // closing twice does nothing
+        strongRegistration.close();
+
+        assertEquals(counter.received, Arrays.asList("1", "1", "2"));
+    }
+
+    @Test
+    public void testUpgradeToStrong() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        Counter counter = new Counter();
+        CountingListener listener = new CountingListener(counter);
+        d.register(listener);
+        d.register(listener, Strength.STRONG);
+        d.register(listener, Strength.WEAK);
+
+        d.fireEvent("1");
+        assertEquals(counter.received, Collections.singletonList("1"));
+
+        d.unregister(listener);
+        d.fireEvent("2");
+        assertEquals(counter.received, Collections.singletonList("1"));
+    }
+
+    @Test(timeOut = 60000)
+    public void testUnregisterInHandler() {
+        final EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        final List<String> received = new ArrayList<String>();
+        class OneShotListener {
+            @Handler
+            void test(String s) {
+                received.add(s);
+                d.unregister(this);
+            }
+        }
+        d.register(new OneShotListener(), Strength.STRONG);
+        OneShotListener second = new OneShotListener();
+        d.register(second, Strength.STRONG);
+
+        d.fireEvent("1");
+        d.fireEvent("2");
+        assertEquals(received, Arrays.asList("1", "1"));
+
+        // removed references are purged, the listener may be registered again
+        d.register(second, Strength.STRONG);
+        d.fireEvent("3");
+        assertEquals(received, Arrays.asList("1", "1", "3"));
+    }
+
+    @Test
+    public void testUnregisterDeferred() {
+        final EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        final Counter counter = new Counter();
+        final CountingListener listener = new CountingListener(counter);
+        d.register(new Object() {
+            @Handler
+            void test(Integer i) {
+                d.register(listener, Strength.STRONG);
+                d.unregister(listener);
+            }
+        }, Strength.STRONG);
+
+        d.fireEvent(1);
+        d.fireEvent("1");
+        assertEquals(counter.received, Collections.emptyList());
+    }
+}
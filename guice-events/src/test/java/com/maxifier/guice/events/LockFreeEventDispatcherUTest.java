@@ -0,0 +1,135 @@
+package com.maxifier.guice.events;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class LockFreeEventDispatcherUTest {
+
+    interface Listener {
+        @Handler
+        void test(String s);
+    }
+
+    static class ListenerWrapper implements Listener {
+        final Listener tracker;
+
+        ListenerWrapper(Listener tracker) {
+            this.tracker = tracker;
+        }
+
+        @Override
+        public void test(String s) {
+            tracker.test(s);
+        }
+    }
+
+    @Test
+    public void testRegisterInHandler() {
+        final EventDispatcher d = new LockFreeEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class));
+
+        final Listener l = Mockito.mock(Listener.class);
+        final ListenerWrapper wrapper = new ListenerWrapper(l);
+
+        class TestListener {
+            @Handler
+            void test(String s) {
+                if (s.equals("123")) {
+                    d.register(wrapper);
+                    d.fireEvent("321");
+                }
+            }
+        }
+
+        TestListener tl = new TestListener();
+        d.register(tl);
+
+        d.fireEvent("123");
+        d.fireEvent("222");
+
+        // registration is not deferred: the listener receives an event fired right after registration
+        Mockito.verify(l).test("321");
+        Mockito.verify(l).test("222");
+        Mockito.verifyNoMoreInteractions(l);
+    }
+
+    @Test
+    public void testNewListenerClassIsBoundToKnownEvents() {
+        EventDispatcher d = new LockFreeEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class));
+
+        AnimalListener first = Mockito.mock(AnimalListener.class);
+        d.register(new AnimalListenerWrapper(first));
+        d.fireEvent(Animal.RABBIT);
+
+        Listener second = Mockito.mock(Listener.class);
+        d.register(new ListenerWrapper(second));
+        d.fireEvent(Animal.RABBIT);
+        d.fireEvent("rabbit");
+
+        Mockito.verify(first, Mockito.times(2)).animal(Animal.RABBIT);
+        Mockito.verify(first, Mockito.times(2)).eatableAnimal(Animal.RABBIT);
+        Mockito.verify(second).test("rabbit");
+        Mockito.verifyNoMoreInteractions(first, second);
+    }
+
+    @Test(timeOut = 60000)
+    public void testConcurrentFiring() throws Exception {
+        final EventDispatcher d = new LockFreeEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class));
+        final AtomicInteger strings = new AtomicInteger();
+        final AtomicInteger integers = new AtomicInteger();
+
+        d.register(new Object() {
+            @Handler
+            public void handle(String s) {
+                strings.incrementAndGet();
+            }
+
+            @Handler
+            public void handle(Integer i) {
+                integers.incrementAndGet();
+            }
+        });
+
+        final int threads = 8;
+        final int events = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < events; j++) {
+                            d.fireEvent("s");
+                            d.fireEvent(j);
+                        }
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        start.countDown();
+        done.await();
+
+        assertEquals(strings.get(), threads * events);
+        assertEquals(integers.get(), threads * events);
+        assertTrue(d.getHandlersByEventClass().containsKey(String.class));
+    }
+
+    @Test
+    public void testModule() {
+        Injector inj = Guice.createInjector(EventDispatcherModule.lockFree());
+        assertTrue(inj.getInstance(EventDispatcher.class) instanceof LockFreeEventDispatcher);
+    }
+}
@@ -0,0 +1,242 @@
+package com.maxifier.guice.events;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ShardedEventDispatcherUTest {
+    static class Order implements Sharded {
+        final String account;
+
+        Order(String account) {
+            this.account = account;
+        }
+
+        @Override
+        public Object getShardKey() {
+            return account;
+        }
+
+        @Override
+        public String toString() {
+            return "order " + account;
+        }
+    }
+
+    static class AccountListener implements Sharded {
+        final String account;
+        final List<Object> received = new ArrayList<Object>();
+
+        AccountListener(String account) {
+            this.account = account;
+        }
+
+        @Override
+        public Object getShardKey() {
+            return account;
+        }
+
+        @Handler
+        void order(Order o) {
+            received.add(o);
+        }
+
+        @Handler
+        void string(String s) {
+            received.add(s);
+        }
+    }
+
+    static class AuditListener {
+        final List<Object> received = new ArrayList<Object>();
+
+        @Handler
+        void order(Order o) {
+            received.add(o);
+        }
+    }
+
+    static class UnhandledTracker extends ShardedEventDispatcher {
+        final List<Object> unhandled = new ArrayList<Object>();
+
+        UnhandledTracker(int shards) {
+            super(Mockito.mock(ListenerRegistrationQueue.class), shards);
+        }
+
+        @Override
+        protected void unhandledEvent(Object event) {
+            unhandled.add(event);
+        }
+    }
+
+    /**
+     * @return accounts which fall into different shards
+     */
+    private static String[] accounts(ShardedEventDispatcher d) {
+        String a = "a";
+        for (int i = 0; ; i++) {
+            String b = "b" + i;
+            if ((a.hashCode() ^ a.hashCode() >>> 16) % d.getShardCount() != (b.hashCode() ^ b.hashCode() >>> 16) % d.getShardCount()) {
+                return new String[]{a, b};
+            }
+        }
+    }
+
+    @Test
+    public void testRouting() {
+        UnhandledTracker d = new UnhandledTracker(4);
+        String[] accounts = accounts(d);
+        AccountListener a = new AccountListener(accounts[0]);
+        AccountListener b = new AccountListener(accounts[1]);
+        AuditListener audit = new AuditListener();
+        d.register(a, Strength.STRONG);
+        d.register(b, Strength.STRONG);
+        d.register(audit, Strength.STRONG);
+
+        Order orderA = new Order(accounts[0]);
+        Order orderB = new Order(accounts[1]);
+        d.fireEvent(orderA);
+        d.fireEvent(orderB);
+        d.fireEvent("broadcast");
+
+        assertEquals(a.received, Arrays.<Object>asList(orderA, "broadcast"));
+        assertEquals(b.received, Arrays.<Object>asList(orderB, "broadcast"));
+        assertEquals(audit.received, Arrays.<Object>asList(orderA, orderB));
+        assertEquals(d.unhandled, Collections.emptyList());
+
+        d.fireEvent(1);
+        assertEquals(d.unhandled, Collections.<Object>singletonList(1));
+    }
+
+    @Test
+    public void testFireEvents() {
+        UnhandledTracker d = new UnhandledTracker(4);
+        String[] accounts = accounts(d);
+        AccountListener a = new AccountListener(accounts[0]);
+        d.register(a, Strength.STRONG);
+
+        Order orderA = new Order(accounts[0]);
+        Order orderB = new Order(accounts[1]);
+        d.fireEvents(Arrays.asList(orderA, orderB, "broadcast", 1));
+
+        assertEquals(a.received, Arrays.<Object>asList(orderA, "broadcast"));
+        assertEquals(d.unhandled, Arrays.<Object>asList(orderB, 1));
+    }
+
+    @Test
+    public void testFireEventsKeepsOrder() {
+        UnhandledTracker d = new UnhandledTracker(4);
+        String[] accounts = accounts(d);
+        AccountListener a = new AccountListener(accounts[0]);
+        d.register(a, Strength.STRONG);
+
+        Order first = new Order(accounts[0]);
+        Order second = new Order(accounts[0]);
+        d.fireEvents(Arrays.asList("broadcast", first, new Order(accounts[1]), second));
+
+        assertEquals(a.received, Arrays.<Object>asList("broadcast", first, second));
+    }
+
+    @Test
+    public void testFireEventsIsMeasured() {
+        UnhandledTracker d = new UnhandledTracker(4);
+        d.getMetrics().setEnabled(true);
+        d.getMetrics().setLatencySampling(1);
+        String[] accounts = accounts(d);
+        d.register(new AccountListener(accounts[0]), Strength.STRONG);
+
+        d.fireEvents(Arrays.asList(new Order(accounts[0]), new Order(accounts[1]), new Order(accounts[0])));
+
+        EventClassMetrics orders = d.getMetrics().getEventClassMetrics().get(Order.class);
+        assertEquals(orders.getFired(), 3);
+        assertEquals(orders.getUnhandled(), 1);
+        // the batch is sampled as a whole
+        assertEquals(orders.getLatency().getCount(), 1);
+    }
+
+    @Test
+    public void testRegisterInHandlerIsDeferred() {
+        final ShardedEventDispatcher d = new ShardedEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class), 4);
+        final AccountListener a = new AccountListener("a");
+        d.register(new Object() {
+            @Handler
+            void test(Integer i) {
+                d.register(a, Strength.STRONG);
+                d.fireEvent("nested");
+            }
+        }, Strength.STRONG);
+
+        d.fireEvent(1);
+        assertEquals(a.received, Collections.emptyList());
+        d.fireEvent("after");
+        assertEquals(a.received, Collections.<Object>singletonList("after"));
+
+        d.unregister(a);
+        d.fireEvent("unregistered");
+        assertEquals(a.received, Collections.<Object>singletonList("after"));
+    }
+
+    @Test
+    public void testRegistrationClose() {
+        ShardedEventDispatcher d = new ShardedEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class), 2);
+        AccountListener a = new AccountListener("a");
+        Registration r = d.register(a, Strength.STRONG);
+        d.fireEvent("1");
+        r.close();
+        d.fireEvent("2");
+        assertEquals(a.received, Collections.<Object>singletonList("1"));
+    }
+
+    @Test
+    public void testHandlersByListenerClass() {
+        ShardedEventDispatcher d = new ShardedEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class), 4);
+        String[] accounts = accounts(d);
+        d.register(new AccountListener(accounts[0]), Strength.STRONG);
+        d.register(new AccountListener(accounts[1]), Strength.STRONG);
+        d.register(new AuditListener(), Strength.STRONG);
+        // each shard has its own instances of handlers
+        assertEquals(d.getHandlersByListenerClass().get(AccountListener.class).size(), 4);
+        assertEquals(d.getHandlersByListenerClass().get(AuditListener.class).size(), 1);
+    }
+
+    @Test
+    public void testHandlerMetricsOfShards() {
+        ShardedEventDispatcher d = new ShardedEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class), 4);
+        String[] accounts = accounts(d);
+        d.register(new AccountListener(accounts[0]), Strength.STRONG);
+        d.register(new AccountListener(accounts[1]), Strength.STRONG);
+        d.getMetrics().setEnabled(true);
+        d.getMetrics().setLatencySampling(1);
+        d.fireEvent(new Order(accounts[0]));
+        d.fireEvent(new Order(accounts[1]));
+        d.fireEvent("all");
+
+        // instances of a handler in different shards are shown as one row
+        TabularData handlers = new EventDispatcherControl(d).getHandlerMetrics();
+        assertEquals(handlers.size(), 2);
+        CompositeData order = handlers.get(new Object[]{AccountListener.class.getName() + "#order(Order)"});
+        assertEquals(order.get("methodInvocations"), 2L);
+        CompositeData string = handlers.get(new Object[]{AccountListener.class.getName() + "#string(String)"});
+        assertEquals(string.get("methodInvocations"), 2L);
+        assertTrue((Double) string.get("meanNanos") > 0);
+    }
+
+    @Test
+    public void testModule() {
+        Injector inj = Guice.createInjector(EventDispatcherModule.sharded(8));
+        EventDispatcher d = inj.getInstance(EventDispatcher.class);
+        assertTrue(d instanceof ShardedEventDispatcher);
+        assertEquals(((ShardedEventDispatcher) d).getShardCount(), 8);
+    }
+}
@@ -0,0 +1,209 @@
+package com.maxifier.guice.events;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TraceRecorderUTest {
+    static class Order {
+    }
+
+    static class Payment {
+    }
+
+    static class OrderListener {
+        EventDispatcher dispatcher;
+
+        @Handler
+        void onOrder(Order order) {
+            dispatcher.fireEvent(new Payment());
+        }
+    }
+
+    static class PaymentListener {
+        @Handler
+        void onPayment(Payment payment) {
+            LockSupport.parkNanos(2000000);
+            throw new IllegalStateException("declined");
+        }
+    }
+
+    private static Map<String, TraceRecorder.Span> byName(List<TraceRecorder.Span> spans) {
+        Map<String, TraceRecorder.Span> res = new HashMap<String, TraceRecorder.Span>();
+        for (TraceRecorder.Span span : spans) {
+            res.put(span.getName(), span);
+        }
+        return res;
+    }
+
+    private static void checkCascade(EventDispatcher d) {
+        TraceRecorder recorder = new TraceRecorder();
+        d.getMetrics().setTracer(recorder);
+        OrderListener orders = new OrderListener();
+        orders.dispatcher = d;
+        d.register(orders, Strength.STRONG);
+        d.register(new PaymentListener(), Strength.STRONG);
+        d.fireEvent(new Order());
+
+        List<TraceRecorder.Span> spans = recorder.getSpans();
+        assertEquals(spans.size(), 4, spans.toString());
+        Map<String, TraceRecorder.Span> m = byName(spans);
+        TraceRecorder.Span order = m.get("TraceRecorderUTest$Order");
+        TraceRecorder.Span onOrder = m.get("TraceRecorderUTest$OrderListener.onOrder");
+        TraceRecorder.Span payment = m.get("TraceRecorderUTest$Payment");
+        TraceRecorder.Span onPayment = m.get("TraceRecorderUTest$PaymentListener.onPayment");
+        assertEquals(order.getParentId(), 0);
+        assertEquals(onOrder.getParentId(), order.getId());
+        assertEquals(payment.getParentId(), onOrder.getId());
+        assertEquals(onPayment.getParentId(), payment.getId());
+        // children finish first
+        assertEquals(spans, Arrays.asList(onPayment, payment, onOrder, order));
+
+        assertSame(order.getEventClass(), Order.class);
+        assertEquals(order.getUnhandled(), 0);
+        assertFalse(onOrder.isFailed());
+        assertTrue(onPayment.isFailed());
+        assertSame(onPayment.getHandler().getListenerClass(), PaymentListener.class);
+        assertTrue(onPayment.getDurationNanos() >= 1000000);
+        assertTrue(order.getDurationNanos() >= onPayment.getDurationNanos());
+        assertTrue(onPayment.getStartNanos() >= order.getStartNanos());
+
+        d.getMetrics().setTracer(null);
+        d.fireEvent(new Order());
+        assertEquals(recorder.getSpanCount(), 4);
+    }
+
+    @Test
+    public void testCascade() {
+        checkCascade(new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class)));
+    }
+
+    @Test
+    public void testShardedCascade() {
+        checkCascade(new ShardedEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class), 2));
+    }
+
+    @Test
+    public void testFireEvents() {
+        checkFireEvents(new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class)));
+    }
+
+    @Test
+    public void testShardedFireEvents() {
+        checkFireEvents(new ShardedEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class), 2));
+    }
+
+    private static void checkFireEvents(EventDispatcher d) {
+        TraceRecorder recorder = new TraceRecorder();
+        d.getMetrics().setTracer(recorder);
+        d.register(new PaymentListener(), Strength.STRONG);
+        d.fireEvents(Arrays.asList(new Payment(), new Payment(), new Order()));
+
+        Map<String, TraceRecorder.Span> m = byName(recorder.getSpans());
+        assertEquals(m.size(), 3, m.toString());
+        TraceRecorder.Span payments = m.get("TraceRecorderUTest$Payment x2");
+        assertEquals(payments.getEvents(), 2);
+        assertEquals(payments.getUnhandled(), 0);
+        assertEquals(m.get("TraceRecorderUTest$PaymentListener.onPayment").getParentId(), payments.getId());
+        TraceRecorder.Span orders = m.get("TraceRecorderUTest$Order");
+        assertEquals(orders.getUnhandled(), 1);
+        assertEquals(orders.getParentId(), 0);
+    }
+
+    @Test
+    public void testTracerSwappedInHandler() {
+        final EventDispatcherImpl d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        final TraceRecorder first = new TraceRecorder();
+        final TraceRecorder second = new TraceRecorder();
+        d.getMetrics().setTracer(first);
+        d.register(new Object() {
+            @Handler
+            void onOrder(Order order) {
+                d.getMetrics().setTracer(second);
+                d.fireEvent(new Payment());
+            }
+        }, Strength.STRONG);
+        d.register(new PaymentListener(), Strength.STRONG);
+        d.fireEvent(new Order());
+
+        // spans are finished by the tracer which started them
+        assertEquals(byName(first.getSpans()).keySet(), new HashSet<String>(Arrays.asList("TraceRecorderUTest$Order", "TraceRecorderUTest$1.onOrder")));
+        assertEquals(byName(second.getSpans()).keySet(), new HashSet<String>(Arrays.asList("TraceRecorderUTest$Payment", "TraceRecorderUTest$PaymentListener.onPayment")));
+
+        // nothing is left of the cascade, so the next one doesn't refer to it
+        d.getMetrics().setTracer(first);
+        d.fireEvent(new Payment());
+        assertEquals(byName(first.getSpans()).get("TraceRecorderUTest$Payment").getParentId(), 0);
+    }
+
+    @Test
+    public void testRing() {
+        TraceRecorder recorder = new TraceRecorder(3);
+        for (int i = 0; i < 5; i++) {
+            recorder.dispatchStarted(Order.class, i + 1);
+            recorder.dispatchFinished(Order.class, i + 1, 0);
+        }
+        // unbalanced finish is ignored
+        recorder.dispatchFinished(Order.class, 1, 0);
+        assertEquals(recorder.getSpanCount(), 5);
+        List<TraceRecorder.Span> spans = recorder.getSpans();
+        assertEquals(spans.size(), 3);
+        assertEquals(spans.get(0).getEvents(), 3);
+        assertEquals(spans.get(2).getEvents(), 5);
+        recorder.clear();
+        assertTrue(recorder.getSpans().isEmpty());
+    }
+
+    @Test
+    public void testChromeTrace() throws Exception {
+        EventDispatcherImpl d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        TraceRecorder recorder = new TraceRecorder();
+        d.getMetrics().setTracer(recorder);
+        d.register(new PaymentListener(), Strength.STRONG);
+        d.fireEvent(new Payment());
+        StringWriter out = new StringWriter();
+        assertEquals(recorder.writeChromeTrace(out), 2);
+        String json = out.toString();
+        assertTrue(json.startsWith("{\"displayTimeUnit\":\"ns\",\"traceEvents\":["), json);
+        assertTrue(json.trim().endsWith("]}"), json);
+        assertTrue(json.contains("\"name\":\"TraceRecorderUTest$Payment\",\"cat\":\"dispatch\",\"ph\":\"X\""), json);
+        assertTrue(json.contains("\"name\":\"TraceRecorderUTest$PaymentListener.onPayment\",\"cat\":\"handler\",\"ph\":\"X\""), json);
+        assertTrue(json.contains("\"failed\":true"), json);
+        assertTrue(json.contains("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + Thread.currentThread().getId()), json);
+        assertTrue(json.matches("(?s).*\"ts\":\\d+\\.\\d{3},\"dur\":\\d+\\.\\d{3}.*"), json);
+    }
+
+    @Test
+    public void testInjection() {
+        final TraceRecorder recorder = new TraceRecorder();
+        Injector injector = Guice.createInjector(new EventDispatcherModule(), new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(EventTracer.class).toInstance(recorder);
+            }
+        });
+        EventDispatcher d = injector.getInstance(EventDispatcher.class);
+        assertSame(d.getMetrics().getTracer(), recorder);
+
+        EventDispatcherControl control = injector.getInstance(EventDispatcherControl.class);
+        assertTrue(control.isTracingEnabled());
+        control.setTracingEnabled(false);
+        assertFalse(control.isTracingEnabled());
+        assertTrue(control.writeChromeTrace("trace.json").startsWith("Spans are not recorded"));
+    }
+}
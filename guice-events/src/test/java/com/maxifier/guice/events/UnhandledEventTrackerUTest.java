@@ -0,0 +1,208 @@
+package com.maxifier.guice.events;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class UnhandledEventTrackerUTest {
+    static class StringListener {
+        @Handler
+        void handle(String s) {
+        }
+    }
+
+    private static EventDispatcherImpl dispatcher() {
+        EventDispatcherImpl d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        d.register(new StringListener(), Strength.STRONG);
+        return d;
+    }
+
+    @Test
+    public void testCounts() {
+        EventDispatcherImpl d = dispatcher();
+        for (int i = 0; i < 100; i++) {
+            d.fireEvent("handled");
+            d.fireEvent(i);
+        }
+        d.fireEvents(Arrays.asList(1L, 2L, "handled"));
+        Map<Class, Long> counts = d.getMetrics().getUnhandledEventTracker().getCounts();
+        assertEquals(counts.size(), 2);
+        assertEquals(counts.get(Integer.class), (Long) 100L);
+        assertEquals(counts.get(Long.class), (Long) 2L);
+
+        EventDispatcherControl control = new EventDispatcherControl(d);
+        assertEquals(control.getUnhandledEventCounts().size(), 2);
+        CompositeData row = control.getUnhandledEventCounts().get(new Object[]{Integer.class.getName()});
+        assertEquals(row.get("count"), 100L);
+        assertTrue(control.showUnhandledEventSample().startsWith("102 unhandled events"));
+    }
+
+    @Test
+    public void testSampleIsBounded() {
+        UnhandledEventTracker tracker = new UnhandledEventTracker(10, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 5; i++) {
+            tracker.record(i);
+        }
+        assertEquals(new HashSet<Object>(tracker.getSample()), new HashSet<Object>(Arrays.asList(0, 1, 2, 3, 4)));
+        for (int i = 5; i < 10000; i++) {
+            tracker.record(i);
+        }
+        List<Object> sample = tracker.getSample();
+        assertEquals(sample.size(), 10);
+        assertEquals(new HashSet<Object>(sample).size(), 10);
+        assertEquals(tracker.getWindowCount(), 10000);
+    }
+
+    @Test
+    public void testSampleIsUniform() {
+        // every event should get into the sample with probability size / n
+        int[] hits = new int[100];
+        for (int run = 0; run < 2000; run++) {
+            UnhandledEventTracker tracker = new UnhandledEventTracker(10, 1, TimeUnit.HOURS);
+            for (int i = 0; i < hits.length; i++) {
+                tracker.record(i);
+            }
+            for (Object e : tracker.getSample()) {
+                hits[(Integer) e]++;
+            }
+        }
+        // expected 200 hits for each event
+        for (int i = 0; i < hits.length; i++) {
+            assertTrue(hits[i] > 120 && hits[i] < 280, "event " + i + " was sampled " + hits[i] + " times");
+        }
+    }
+
+    @Test
+    public void testWindow() throws InterruptedException {
+        UnhandledEventTracker tracker = new UnhandledEventTracker(10, 50, TimeUnit.MILLISECONDS);
+        tracker.record("old");
+        Thread.sleep(100);
+        tracker.record("new");
+        assertEquals(tracker.getSample(), Arrays.<Object>asList("new"));
+        assertEquals(tracker.getWindowCount(), 1);
+        assertEquals(tracker.getCounts().get(String.class), (Long) 2L);
+        tracker.reset();
+        assertTrue(tracker.getSample().isEmpty());
+        assertTrue(tracker.getCounts().isEmpty());
+    }
+
+    @Test
+    public void testUnloadedClassIsNotCounted() throws Exception {
+        UnhandledEventTracker tracker = new UnhandledEventTracker(10, 50, TimeUnit.MILLISECONDS);
+        WeakReference<ClassLoader> loader = recordPluginEvent(tracker);
+        // the sample keeps the event until the window ends
+        Thread.sleep(100);
+        tracker.record("new");
+
+        for (int i = 0; i < 50 && loader.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(loader.get(), "Plugin class loader is retained");
+        assertEquals(tracker.getCounts().keySet(), Collections.singleton(String.class));
+    }
+
+    private static WeakReference<ClassLoader> recordPluginEvent(UnhandledEventTracker tracker) throws Exception {
+        ClassLoader loader = new HandlerResolutionUTest.PluginClassLoader();
+        Class<?> c = loader.loadClass(HandlerResolutionUTest.PluginListener.class.getName());
+        tracker.record(c.getDeclaredConstructor().newInstance());
+        assertEquals(tracker.getCounts().get(c), (Long) 1L);
+        return new WeakReference<ClassLoader>(loader);
+    }
+
+    @Test
+    public void testDeadLetterHandler() {
+        final List<Object> dead = new ArrayList<Object>();
+        final DeadLetterHandler handler = new DeadLetterHandler() {
+            @Override
+            public void deadLetter(Object event) {
+                dead.add(event);
+            }
+        };
+        Injector injector = Guice.createInjector(new EventDispatcherModule(), new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(DeadLetterHandler.class).toInstance(handler);
+            }
+        });
+        EventDispatcher d = injector.getInstance(EventDispatcher.class);
+        assertSame(d.getMetrics().getUnhandledEventTracker().getDeadLetterHandler(), handler);
+        d.register(new StringListener());
+        d.fireEvent("handled");
+        d.fireEvent(1);
+        assertEquals(dead, Arrays.<Object>asList(1));
+    }
+
+    @Test
+    public void testFileDeadLetterHandler() throws IOException {
+        File file = File.createTempFile("dead", ".letters");
+        file.deleteOnExit();
+        EventDispatcherImpl d = dispatcher();
+        FileDeadLetterHandler handler = new FileDeadLetterHandler(file, new JavaEventSerializer(), 1000);
+        d.getMetrics().getUnhandledEventTracker().setDeadLetterHandler(handler);
+        List<Object> expected = new ArrayList<Object>();
+        for (int i = 0; i < 100; i++) {
+            d.fireEvent(i);
+            d.fireEvent("handled");
+            expected.add(i);
+        }
+        d.fireEvent(new Object()); // not serializable
+        handler.close();
+        d.fireEvent(1000);
+        assertEquals(handler.getWritten(), 100);
+        assertEquals(handler.getDropped(), 2);
+        assertEquals(FileDeadLetterHandler.readAll(file, new JavaEventSerializer()), expected);
+    }
+
+    @Test(timeOut = 60000)
+    public void testFileDeadLetterHandlerCountsEventsRacingClose() throws Exception {
+        File file = File.createTempFile("dead", ".letters");
+        file.deleteOnExit();
+        final FileDeadLetterHandler handler = new FileDeadLetterHandler(file, new JavaEventSerializer(), 100000);
+        final int threads = 4;
+        final int events = 10000;
+        final CountDownLatch started = new CountDownLatch(threads);
+        List<Thread> firing = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    for (int i = 0; i < events; i++) {
+                        handler.deadLetter(i);
+                    }
+                }
+            };
+            thread.start();
+            firing.add(thread);
+        }
+        started.await();
+        handler.close();
+        for (Thread thread : firing) {
+            thread.join();
+        }
+        // every event is either written or dropped
+        assertEquals(handler.getWritten() + handler.getDropped(), threads * events);
+        assertEquals(FileDeadLetterHandler.readAll(file, new JavaEventSerializer()).size(), handler.getWritten());
+    }
+}
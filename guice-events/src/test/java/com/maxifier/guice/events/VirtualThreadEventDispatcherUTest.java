@@ -0,0 +1,230 @@
+package com.maxifier.guice.events;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class VirtualThreadEventDispatcherUTest {
+
+    @Test(timeOut = 60000)
+    public void testFireEventAsyncWaitsForHandlers() throws Exception {
+        VirtualThreadEventDispatcher d = new VirtualThreadEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class));
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+            d.register(new Object() {
+                @Handler
+                public void sync(String s) {
+                    received.add("sync");
+                }
+            }, Strength.STRONG);
+            d.register(new Object() {
+                @Handler(async = true)
+                public void async(String s) {
+                    await(release);
+                    received.add("async");
+                }
+            }, Strength.STRONG);
+
+            CompletableFuture<Void> f = d.fireEventAsync("test");
+            assertEquals(received, Collections.singletonList("sync"));
+            assertFalse(f.isDone());
+
+            release.countDown();
+            f.get(10, TimeUnit.SECONDS);
+            assertEquals(received.size(), 2);
+        } finally {
+            d.shutdown();
+        }
+    }
+
+    @Test(timeOut = 60000)
+    public void testMaxConcurrency() throws Exception {
+        VirtualThreadEventDispatcher d = new VirtualThreadEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class));
+        try {
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maxRunning = new AtomicInteger();
+            d.register(new Object() {
+                @Handler(async = true, maxConcurrency = 2)
+                public void limited(Integer i) {
+                    int r = running.incrementAndGet();
+                    while (true) {
+                        int max = maxRunning.get();
+                        if (r <= max || maxRunning.compareAndSet(max, r)) {
+                            break;
+                        }
+                    }
+                    sleep(5);
+                    running.decrementAndGet();
+                }
+            }, Strength.STRONG);
+
+            List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(d.fireEventAsync(i));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).get(10, TimeUnit.SECONDS);
+            assertTrue(maxRunning.get() <= 2, "Max concurrency exceeded: " + maxRunning.get());
+            assertEquals(running.get(), 0);
+        } finally {
+            d.shutdown();
+        }
+    }
+
+    static class Limited {
+        static final AtomicInteger running = new AtomicInteger();
+        static final AtomicInteger maxRunning = new AtomicInteger();
+
+        @Handler(async = true, maxConcurrency = 2)
+        public void limited(Long i) {
+            int r = running.incrementAndGet();
+            while (true) {
+                int max = maxRunning.get();
+                if (r <= max || maxRunning.compareAndSet(max, r)) {
+                    break;
+                }
+            }
+            sleep(5);
+            running.decrementAndGet();
+        }
+    }
+
+    static class LimitedA extends Limited {
+    }
+
+    static class LimitedB extends Limited {
+    }
+
+    @Test(timeOut = 60000)
+    public void testMaxConcurrencySharedBySubclasses() throws Exception {
+        VirtualThreadEventDispatcher d = new VirtualThreadEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class));
+        try {
+            for (int i = 0; i < 3; i++) {
+                d.register(new LimitedA(), Strength.STRONG);
+                d.register(new LimitedB(), Strength.STRONG);
+            }
+            List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+            for (long i = 0; i < 10; i++) {
+                futures.add(d.fireEventAsync(i));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).get(10, TimeUnit.SECONDS);
+            assertTrue(Limited.maxRunning.get() <= 2, "Max concurrency exceeded: " + Limited.maxRunning.get());
+            assertEquals(Limited.running.get(), 0);
+        } finally {
+            d.shutdown();
+        }
+    }
+
+    @Test(timeOut = 60000)
+    public void testInvocationsAfterShutdownAreDropped() throws Exception {
+        VirtualThreadEventDispatcher d = new VirtualThreadEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class));
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        d.register(new Object() {
+            @Handler(async = true)
+            public void async(String s) {
+                received.add("async");
+            }
+        }, Strength.STRONG);
+        d.register(new Object() {
+            @Handler(async = true, maxConcurrency = 1)
+            public void limited(String s) {
+                received.add("limited");
+            }
+        }, Strength.STRONG);
+        d.register(new Object() {
+            @Handler
+            public void sync(String s) {
+                received.add("sync");
+            }
+        }, Strength.STRONG);
+        d.shutdown();
+
+        d.fireEventAsync("test").get(10, TimeUnit.SECONDS);
+        d.fireEvent("test");
+        assertEquals(received, Arrays.asList("sync", "sync"));
+        assertEquals(d.getDroppedInvocations(), 4);
+    }
+
+    @Test
+    public void testSyncDispatcherCompletesImmediately() {
+        EventDispatcher d = new EventDispatcherImpl(Mockito.mock(ListenerRegistrationQueue.class));
+        final List<String> received = new ArrayList<String>();
+        d.register(new Object() {
+            @Handler(async = true)
+            public void handle(String s) {
+                received.add(s);
+            }
+        }, Strength.STRONG);
+        assertTrue(d.fireEventAsync("test").isDone());
+        assertEquals(received, Collections.singletonList("test"));
+    }
+
+    @Test(timeOut = 60000)
+    public void testAsyncEventDispatcherCompletion() throws Exception {
+        AsyncEventDispatcher d = new AsyncEventDispatcher(Mockito.mock(ListenerRegistrationQueue.class), new AsyncExecutors());
+        try {
+            final AtomicInteger handled = new AtomicInteger();
+            d.register(new Object() {
+                @Handler(async = true)
+                public void handle(String s) {
+                    sleep(50);
+                    handled.incrementAndGet();
+                }
+            }, Strength.STRONG);
+            d.fireEventAsync("test").get(10, TimeUnit.SECONDS);
+            assertEquals(handled.get(), 1);
+        } finally {
+            d.shutdown();
+        }
+    }
+
+    @Test
+    public void testModule() {
+        Injector inj = Guice.createInjector(EventDispatcherModule.virtualThreads());
+        EventDispatcher d = inj.getInstance(EventDispatcher.class);
+        assertTrue(d instanceof VirtualThreadEventDispatcher);
+        VirtualThreadEventDispatcher vd = (VirtualThreadEventDispatcher) d;
+        assertEquals(vd.isVirtual(), hasVirtualThreads());
+        vd.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}